@@ -1,15 +1,23 @@
 package edu.brown.cs.student.csv;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The CSVData class provides a shared state for Handler classes to be able to access and mutate the
- * same data, in this case, the contents of a CSV file.
+ * same data, in this case, the contents of a CSV file. The contents are stored column by column in
+ * an immutable ColumnarTable, so readers share the published table rather than copying it.
+ *
+ * <p>Handlers run on many server threads at once, so the state is held as an immutable CSVSnapshot
+ * behind an AtomicReference. Every change replaces the whole snapshot and increments its version,
+ * so readers never block and never see a table from one load paired with the status of another.
+ *
+ * <p>The most recently loaded CSV is the current one, but every loaded file stays resident in a
+ * DatasetRegistry, within its memory budget, so that it can still be read by name.
  */
 public class CSVData {
-  private List<List<String>> data;
-  private Boolean isLoaded;
+  private final AtomicReference<CSVSnapshot> snapshot;
+  private final DatasetRegistry registry;
 
   /**
    * Instance variables for the data and boolean indicated loaded status are initialized
@@ -17,38 +25,131 @@ public class CSVData {
    * @param data
    */
   public CSVData(List<List<String>> data) {
-    this.data = data;
-    this.isLoaded = false;
+    this(data, new DatasetRegistry());
   }
 
   public CSVData() {
-    this(null);
+    this(null, new DatasetRegistry());
   }
 
   /**
-   * getter method for data
+   * @param registry datasets that loaded files are kept in
+   */
+  public CSVData(DatasetRegistry registry) {
+    this(null, registry);
+  }
+
+  private CSVData(List<List<String>> data, DatasetRegistry registry) {
+    this.snapshot =
+        new AtomicReference<>(
+            new CSVSnapshot(data == null ? null : ColumnarTable.fromRows(data), false, 0));
+    this.registry = registry;
+  }
+
+  /**
+   * getter method for the current state, which handlers should read once per request
+   *
+   * @return the current snapshot
+   */
+  public CSVSnapshot getSnapshot() {
+    return this.snapshot.get();
+  }
+
+  /**
+   * getter method for the state of a named dataset, or of the current one if no name is given
+   *
+   * @param dataset filepath of a loaded dataset, or null
+   * @return the snapshot of the dataset, or null if it is not resident
+   */
+  public CSVSnapshot getSnapshot(String dataset) {
+    return dataset == null ? this.getSnapshot() : this.registry.get(dataset);
+  }
+
+  /**
+   * getter method for the datasets that loaded files are kept in
+   *
+   * @return the registry
+   */
+  public DatasetRegistry getRegistry() {
+    return this.registry;
+  }
+
+  /**
+   * Replaces the table and marks it as loaded in a single step, so readers see either the previous
+   * load or this one in full. Publishing the table that is already current changes nothing.
+   *
+   * @param table CSV contents
+   * @return the published snapshot
+   */
+  public CSVSnapshot publish(ColumnarTable table) {
+    return this.snapshot.updateAndGet(
+        current ->
+            current.isLoaded() && current.getTable() == table
+                ? current
+                : new CSVSnapshot(table, true, current.getVersion() + 1));
+  }
+
+  /**
+   * Replaces the table only if the given one is still current, such as when a file that was
+   * reloaded in the background was the one being served. Another table published meanwhile is kept.
+   *
+   * @param expected table that is replaced if it is current
+   * @param table CSV contents
+   * @return the current snapshot, whether or not it was replaced
+   */
+  public CSVSnapshot replace(ColumnarTable expected, ColumnarTable table) {
+    return this.snapshot.updateAndGet(
+        current ->
+            current.getTable() == expected && expected != table
+                ? new CSVSnapshot(table, true, current.getVersion() + 1)
+                : current);
+  }
+
+  /**
+   * getter method for data. The rows are an unmodifiable view of the published table, so this is
+   * O(1) no matter how large the table is.
    *
    * @return contents of CSV file or null
    */
   public List<List<String>> getData() {
-    // Outputs null if null
-    if (this.data == null) return null;
-
-    // Creates a defensive copy
-    List<List<String>> dataCopy = new ArrayList<>();
-    for (List<String> row : this.data) {
-      dataCopy.add(new ArrayList<>(row));
-    }
-    return dataCopy;
+    return this.getSnapshot().getRows();
   }
 
   /**
-   * setter method for data
+   * setter method for data, which converts the rows into columns and publishes them
    *
    * @param csvData- CSV contents
    */
   public void setData(List<List<String>> csvData) {
-    this.data = csvData;
+    this.setTable(csvData == null ? null : ColumnarTable.fromRows(csvData));
+  }
+
+  /**
+   * getter method for the columnar form of the data
+   *
+   * @return contents of CSV file or null
+   */
+  public ColumnarTable getTable() {
+    return this.getSnapshot().getTable();
+  }
+
+  /**
+   * setter method for the columnar form of the data, which keeps the loaded status
+   *
+   * @param table CSV contents
+   */
+  public void setTable(ColumnarTable table) {
+    this.snapshot.updateAndGet(
+        current -> new CSVSnapshot(table, current.isLoaded(), current.getVersion() + 1));
+  }
+
+  /**
+   * getter method for the version of the data, which changes whenever the state changes
+   *
+   * @return version number
+   */
+  public long getVersion() {
+    return this.getSnapshot().getVersion();
   }
 
   /**
@@ -57,15 +158,16 @@ public class CSVData {
    * @return boolean depending on if CSV has been loaded by LoadHandler previously
    */
   public Boolean getIsLoaded() {
-    return this.isLoaded;
+    return this.getSnapshot().isLoaded();
   }
 
   /**
-   * setter method for loaded status
+   * setter method for loaded status, which keeps the table
    *
    * @param value
    */
   public void setIsLoaded(Boolean value) {
-    this.isLoaded = value;
+    this.snapshot.updateAndGet(
+        current -> new CSVSnapshot(current.getTable(), value, current.getVersion() + 1));
   }
 }
@@ -3,10 +3,16 @@ package edu.brown.cs.student.csv;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringTokenizer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Can count the number of words, characters, rows, and columns of a CSV file and can parse a CSV
@@ -113,33 +119,127 @@ public class CSVParser<T> {
     List<T> objects = new ArrayList<>();
 
     try {
-      // Creates a BufferedReader object and checks if empty
-      BufferedReader in = new BufferedReader(this.reader);
-      if (in.readLine() == null) {
-        System.err.println("ERROR: The file cannot be converted because it is empty.");
-      }
-
-      String line;
-      while ((line = in.readLine()) != null) {
-        // Creates object from row and adds it to list
-        String[] columns = line.split(",");
-        List<String> objectFields = Arrays.asList(columns);
-        T newObject = this.rowCreator.create(objectFields);
-        objects.add(newObject);
+      // Drains the lazy iterator into the list
+      Iterator<T> rows = this.iterator();
+      while (rows.hasNext()) {
+        objects.add(rows.next());
       }
-
-      // Closes the BufferedReader
-      in.close();
-
-    } catch (IOException e) { // IOException
+    } catch (UncheckedIOException e) { // IOException
       System.err.println("ERROR: the Reader object cannot be wrapped in a BufferReader object!");
-      throw e;
-    } catch (FactoryFailureException f) { // Factory Failure Exception
+      throw e.getCause();
+    } catch (UncheckedFactoryFailureException f) { // Factory Failure Exception
       System.err.println("ERROR: a row cannot be converted to an object!");
-      throw f;
+      throw f.getCause();
     }
 
     // Return the data for the user in the form of a list
     return objects;
   }
+
+  /**
+   * Loads the CSV into a ColumnarTable, one row at a time, so the rows are never all held as Lists
+   * of Strings. Unlike create(), the first line of the file is kept as the table's header. The
+   * CreatorFromRow is not used.
+   *
+   * @return table holding the contents of the CSV
+   * @throws IOException error from reading file
+   */
+  public ColumnarTable createTable() throws IOException {
+    ColumnarTableBuilder builder = new ColumnarTableBuilder();
+    CSVTokenizer tokenizer = new CSVTokenizer(this.reader);
+    CSVRow row = tokenizer.next();
+    if (row == null) {
+      System.err.println("ERROR: The file cannot be converted because it is empty.");
+    } else {
+      builder.setHeader(row.toList());
+    }
+    while ((row = tokenizer.next()) != null) {
+      builder.addRow(row);
+    }
+    this.reader.close();
+    return builder.build();
+  }
+
+  /**
+   * Lazily converts the rows of the CSV into objects of type T. Each line is only read from the
+   * Reader, and only handed to the CreatorFromRow, once the iterator is advanced past it, so memory
+   * use stays constant no matter how large the file is. The Reader is closed once every row has
+   * been consumed. Like create(), the first line of the file is skipped.
+   *
+   * <p>Since Iterator methods cannot throw checked exceptions, IOExceptions are rethrown as
+   * UncheckedIOExceptions and FactoryFailureExceptions as UncheckedFactoryFailureExceptions.
+   *
+   * @return an iterator over the objects generated from each row of the provided CSV
+   */
+  public Iterator<T> iterator() {
+    return new RowIterator();
+  }
+
+  /**
+   * Lazily converts the rows of the CSV into a sequential Stream of objects of type T. Closing the
+   * stream closes the underlying Reader.
+   *
+   * @return a stream of objects generated from each row of the provided CSV
+   * @see #iterator()
+   */
+  public Stream<T> stream() {
+    RowIterator rows = new RowIterator();
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+        .onClose(rows::close);
+  }
+
+  /** Pull-based iterator that tokenizes and converts one record of the CSV at a time. */
+  private class RowIterator implements Iterator<T> {
+    private final CSVTokenizer tokenizer = new CSVTokenizer(CSVParser.this.reader);
+    private boolean started = false;
+    private CSVRow nextRow = null;
+
+    @Override
+    public boolean hasNext() {
+      if (this.nextRow != null) {
+        return true;
+      }
+      try {
+        // Skips the header the first time the iterator is advanced
+        if (!this.started) {
+          this.started = true;
+          if (this.tokenizer.next() == null) {
+            System.err.println("ERROR: The file cannot be converted because it is empty.");
+          }
+        }
+        this.nextRow = this.tokenizer.next();
+        if (this.nextRow == null) {
+          CSVParser.this.reader.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return this.nextRow != null;
+    }
+
+    @Override
+    public T next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      // Creates object from row
+      CSVRow row = this.nextRow;
+      this.nextRow = null;
+      try {
+        return row.convert(CSVParser.this.rowCreator);
+      } catch (FactoryFailureException e) {
+        throw new UncheckedFactoryFailureException(e);
+      }
+    }
+
+    /** Closes the underlying Reader, for when iteration is abandoned early. */
+    void close() {
+      try {
+        CSVParser.this.reader.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
 }
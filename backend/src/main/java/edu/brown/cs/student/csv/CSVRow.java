@@ -0,0 +1,266 @@
+package edu.brown.cs.student.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable view of one record produced by a CSVTokenizer. Rather than holding Strings, the row
+ * stores the offsets of each field within the tokenizer's character buffer, and a String is only
+ * built when a field is requested. The view is overwritten every time the tokenizer advances, so
+ * anything that must outlive the current row should be copied out of it first.
+ */
+public class CSVRow {
+  // Mantissas with at most this many digits, scaled by at most this power of ten, are exact doubles
+  private static final int MAX_EXACT_DIGITS = 15;
+  private static final int MAX_EXACT_POWER = 22;
+  private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private char[] chars;
+  private int size;
+  private int[] starts = new int[8];
+  private int[] ends = new int[8];
+  // Whether a field needs its doubled quotes ("") collapsed when converted to a String
+  private boolean[] escaped = new boolean[8];
+
+  /**
+   * @return number of fields in the row
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Builds the String value of a field, with any surrounding quotes removed and escaped quotes
+   * collapsed.
+   *
+   * @param index index of the field
+   * @return value of the field
+   */
+  public String get(int index) {
+    this.checkIndex(index);
+    int start = this.starts[index];
+    int end = this.ends[index];
+    if (!this.escaped[index]) {
+      return new String(this.chars, start, end - start);
+    }
+    StringBuilder value = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      value.append(this.chars[i]);
+      if (this.chars[i] == '"' && i + 1 < end && this.chars[i + 1] == '"') {
+        i++;
+      }
+    }
+    return value.toString();
+  }
+
+  /**
+   * Parses a field as a long without building a String, accepting the same input as Long.parseLong.
+   *
+   * @param index index of the field
+   * @return value of the field
+   * @throws NumberFormatException if the field is not a valid long
+   */
+  public long getLong(int index) {
+    this.checkIndex(index);
+    int start = this.starts[index];
+    int end = this.ends[index];
+    boolean negative = start < end && this.chars[start] == '-';
+    int i = negative || (start < end && this.chars[start] == '+') ? start + 1 : start;
+
+    // Up to 18 digits always fit in a long; anything longer or unusual uses Long.parseLong
+    if (this.escaped[index] || i == end || end - i > 18) {
+      return Long.parseLong(this.get(index));
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = this.chars[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return Long.parseLong(this.get(index));
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses a field as a double without building a String, accepting the same input as
+   * Double.parseDouble. Plain decimals with at most 15 significant digits and a small exponent,
+   * which covers typical CSV data, are converted exactly with a single multiplication or division;
+   * anything else falls back to Double.parseDouble.
+   *
+   * @param index index of the field
+   * @return value of the field
+   * @throws NumberFormatException if the field is not a valid double
+   */
+  public double getDouble(int index) {
+    this.checkIndex(index);
+    int start = this.starts[index];
+    int end = this.ends[index];
+    if (this.escaped[index]) {
+      return Double.parseDouble(this.get(index));
+    }
+    boolean negative = start < end && this.chars[start] == '-';
+    int i = negative || (start < end && this.chars[start] == '+') ? start + 1 : start;
+
+    // Reads the digits into a mantissa, tracking the power of ten from the decimal point
+    long mantissa = 0;
+    int significantDigits = 0;
+    int exponent = 0;
+    int digits = 0;
+    boolean pointSeen = false;
+    for (; i < end; i++) {
+      char c = this.chars[i];
+      if (c >= '0' && c <= '9') {
+        digits++;
+        if (mantissa != 0 || c != '0') {
+          significantDigits++;
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (pointSeen) {
+          exponent--;
+        }
+        if (significantDigits > MAX_EXACT_DIGITS) {
+          return Double.parseDouble(this.get(index));
+        }
+      } else if (c == '.' && !pointSeen) {
+        pointSeen = true;
+      } else {
+        break;
+      }
+    }
+    if (digits == 0) {
+      return Double.parseDouble(this.get(index));
+    }
+
+    // Reads an optional exponent
+    if (i < end && (this.chars[i] == 'e' || this.chars[i] == 'E')) {
+      i++;
+      boolean negativeExponent = i < end && this.chars[i] == '-';
+      if (negativeExponent || (i < end && this.chars[i] == '+')) {
+        i++;
+      }
+      int exponentStart = i;
+      int written = 0;
+      for (; i < end && this.chars[i] >= '0' && this.chars[i] <= '9'; i++) {
+        written = Math.min(written * 10 + (this.chars[i] - '0'), 1000);
+      }
+      if (i == exponentStart) {
+        return Double.parseDouble(this.get(index));
+      }
+      exponent += negativeExponent ? -written : written;
+    }
+
+    // Trailing text, such as whitespace or a type suffix, or an inexact exponent
+    if (i != end || exponent < -MAX_EXACT_POWER || exponent > MAX_EXACT_POWER) {
+      return Double.parseDouble(this.get(index));
+    }
+    double value = mantissa;
+    if (exponent < 0) {
+      value /= POWERS_OF_TEN[-exponent];
+    } else {
+      value *= POWERS_OF_TEN[exponent];
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Copies every field of the row into a new List of Strings.
+   *
+   * @return list of the values of the row
+   */
+  public List<String> toList() {
+    List<String> values = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      values.add(this.get(i));
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return this.toList().toString();
+  }
+
+  /**
+   * Creates an object from this row, using the CSVRow variant of the creator when it has one.
+   *
+   * @param rowCreator implementation of interface with type T
+   * @return object created from the row
+   * @throws FactoryFailureException error from creating object
+   */
+  <T> T convert(CreatorFromRow<T> rowCreator) throws FactoryFailureException {
+    if (rowCreator instanceof CreatorFromFields<T> fieldsCreator) {
+      return fieldsCreator.create(this);
+    }
+    return rowCreator.create(this.toList());
+  }
+
+  /** Gets the buffer the field offsets refer to. */
+  char[] getChars() {
+    return this.chars;
+  }
+
+  /** Gets the offset of the first character of a field. */
+  int getStart(int index) {
+    return this.starts[index];
+  }
+
+  /** Gets the offset just past the last character of a field. */
+  int getEnd(int index) {
+    return this.ends[index];
+  }
+
+  /** Whether a field contains escaped quotes, so its characters differ from its value. */
+  boolean isEscaped(int index) {
+    return this.escaped[index];
+  }
+
+  /** Throws if the index does not refer to a field of this row. */
+  void checkIndex(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+          "Field " + index + " out of bounds for row of size " + this.size);
+    }
+  }
+
+  /** Clears the row so that the tokenizer can fill it with the next record. */
+  void reset(char[] chars) {
+    this.chars = chars;
+    this.size = 0;
+  }
+
+  /** Points the row at a new buffer, after the tokenizer grows its buffer. */
+  void setChars(char[] chars) {
+    this.chars = chars;
+  }
+
+  /** Appends a field spanning [start, end) of the buffer. */
+  void addField(int start, int end, boolean escaped) {
+    if (this.size == this.starts.length) {
+      int capacity = this.size * 2;
+      this.starts = Arrays.copyOf(this.starts, capacity);
+      this.ends = Arrays.copyOf(this.ends, capacity);
+      this.escaped = Arrays.copyOf(this.escaped, capacity);
+    }
+    this.starts[this.size] = start;
+    this.ends[this.size] = end;
+    this.escaped[this.size] = escaped;
+    this.size++;
+  }
+
+  /** Moves every field offset back by the given amount, after the tokenizer compacts its buffer. */
+  void shift(int delta) {
+    for (int i = 0; i < this.size; i++) {
+      this.starts[i] -= delta;
+      this.ends[i] -= delta;
+    }
+  }
+}
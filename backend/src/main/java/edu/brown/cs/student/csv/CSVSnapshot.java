@@ -0,0 +1,63 @@
+package edu.brown.cs.student.csv;
+
+import java.util.List;
+
+/**
+ * An immutable view of the state held by CSVData at one moment: the loaded table, whether a CSV has
+ * been loaded, and the version number and creation time of that state. A handler reads one snapshot
+ * per request, so every value it uses comes from the same load even if another load is published
+ * meanwhile.
+ */
+public final class CSVSnapshot {
+  private final ColumnarTable table;
+  private final boolean isLoaded;
+  private final long version;
+  private final long createdAt;
+
+  /**
+   * @param table contents of the CSV, or null
+   * @param isLoaded whether a CSV has been loaded
+   * @param version number that increases with every change to the state
+   */
+  CSVSnapshot(ColumnarTable table, boolean isLoaded, long version) {
+    this.table = table;
+    this.isLoaded = isLoaded;
+    this.version = version;
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  /**
+   * @return contents of the CSV, or null
+   */
+  public ColumnarTable getTable() {
+    return this.table;
+  }
+
+  /**
+   * @return unmodifiable rows of the CSV, or null
+   */
+  public List<List<String>> getRows() {
+    return this.table == null ? null : this.table.rows();
+  }
+
+  /**
+   * @return whether a CSV has been loaded
+   */
+  public boolean isLoaded() {
+    return this.isLoaded;
+  }
+
+  /**
+   * @return version number of this state
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * @return time at which this state was created, in milliseconds since the epoch
+   */
+  public long getCreatedAt() {
+    return this.createdAt;
+  }
+}
@@ -0,0 +1,201 @@
+package edu.brown.cs.student.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits the text of a CSV into records following RFC 4180. Fields are separated by commas, and a
+ * field wrapped in double quotes may contain commas, line breaks, and escaped quotes written as "".
+ * Records end at "\n", "\r\n" or a lone "\r", matching BufferedReader.readLine().
+ *
+ * <p>The tokenizer reads the Reader into one reusable character buffer and describes each record
+ * through a single reusable CSVRow, so no objects are allocated per record or per field unless a
+ * field's value is requested.
+ *
+ * <p>Malformed input is accepted leniently: text after the closing quote of a field is kept as part
+ * of that field, and a quote that is never closed extends to the end of the input.
+ */
+public class CSVTokenizer {
+  // States of the field state machine
+  private static final int FIELD_START = 0;
+  private static final int UNQUOTED = 1;
+  private static final int QUOTED = 2;
+  private static final int QUOTE_IN_QUOTED = 3;
+  private static final int AFTER_QUOTED = 4;
+
+  private final Reader reader;
+  private final CSVRow row = new CSVRow();
+  private char[] buffer;
+  private int pos = 0;
+  private int limit = 0;
+  private boolean eof = false;
+  // Set when a record ended in '\r', in case the next character is the '\n' of a "\r\n"
+  private boolean skipLineFeed = false;
+
+  // Offsets of the record and field currently being read, moved when the buffer is compacted
+  private int recordStart;
+  private int fieldStart;
+  private int fieldEnd;
+
+  /**
+   * @param reader reader object containing the CSV
+   */
+  public CSVTokenizer(Reader reader) {
+    this(reader, 8192);
+  }
+
+  /**
+   * @param reader reader object containing the CSV
+   * @param bufferSize initial size of the character buffer, which grows to fit the longest record
+   */
+  public CSVTokenizer(Reader reader, int bufferSize) {
+    this.reader = reader;
+    this.buffer = new char[Math.max(bufferSize, 16)];
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return the reusable row describing the next record, or null once the input is exhausted
+   * @throws IOException error from reading the input
+   */
+  public CSVRow next() throws IOException {
+    // The previous record no longer needs to be kept in the buffer
+    this.recordStart = this.pos;
+    if (this.skipLineFeed) {
+      this.skipLineFeed = false;
+      if ((this.pos < this.limit || this.refill()) && this.buffer[this.pos] == '\n') {
+        this.pos++;
+      }
+    }
+    if (this.pos == this.limit && !this.refill()) {
+      return null;
+    }
+
+    this.row.reset(this.buffer);
+    this.recordStart = this.pos;
+    this.fieldStart = this.pos;
+    boolean escaped = false;
+    int state = FIELD_START;
+    while (true) {
+      if (this.pos == this.limit && !this.refill()) {
+        // The input ended partway through the record
+        int end = state == QUOTE_IN_QUOTED ? this.pos - 1 : this.pos;
+        this.row.addField(this.fieldStart, state == AFTER_QUOTED ? this.fieldEnd : end, escaped);
+        break;
+      }
+
+      if (state == FIELD_START) {
+        escaped = false;
+        if (this.buffer[this.pos] == '"') {
+          this.pos++;
+          this.fieldStart = this.pos;
+          state = QUOTED;
+        } else {
+          state = UNQUOTED;
+        }
+        continue;
+      } else if (state == QUOTED) {
+        // Skips straight to the next quote
+        char[] chars = this.buffer;
+        int p = this.pos;
+        int end = this.limit;
+        while (p < end && chars[p] != '"') {
+          p++;
+        }
+        this.pos = p;
+        if (p < end) {
+          this.pos++;
+          state = QUOTE_IN_QUOTED;
+        }
+        continue;
+      } else if (state == QUOTE_IN_QUOTED) {
+        if (this.buffer[this.pos] == '"') {
+          // An escaped quote inside a quoted field
+          escaped = true;
+          this.pos++;
+          state = QUOTED;
+        } else {
+          // The previous quote closed the field
+          this.fieldEnd = this.pos - 1;
+          state = AFTER_QUOTED;
+        }
+        continue;
+      } else if (state == UNQUOTED) {
+        // Skips straight to the next delimiter
+        char[] chars = this.buffer;
+        int p = this.pos;
+        int end = this.limit;
+        char c;
+        while (p < end && (c = chars[p]) != ',' && c != '\n' && c != '\r') {
+          p++;
+        }
+        this.pos = p;
+        if (p == end) {
+          continue;
+        }
+        this.fieldEnd = p;
+      }
+
+      // Either a delimiter, or text after the closing quote of a quoted field
+      char c = this.buffer[this.pos];
+      if (c == ',') {
+        this.row.addField(this.fieldStart, this.fieldEnd, escaped);
+        this.pos++;
+        this.fieldStart = this.pos;
+        state = FIELD_START;
+      } else if (c == '\n' || c == '\r') {
+        this.row.addField(this.fieldStart, this.fieldEnd, escaped);
+        this.pos++;
+        this.skipLineFeed = c == '\r';
+        break;
+      } else {
+        // Keeps the closing quote and the text after it in the field
+        escaped = true;
+        state = UNQUOTED;
+      }
+    }
+    this.row.setChars(this.buffer);
+    return this.row;
+  }
+
+  /**
+   * Reads more of the input into the buffer, first moving the current record to the front of the
+   * buffer, and growing the buffer if the record fills more than half of it.
+   *
+   * @return false if the input is exhausted
+   */
+  private boolean refill() throws IOException {
+    if (this.eof) {
+      return false;
+    }
+    int keep = this.limit - this.recordStart;
+    if (this.recordStart > 0) {
+      System.arraycopy(this.buffer, this.recordStart, this.buffer, 0, keep);
+      int delta = this.recordStart;
+      this.row.shift(delta);
+      this.pos -= delta;
+      this.fieldStart -= delta;
+      this.fieldEnd -= delta;
+      this.recordStart = 0;
+    }
+    this.limit = keep;
+    if (keep > this.buffer.length / 2) {
+      this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+    }
+    this.row.setChars(this.buffer);
+
+    // At least half of the buffer is free, so a read always makes progress
+    int read = 0;
+    while (read == 0) {
+      read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+    }
+    if (read < 0) {
+      this.eof = true;
+      return false;
+    }
+    this.limit += read;
+    return true;
+  }
+}
@@ -0,0 +1,41 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * One column of a ColumnarTable. Values are stored in a single array per column rather than one
+ * List per row, with a representation chosen from the values in the column when the CSV is loaded.
+ */
+public abstract class Column {
+
+  /**
+   * @return type of the values in the column
+   */
+  public abstract ColumnType getType();
+
+  /**
+   * @return number of rows in the column
+   */
+  public abstract int size();
+
+  /**
+   * Gets a value as it was written in the CSV.
+   *
+   * @param row index of the row
+   * @return text of the value
+   */
+  public abstract String getString(int row);
+
+  /**
+   * @return approximate number of bytes of heap used by the column
+   */
+  public abstract long estimateBytes();
+
+  /**
+   * Approximates the heap used by a String.
+   *
+   * @param value the String
+   * @return approximate number of bytes, including its header and character array
+   */
+  static long estimateBytes(String value) {
+    return 56 + 2L * value.length();
+  }
+}
@@ -0,0 +1,397 @@
+package edu.brown.cs.student.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the values of one column while a CSV is loaded, then picks the most compact Column
+ * for them. Values are kept as decimals (an unscaled long and a number of decimal places) for as
+ * long as every value is a number written in canonical form, so that it can be written back
+ * exactly; the first value that is not switches the column to dictionary-encoded text, and too many
+ * distinct values switch it to plain text.
+ *
+ * <p>Each builder also sketches its non-empty values as they are added, for the approximate
+ * statistics of a column: a HyperLogLog of every value, and while every value has been a number, a
+ * KllSketch of their quantiles. Sketches merge, so the builders of the parts of a file that were
+ * loaded in parallel join into sketches of the whole file.
+ */
+class ColumnBuilder {
+  // Integers with up to this many digits are always stored exactly in a long
+  private static final int MAX_LONG_DIGITS = 18;
+  // Dictionaries larger than this stop being worthwhile while loading
+  private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+  private int size = 0;
+
+  // Numeric values, while every value has been a number
+  private boolean numeric = true;
+  private long[] unscaled = new long[16];
+  private byte[] scales = new byte[16];
+  private int maxDigits = 0;
+  private boolean fractional = false;
+
+  // Text values, either dictionary codes or, for high cardinality columns, plain Strings
+  private Map<String, Integer> codesByValue;
+  private List<String> dictionary;
+  private int[] codes;
+  private String[] strings;
+
+  // Sketches of the non-empty values, the quantiles only while every one has been a number
+  private final HyperLogLog distinct = new HyperLogLog();
+  private KllSketch quantiles = new KllSketch();
+
+  // Result of the last call to parseDecimal
+  private long parsedUnscaled;
+  private int parsedScale;
+  private int parsedDigits;
+
+  ColumnBuilder() {}
+
+  /**
+   * Creates a builder holding the values of a column that was already built, so that more values
+   * can be appended to it without parsing the earlier ones again. The column's arrays are copied,
+   * and its sketches merged into new ones, so the column itself is left unchanged.
+   *
+   * @param column column to start from
+   * @param distinct sketch of the distinct values of the column
+   * @param quantiles sketch of the quantiles of the column, or null if it has text
+   */
+  ColumnBuilder(Column column, HyperLogLog distinct, KllSketch quantiles) {
+    this.distinct.merge(distinct);
+    if (quantiles == null) {
+      this.quantiles = null;
+    } else {
+      this.quantiles.merge(quantiles);
+    }
+
+    int size = column.size();
+    if (column instanceof LongColumn longs) {
+      this.unscaled = new long[Math.max(16, size)];
+      this.scales = new byte[this.unscaled.length];
+      for (int i = 0; i < size; i++) {
+        this.unscaled[i] = longs.getLong(i);
+        this.maxDigits = Math.max(this.maxDigits, digits(this.unscaled[i], 0));
+      }
+    } else if (column instanceof DoubleColumn doubles) {
+      this.unscaled = new long[Math.max(16, size)];
+      this.scales = new byte[this.unscaled.length];
+      for (int i = 0; i < size; i++) {
+        int scale = doubles.getScale(i);
+        this.unscaled[i] = doubles.getUnscaled(i);
+        this.scales[i] = (byte) scale;
+        this.maxDigits = Math.max(this.maxDigits, digits(this.unscaled[i], scale));
+        this.fractional |= scale > 0;
+      }
+    } else if (column instanceof DictionaryColumn dictionaryColumn) {
+      this.numeric = false;
+      this.unscaled = null;
+      this.scales = null;
+      this.codesByValue = new HashMap<>();
+      this.dictionary = new ArrayList<>(dictionaryColumn.getDictionarySize());
+      for (int code = 0; code < dictionaryColumn.getDictionarySize(); code++) {
+        String value = dictionaryColumn.getDictionaryValue(code);
+        this.codesByValue.put(value, code);
+        this.dictionary.add(value);
+      }
+      this.codes = new int[Math.max(16, size)];
+      for (int i = 0; i < size; i++) {
+        this.codes[i] = dictionaryColumn.getCode(i);
+      }
+    } else {
+      this.numeric = false;
+      this.unscaled = null;
+      this.scales = null;
+      this.strings = new String[Math.max(16, size)];
+      for (int i = 0; i < size; i++) {
+        this.strings[i] = column.getString(i);
+      }
+    }
+    this.size = size;
+  }
+
+  /** Adds a value from the given range of characters. */
+  void add(char[] chars, int start, int end) {
+    boolean parsed =
+        (this.numeric || this.quantiles != null) && this.parseDecimal(chars, start, end);
+    if (end > start) {
+      this.distinct.add(chars, start, end);
+      this.sketchQuantile(parsed);
+    }
+    if (this.numeric && parsed) {
+      this.addDecimal();
+    } else {
+      this.addText(new String(chars, start, end - start));
+    }
+  }
+
+  /** Adds a value. */
+  void add(String value) {
+    boolean parsed =
+        (this.numeric || this.quantiles != null)
+            && this.parseDecimal(value.toCharArray(), 0, value.length());
+    if (!value.isEmpty()) {
+      this.distinct.add(value);
+      this.sketchQuantile(parsed);
+    }
+    if (this.numeric && parsed) {
+      this.addDecimal();
+    } else {
+      this.addText(value);
+    }
+  }
+
+  /** Adds a placeholder for a row that has no value in this column. */
+  void addMissing() {
+    if (this.numeric) {
+      this.parsedUnscaled = 0;
+      this.parsedScale = 0;
+      this.parsedDigits = 0;
+      this.addDecimal();
+    } else {
+      this.addText("");
+    }
+  }
+
+  /** Appends every value of another builder, after the values of this one. */
+  void addAll(ColumnBuilder other) {
+    this.distinct.merge(other.distinct);
+    if (this.quantiles != null && other.quantiles != null) {
+      this.quantiles.merge(other.quantiles);
+    } else {
+      this.quantiles = null;
+    }
+    if (this.numeric && other.numeric) {
+      this.ensureNumericCapacity(this.size + other.size);
+      System.arraycopy(other.unscaled, 0, this.unscaled, this.size, other.size);
+      System.arraycopy(other.scales, 0, this.scales, this.size, other.size);
+      this.size += other.size;
+      this.maxDigits = Math.max(this.maxDigits, other.maxDigits);
+      this.fractional |= other.fractional;
+      return;
+    }
+    for (int i = 0; i < other.size; i++) {
+      this.addText(other.textAt(i));
+    }
+  }
+
+  /**
+   * @return sketch of the distinct non-empty values added so far
+   */
+  HyperLogLog getDistinctSketch() {
+    return this.distinct;
+  }
+
+  /**
+   * @return sketch of the quantiles of the non-empty values added so far, or null if any of them
+   *     was not a number
+   */
+  KllSketch getQuantileSketch() {
+    return this.quantiles;
+  }
+
+  /** Picks a Column for the values added so far. */
+  Column build() {
+    if (this.numeric && !this.fractional && this.maxDigits <= MAX_LONG_DIGITS) {
+      return new LongColumn(Arrays.copyOf(this.unscaled, this.size));
+    }
+    if (this.numeric && this.maxDigits <= DoubleColumn.MAX_DIGITS) {
+      double[] values = new double[this.size];
+      for (int i = 0; i < this.size; i++) {
+        values[i] = DoubleColumn.toDouble(this.unscaled[i], this.scales[i]);
+      }
+      return new DoubleColumn(values, Arrays.copyOf(this.scales, this.size));
+    }
+    if (this.numeric) {
+      this.switchToText();
+    }
+    if (this.strings == null && this.dictionary.size() * 2L > this.size) {
+      this.switchToStrings();
+    }
+    if (this.strings != null) {
+      return new StringColumn(Arrays.copyOf(this.strings, this.size));
+    }
+    return new DictionaryColumn(
+        Arrays.copyOf(this.codes, this.size), this.dictionary.toArray(new String[0]));
+  }
+
+  /**
+   * Parses a decimal written in canonical form: an optional minus sign, an integer part without
+   * leading zeros, and an optional fractional part, with at most MAX_LONG_DIGITS digits in total.
+   * Anything else, such as "+1", "007", "1.", ".5", "-0" or "1e3", could not be written back the
+   * way it appeared, so it is treated as text.
+   *
+   * @return whether the range held a canonical decimal, in which case the parsed fields are set
+   */
+  private boolean parseDecimal(char[] chars, int start, int end) {
+    int i = start;
+    boolean negative = i < end && chars[i] == '-';
+    if (negative) {
+      i++;
+    }
+    int integerStart = i;
+    long value = 0;
+    while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+      value = value * 10 + (chars[i] - '0');
+      i++;
+      if (i - integerStart > MAX_LONG_DIGITS) {
+        return false;
+      }
+    }
+    int integerDigits = i - integerStart;
+    if (integerDigits == 0 || (integerDigits > 1 && chars[integerStart] == '0')) {
+      return false;
+    }
+
+    int scale = 0;
+    if (i < end && chars[i] == '.') {
+      i++;
+      while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+        value = value * 10 + (chars[i] - '0');
+        i++;
+        scale++;
+        if (integerDigits + scale > MAX_LONG_DIGITS) {
+          return false;
+        }
+      }
+      if (scale == 0) {
+        return false;
+      }
+    }
+    if (i != end || (negative && value == 0)) {
+      return false;
+    }
+
+    this.parsedUnscaled = negative ? -value : value;
+    this.parsedScale = scale;
+    this.parsedDigits = integerDigits + scale;
+    return true;
+  }
+
+  /** Adds the last parsed decimal to the quantiles, or stops sketching them if it did not parse. */
+  private void sketchQuantile(boolean parsed) {
+    if (this.quantiles == null) {
+      return;
+    } else if (parsed) {
+      this.quantiles.update(DoubleColumn.toDouble(this.parsedUnscaled, this.parsedScale));
+    } else {
+      this.quantiles = null;
+    }
+  }
+
+  /** Appends the last parsed decimal. */
+  private void addDecimal() {
+    this.ensureNumericCapacity(this.size + 1);
+    this.unscaled[this.size] = this.parsedUnscaled;
+    this.scales[this.size] = (byte) this.parsedScale;
+    this.maxDigits = Math.max(this.maxDigits, this.parsedDigits);
+    this.fractional |= this.parsedScale > 0;
+    this.size++;
+  }
+
+  /** Appends a value as text, first converting the column to text if it was numeric. */
+  private void addText(String value) {
+    if (this.numeric) {
+      this.switchToText();
+    }
+    if (this.strings != null) {
+      if (this.size == this.strings.length) {
+        this.strings = Arrays.copyOf(this.strings, this.size * 2);
+      }
+      this.strings[this.size++] = value;
+      return;
+    }
+
+    Integer code = this.codesByValue.get(value);
+    if (code == null) {
+      if (this.dictionary.size() == MAX_DICTIONARY_SIZE) {
+        this.switchToStrings();
+        this.addText(value);
+        return;
+      }
+      code = this.dictionary.size();
+      this.codesByValue.put(value, code);
+      this.dictionary.add(value);
+    }
+    if (this.size == this.codes.length) {
+      this.codes = Arrays.copyOf(this.codes, this.size * 2);
+    }
+    this.codes[this.size++] = code;
+  }
+
+  /** Gets the text of a value, whichever representation the column is in. */
+  private String textAt(int index) {
+    if (this.numeric) {
+      return decimalText(this.unscaled[index], this.scales[index]);
+    } else if (this.strings != null) {
+      return this.strings[index];
+    }
+    return this.dictionary.get(this.codes[index]);
+  }
+
+  /** Converts the numeric values added so far into dictionary-encoded text. */
+  private void switchToText() {
+    long[] oldUnscaled = this.unscaled;
+    byte[] oldScales = this.scales;
+    int oldSize = this.size;
+    this.numeric = false;
+    this.unscaled = null;
+    this.scales = null;
+    this.codesByValue = new HashMap<>();
+    this.dictionary = new ArrayList<>();
+    this.codes = new int[Math.max(16, oldSize * 2)];
+    this.size = 0;
+    for (int i = 0; i < oldSize; i++) {
+      this.addText(decimalText(oldUnscaled[i], oldScales[i]));
+    }
+  }
+
+  /** Converts dictionary codes into plain Strings. */
+  private void switchToStrings() {
+    this.strings = new String[Math.max(16, this.codes.length)];
+    for (int i = 0; i < this.size; i++) {
+      this.strings[i] = this.dictionary.get(this.codes[i]);
+    }
+    this.codesByValue = null;
+    this.dictionary = null;
+    this.codes = null;
+  }
+
+  private void ensureNumericCapacity(int capacity) {
+    if (capacity > this.unscaled.length) {
+      int newLength = Math.max(capacity, this.unscaled.length * 2);
+      this.unscaled = Arrays.copyOf(this.unscaled, newLength);
+      this.scales = Arrays.copyOf(this.scales, newLength);
+    }
+  }
+
+  /** Counts the digits a decimal was written with, as parseDecimal does. */
+  private static int digits(long unscaled, int scale) {
+    int digits = 1;
+    for (long value = Math.abs(unscaled); value >= 10; value /= 10) {
+      digits++;
+    }
+    // A value below one is written with a zero before the point
+    return Math.max(digits, scale + 1);
+  }
+
+  /** Writes a decimal back out in the canonical form it was parsed from. */
+  static String decimalText(long unscaled, int scale) {
+    if (scale == 0) {
+      return Long.toString(unscaled);
+    }
+    String digits = Long.toString(Math.abs(unscaled));
+    StringBuilder text = new StringBuilder(digits.length() + scale + 2);
+    if (unscaled < 0) {
+      text.append('-');
+    }
+    for (int i = digits.length(); i <= scale; i++) {
+      text.append('0');
+    }
+    text.append(digits);
+    text.insert(text.length() - scale, '.');
+    return text.toString();
+  }
+}
@@ -0,0 +1,369 @@
+package edu.brown.cs.student.csv;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexes one column of a ColumnarTable for searching. A hash index, from each value to the rows
+ * that hold it, answers equality lookups; a sorted index, of the rows in order of their values,
+ * answers range lookups with two binary searches. Each is built with one pass over the column the
+ * first time it is needed, after which a lookup only touches the rows it returns.
+ *
+ * <p>Values are matched exactly as they were written in the CSV. Ranges compare numbers by value if
+ * every non-empty value of the column is a number, and compare text otherwise; empty values are
+ * never in a range. Rows too short to have a value in the column are never matched.
+ *
+ * <p>The indexes hold row ids in primitive arrays and read values from the column itself rather
+ * than copying them. A column stored as numbers has no hash index: its sorted index already groups
+ * equal values, so an equality lookup is a range lookup whose rows are then checked against the
+ * text. The size of each index is added to its table's estimated size once it is built, so that
+ * indexes count against the DatasetRegistry's memory budget.
+ */
+public class ColumnIndex {
+  private final ColumnarTable table;
+  private final int column;
+  // Built the first time each kind of lookup is made
+  private volatile HashRows hashed;
+  private volatile SortedRows sorted;
+
+  /**
+   * @param table the table
+   * @param column index of the column
+   */
+  ColumnIndex(ColumnarTable table, int column) {
+    this.table = table;
+    this.column = column;
+  }
+
+  /**
+   * Finds the rows whose value equals the given one.
+   *
+   * @param value value as written in the CSV
+   * @return indices of the matching rows, in ascending order; callers must not change the array
+   */
+  public int[] equalTo(String value) {
+    Column values = this.table.getColumn(this.column);
+    if (values instanceof LongColumn || values instanceof DoubleColumn) {
+      return this.equalToNumber(values, value);
+    }
+    HashRows hashed = this.hashed;
+    if (hashed == null) {
+      hashed = this.buildHashIndex();
+    }
+    return hashed.get(value);
+  }
+
+  /**
+   * Finds the rows whose value is within a range, including both ends.
+   *
+   * @param min smallest value to match, or null for no lower bound
+   * @param max largest value to match, or null for no upper bound
+   * @return indices of the matching rows, in ascending order
+   * @throws IllegalArgumentException if the column holds numbers and a bound is not one
+   */
+  public int[] between(String min, String max) {
+    SortedRows sorted = this.sortedRows();
+    int start = min == null ? 0 : sorted.search(min, false);
+    int end = max == null ? sorted.rows.length : sorted.search(max, true);
+    if (start >= end) {
+      return new int[0];
+    }
+    int[] rows = Arrays.copyOfRange(sorted.rows, start, end);
+    Arrays.sort(rows);
+    return rows;
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the indexes built so far
+   */
+  public long estimateBytes() {
+    HashRows hashed = this.hashed;
+    SortedRows sorted = this.sorted;
+    return (hashed == null ? 0 : hashed.bytes) + (sorted == null ? 0 : sorted.bytes);
+  }
+
+  /**
+   * Finds the rows of a column stored as numbers whose text equals the given one, from the rows of
+   * the sorted index with the same value.
+   */
+  private int[] equalToNumber(Column values, String value) {
+    if (ColumnStats.parseNumber(value.trim()) == null) {
+      return new int[0];
+    }
+    SortedRows sorted = this.sortedRows();
+    int start = sorted.search(value, false);
+    int end = sorted.search(value, true);
+    int[] rows = new int[end - start];
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      // Equal numbers may have been written differently, such as 10 and 10.0
+      int row = sorted.rows[i];
+      if (values.getString(row).equals(value)) {
+        rows[count++] = row;
+      }
+    }
+    rows = Arrays.copyOf(rows, count);
+    Arrays.sort(rows);
+    return rows;
+  }
+
+  private SortedRows sortedRows() {
+    SortedRows sorted = this.sorted;
+    if (sorted == null) {
+      sorted = this.buildSortedIndex();
+    }
+    return sorted;
+  }
+
+  /**
+   * Groups the rows of a text column by value, in one pass over the column. A dictionary column is
+   * grouped by code, and a column of other text by the Strings it already holds.
+   */
+  private synchronized HashRows buildHashIndex() {
+    if (this.hashed != null) {
+      return this.hashed;
+    }
+    Column values = this.table.getColumn(this.column);
+    int rowCount = this.table.getRowCount();
+    HashRows hashed;
+    if (values instanceof DictionaryColumn dictionary) {
+      int size = dictionary.getDictionarySize();
+      int[] counts = new int[size];
+      for (int row = 0; row < rowCount; row++) {
+        if (this.table.hasValue(row, this.column)) {
+          counts[dictionary.getCode(row)]++;
+        }
+      }
+      int[][] rowsByCode = new int[size][];
+      for (int code = 0; code < size; code++) {
+        rowsByCode[code] = new int[counts[code]];
+        counts[code] = 0;
+      }
+      for (int row = 0; row < rowCount; row++) {
+        if (this.table.hasValue(row, this.column)) {
+          int code = dictionary.getCode(row);
+          rowsByCode[code][counts[code]++] = row;
+        }
+      }
+      Map<String, int[]> rowsByValue = new HashMap<>();
+      long bytes = 64;
+      for (int code = 0; code < size; code++) {
+        rowsByValue.put(dictionary.getDictionaryValue(code), rowsByCode[code]);
+        bytes += 48 + 16 + 4L * rowsByCode[code].length;
+      }
+      hashed = new HashRows(rowsByValue, bytes);
+    } else {
+      Map<String, Group> groups = new HashMap<>();
+      for (int row = 0; row < rowCount; row++) {
+        if (this.table.hasValue(row, this.column)) {
+          groups.computeIfAbsent(values.getString(row), value -> new Group()).add(row);
+        }
+      }
+      Map<String, int[]> rowsByValue = new HashMap<>();
+      long bytes = 64;
+      for (Map.Entry<String, Group> group : groups.entrySet()) {
+        int[] rows = group.getValue().toArray();
+        rowsByValue.put(group.getKey(), rows);
+        // The Strings are shared with the column, so only the entries and arrays are counted
+        bytes += 48 + 16 + 4L * rows.length;
+      }
+      hashed = new HashRows(rowsByValue, bytes);
+    }
+    this.hashed = hashed;
+    this.table.addIndexBytes(hashed.bytes);
+    return hashed;
+  }
+
+  /**
+   * Sorts the ids of the rows with a non-empty value by that value, as numbers if every one is a
+   * number. Stored numbers and dictionary codes are compared where they are; only a column of
+   * numbers stored as text is parsed, once per row, into an array kept while sorting.
+   */
+  private synchronized SortedRows buildSortedIndex() {
+    if (this.sorted != null) {
+      return this.sorted;
+    }
+    Column values = this.table.getColumn(this.column);
+    int rowCount = this.table.getRowCount();
+    boolean stored = values instanceof LongColumn || values instanceof DoubleColumn;
+    int[] rows = new int[rowCount];
+    int count = 0;
+    boolean numeric = true;
+    for (int row = 0; row < rowCount; row++) {
+      if (!this.table.hasValue(row, this.column)) {
+        continue;
+      }
+      if (!stored) {
+        String value = values.getString(row);
+        if (value.isEmpty()) {
+          continue;
+        }
+        numeric = numeric && ColumnStats.parseNumber(value) != null;
+      }
+      rows[count++] = row;
+    }
+    rows = Arrays.copyOf(rows, count);
+
+    RowComparator comparator;
+    int[] ranks = null;
+    if (values instanceof LongColumn longs) {
+      comparator = (a, b) -> Long.compare(longs.getLong(a), longs.getLong(b));
+    } else if (values instanceof DoubleColumn doubles) {
+      comparator = (a, b) -> Double.compare(doubles.getDouble(a), doubles.getDouble(b));
+    } else if (numeric) {
+      double[] numbers = new double[rowCount];
+      for (int row : rows) {
+        numbers[row] = ColumnStats.parseNumber(values.getString(row));
+      }
+      comparator = (a, b) -> Double.compare(numbers[a], numbers[b]);
+    } else if (values instanceof DictionaryColumn dictionary) {
+      // Ranks each distinct value once, so rows compare by their codes' ranks
+      Integer[] codes = new Integer[dictionary.getDictionarySize()];
+      for (int code = 0; code < codes.length; code++) {
+        codes[code] = code;
+      }
+      Arrays.sort(
+          codes,
+          (a, b) -> dictionary.getDictionaryValue(a).compareTo(dictionary.getDictionaryValue(b)));
+      int[] rankOf = new int[codes.length];
+      for (int rank = 0; rank < codes.length; rank++) {
+        rankOf[codes[rank]] = rank;
+      }
+      ranks = rankOf;
+      comparator =
+          (a, b) -> Integer.compare(rankOf[dictionary.getCode(a)], rankOf[dictionary.getCode(b)]);
+    } else {
+      comparator = (a, b) -> values.getString(a).compareTo(values.getString(b));
+    }
+    sort(rows, comparator);
+
+    long bytes = 48 + 16 + 4L * rows.length + (ranks == null ? 0 : 16 + 4L * ranks.length);
+    SortedRows sorted = new SortedRows(values, rows, stored || numeric, bytes);
+    this.sorted = sorted;
+    this.table.addIndexBytes(bytes);
+    return sorted;
+  }
+
+  /** Compares two rows by their values. */
+  private interface RowComparator {
+    int compare(int a, int b);
+  }
+
+  /** Sorts row ids with a stable merge sort, which needs no boxed copy of them. */
+  private static void sort(int[] rows, RowComparator comparator) {
+    int[] buffer = rows.clone();
+    mergeSort(buffer, rows, 0, rows.length, comparator);
+  }
+
+  /** Sorts from[low, high) into to[low, high), where both hold the same rows to begin with. */
+  private static void mergeSort(int[] from, int[] to, int low, int high, RowComparator comparator) {
+    if (high - low < 16) {
+      for (int i = low + 1; i < high; i++) {
+        int row = to[i];
+        int j = i;
+        for (; j > low && comparator.compare(to[j - 1], row) > 0; j--) {
+          to[j] = to[j - 1];
+        }
+        to[j] = row;
+      }
+      return;
+    }
+    int middle = (low + high) >>> 1;
+    // Sorts each half into from, then merges the halves back into to
+    mergeSort(to, from, low, middle, comparator);
+    mergeSort(to, from, middle, high, comparator);
+    int left = low;
+    int right = middle;
+    for (int i = low; i < high; i++) {
+      if (right >= high || (left < middle && comparator.compare(from[left], from[right]) <= 0)) {
+        to[i] = from[left++];
+      } else {
+        to[i] = from[right++];
+      }
+    }
+  }
+
+  /** Rows of each value of a text column. */
+  private static final class HashRows {
+    private final Map<String, int[]> rowsByValue;
+    private final long bytes;
+
+    private HashRows(Map<String, int[]> rowsByValue, long bytes) {
+      this.rowsByValue = rowsByValue;
+      this.bytes = bytes;
+    }
+
+    private int[] get(String value) {
+      return this.rowsByValue.getOrDefault(value, new int[0]);
+    }
+  }
+
+  /** Rows of one value, gathered in a growing array. */
+  private static final class Group {
+    private int[] rows = new int[1];
+    private int size = 0;
+
+    private void add(int row) {
+      if (this.size == this.rows.length) {
+        this.rows = Arrays.copyOf(this.rows, this.size * 2);
+      }
+      this.rows[this.size++] = row;
+    }
+
+    private int[] toArray() {
+      return this.size == this.rows.length ? this.rows : Arrays.copyOf(this.rows, this.size);
+    }
+  }
+
+  /** Rows in order of their values, which are read from the column, as numbers or as text. */
+  private static final class SortedRows {
+    private final Column values;
+    private final int[] rows;
+    private final boolean numeric;
+    private final long bytes;
+
+    private SortedRows(Column values, int[] rows, boolean numeric, long bytes) {
+      this.values = values;
+      this.rows = rows;
+      this.numeric = numeric;
+      this.bytes = bytes;
+    }
+
+    /** Position of the first value greater than a bound, or greater than or equal to it. */
+    private int search(String bound, boolean above) {
+      double number = 0;
+      if (this.numeric) {
+        Double parsed = ColumnStats.parseNumber(bound.trim());
+        if (parsed == null) {
+          throw new IllegalArgumentException("Not a number: " + bound);
+        }
+        number = parsed;
+      }
+      int low = 0;
+      int high = this.rows.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        int comparison =
+            this.numeric
+                ? Double.compare(this.number(this.rows[middle]), number)
+                : this.values.getString(this.rows[middle]).compareTo(bound);
+        if (comparison < 0 || (above && comparison == 0)) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+
+    private double number(int row) {
+      if (this.values instanceof LongColumn longs) {
+        return longs.getLong(row);
+      } else if (this.values instanceof DoubleColumn doubles) {
+        return doubles.getDouble(row);
+      }
+      return ColumnStats.parseNumber(this.values.getString(row));
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * Summary of the values in one column of a ColumnarTable: its inferred type, how many rows have a
+ * value, are empty, or are missing the column altogether, the number of distinct values, and for
+ * numeric columns the minimum, maximum, mean and population standard deviation.
+ *
+ * <p>A column stored as text is still summarized as numbers if every non-empty value in it is a
+ * number, since a single empty field is enough to keep a column of numbers from being stored as
+ * one. The statistics are computed with one pass over the column that keeps none of its values.
+ * They are exact, apart from the number of distinct values, which is estimated by the HyperLogLog
+ * sketch made while the column was loaded.
+ */
+public class ColumnStats {
+  private final String name;
+  private final String type;
+  private final int count;
+  private final int empty;
+  private final int missing;
+  private final int distinct;
+  // Only set for numeric columns with at least one value
+  private final Double min;
+  private final Double max;
+  private final Double mean;
+  private final Double stddev;
+
+  private ColumnStats(
+      String name,
+      String type,
+      int count,
+      int empty,
+      int missing,
+      int distinct,
+      Double min,
+      Double max,
+      Double mean,
+      Double stddev) {
+    this.name = name;
+    this.type = type;
+    this.count = count;
+    this.empty = empty;
+    this.missing = missing;
+    this.distinct = distinct;
+    this.min = min;
+    this.max = max;
+    this.mean = mean;
+    this.stddev = stddev;
+  }
+
+  /**
+   * Computes the statistics of a column.
+   *
+   * @param table the table
+   * @param index index of the column
+   * @return statistics of the column
+   */
+  static ColumnStats compute(ColumnarTable table, int index) {
+    String name = index < table.getHeader().size() ? table.getHeader().get(index) : "";
+    Column column = table.getColumn(index);
+    int rows = table.getRowCount();
+    int distinct = (int) Math.min(Integer.MAX_VALUE, table.getDistinctSketch(index).estimate());
+
+    // Numbers are read straight from numeric columns, and parsed from text columns if possible.
+    // Welford's method keeps the mean and spread accurate when the mean is large compared to the
+    // spread, without keeping the numbers
+    int count = 0;
+    int empty = 0;
+    int missing = 0;
+    boolean numeric = true;
+    boolean integral = column.getType() != ColumnType.DOUBLE;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    double mean = 0;
+    double squares = 0;
+    for (int row = 0; row < rows; row++) {
+      if (!table.hasValue(row, index)) {
+        missing++;
+        continue;
+      }
+      double number;
+      if (column instanceof LongColumn longs) {
+        number = longs.getLong(row);
+      } else if (column instanceof DoubleColumn doubles) {
+        number = doubles.getDouble(row);
+      } else {
+        String value = column.getString(row);
+        if (value.isEmpty()) {
+          empty++;
+          continue;
+        }
+        Double parsed = numeric ? parseNumber(value) : null;
+        if (parsed == null) {
+          // The column is text, so the rest of its values are only counted
+          numeric = false;
+          count++;
+          continue;
+        }
+        integral &= isInteger(value);
+        number = parsed;
+      }
+      count++;
+      min = Math.min(min, number);
+      max = Math.max(max, number);
+      double delta = number - mean;
+      mean += delta / count;
+      squares += delta * (number - mean);
+    }
+
+    if (!numeric || count == 0) {
+      return new ColumnStats(
+          name,
+          column.getType() == ColumnType.STRING ? "string" : typeName(column.getType()),
+          count,
+          empty,
+          missing,
+          distinct,
+          null,
+          null,
+          null,
+          null);
+    }
+    return new ColumnStats(
+        name,
+        integral ? "long" : "double",
+        count,
+        empty,
+        missing,
+        distinct,
+        min,
+        max,
+        mean,
+        Math.sqrt(squares / count));
+  }
+
+  /** Parses a plain decimal number, or returns null for anything else such as "NaN" or "0x1". */
+  static Double parseNumber(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!(c >= '0' && c <= '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+        return null;
+      }
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** Whether a number is written as an integer, with only digits after an optional sign. */
+  private static boolean isInteger(String value) {
+    int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+    for (int i = start; i < value.length(); i++) {
+      if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return start < value.length();
+  }
+
+  /** Name of a column type as reported by the stats endpoint. */
+  private static String typeName(ColumnType type) {
+    return type.name().toLowerCase();
+  }
+
+  /**
+   * @return name of the column from the header, or an empty String if unknown
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * @return inferred type of the values: "long", "double" or "string"
+   */
+  public String getType() {
+    return this.type;
+  }
+
+  /**
+   * @return number of rows with a non-empty value in the column
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * @return number of rows whose value in the column is empty
+   */
+  public int getEmpty() {
+    return this.empty;
+  }
+
+  /**
+   * @return number of rows too short to have a value in the column
+   */
+  public int getMissing() {
+    return this.missing;
+  }
+
+  /**
+   * @return estimated number of distinct non-empty values, compared as they were written
+   */
+  public int getDistinct() {
+    return this.distinct;
+  }
+
+  /**
+   * @return whether the minimum, maximum, mean and standard deviation are set
+   */
+  public boolean isNumeric() {
+    return this.min != null;
+  }
+
+  /**
+   * @return smallest value, or null if the column is not numeric
+   */
+  public Double getMin() {
+    return this.min;
+  }
+
+  /**
+   * @return largest value, or null if the column is not numeric
+   */
+  public Double getMax() {
+    return this.max;
+  }
+
+  /**
+   * @return mean of the values, or null if the column is not numeric
+   */
+  public Double getMean() {
+    return this.mean;
+  }
+
+  /**
+   * @return population standard deviation of the values, or null if the column is not numeric
+   */
+  public Double getStddev() {
+    return this.stddev;
+  }
+}
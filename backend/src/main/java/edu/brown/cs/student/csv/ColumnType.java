@@ -0,0 +1,11 @@
+package edu.brown.cs.student.csv;
+
+/** The type of the values in a Column, inferred when the CSV is loaded. */
+public enum ColumnType {
+  /** Every value is an integer, stored in a long[] */
+  LONG,
+  /** Every value is a decimal number, stored in a double[] */
+  DOUBLE,
+  /** Values are arbitrary text, stored as Strings or dictionary codes */
+  STRING
+}
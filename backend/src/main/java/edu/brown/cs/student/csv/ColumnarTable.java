@@ -0,0 +1,380 @@
+package edu.brown.cs.student.csv;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The contents of a CSV file stored column by column. Each column is a single array whose type is
+ * inferred when the file is loaded (see ColumnBuilder), which takes a fraction of the memory of one
+ * List of Strings per row and lets a column be scanned sequentially. Rows may have different
+ * widths, as in the original file. The table is immutable, apart from the search indexes built for
+ * its columns, whose size is counted in estimateBytes().
+ */
+public class ColumnarTable {
+  private final List<String> header;
+  private final Column[] columns;
+  private final int rowCount;
+  // Width of each row, or null if every row has a value in every column
+  private final int[] widths;
+  // Sketches of each column made while loading; a quantile sketch is null if the column has text
+  private final HyperLogLog[] distinct;
+  private final KllSketch[] quantiles;
+  // Statistics of each column, computed the first time they are requested
+  private volatile List<ColumnStats> stats;
+  // Search index of each column, created the first time the column is searched
+  private final AtomicReferenceArray<ColumnIndex> indexes;
+  // Whether each column stored as text holds only numbers, worked out the first time it is asked
+  private final AtomicReferenceArray<Boolean> numericText;
+  // Total estimated size of the built indexes, and who to tell when it grows
+  private final AtomicLong indexBytes = new AtomicLong();
+  private volatile LongConsumer indexGrowth;
+
+  /**
+   * @param header names of the columns, or an empty list if unknown
+   * @param columns columns of the table, each with rowCount values
+   * @param rowCount number of rows
+   * @param widths number of values in each row, or null if every row is full
+   * @param distinct sketch of the distinct values of each column
+   * @param quantiles sketch of the quantiles of each column, or null for a column with text
+   */
+  ColumnarTable(
+      List<String> header,
+      Column[] columns,
+      int rowCount,
+      int[] widths,
+      HyperLogLog[] distinct,
+      KllSketch[] quantiles) {
+    this.header = header;
+    this.columns = columns;
+    this.rowCount = rowCount;
+    this.widths = widths;
+    this.distinct = distinct;
+    this.quantiles = quantiles;
+    this.indexes = new AtomicReferenceArray<>(columns.length);
+    this.numericText = new AtomicReferenceArray<>(columns.length);
+  }
+
+  /**
+   * Builds a table from rows that are already in memory.
+   *
+   * @param rows values of each row
+   * @return table holding the rows
+   */
+  public static ColumnarTable fromRows(List<List<String>> rows) {
+    ColumnarTableBuilder builder = new ColumnarTableBuilder();
+    for (List<String> row : rows) {
+      builder.addRow(row);
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return names of the columns from the first line of the file, or an empty list if unknown
+   */
+  public List<String> getHeader() {
+    return this.header;
+  }
+
+  /**
+   * @return number of rows, not counting the header
+   */
+  public int getRowCount() {
+    return this.rowCount;
+  }
+
+  /**
+   * @return number of columns, which is the width of the widest row
+   */
+  public int getColumnCount() {
+    return this.columns.length;
+  }
+
+  /**
+   * @param index index of the column
+   * @return the column
+   */
+  public Column getColumn(int index) {
+    return this.columns[index];
+  }
+
+  /**
+   * @param row index of the row
+   * @return number of values in the row
+   */
+  public int getRowWidth(int row) {
+    if (row < 0 || row >= this.rowCount) {
+      throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + this.rowCount);
+    }
+    return this.widths == null ? this.columns.length : this.widths[row];
+  }
+
+  /**
+   * @param row index of the row
+   * @param column index of the column
+   * @return whether the row has a value in the column
+   */
+  public boolean hasValue(int row, int column) {
+    return column < this.getRowWidth(row);
+  }
+
+  /**
+   * @param row index of the row
+   * @param column index of the column
+   * @return text of the value
+   */
+  public String get(int row, int column) {
+    if (!this.hasValue(row, column)) {
+      throw new IndexOutOfBoundsException("Row " + row + " has no column " + column);
+    }
+    return this.columns[column].getString(row);
+  }
+
+  /**
+   * @param row index of the row
+   * @return unmodifiable list of the values of the row
+   */
+  public List<String> getRow(int row) {
+    String[] values = new String[this.getRowWidth(row)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.columns[i].getString(row);
+    }
+    return List.of(values);
+  }
+
+  /**
+   * @return unmodifiable view of the table as a list of rows, each built when it is accessed
+   */
+  public List<List<String>> rows() {
+    return new AbstractList<>() {
+      @Override
+      public List<String> get(int index) {
+        return getRow(index);
+      }
+
+      @Override
+      public int size() {
+        return rowCount;
+      }
+    };
+  }
+
+  /**
+   * Builds a view of a range of rows restricted to some of the columns. Only the values that are
+   * accessed are converted to text, so a page of a large table costs no more than the page itself.
+   * A row without a value in a requested column has an empty String there, as a missing field
+   * would.
+   *
+   * @param offset index of the first row, past the end of the table for an empty view
+   * @param limit greatest number of rows in the view
+   * @param columns indices of the columns to include, in order
+   * @return unmodifiable view of the rows
+   */
+  public List<List<String>> rows(int offset, int limit, int[] columns) {
+    return this.rows(null, offset, limit, columns);
+  }
+
+  /**
+   * Builds a view of a range of the selected rows, such as the rows matched by a RowFilter,
+   * restricted to some of the columns. Like rows(offset, limit, columns), values are only converted
+   * to text when they are accessed.
+   *
+   * @param selection indices of the selected rows, in order, or null for every row
+   * @param offset index within the selection of the first row
+   * @param limit greatest number of rows in the view
+   * @param columns indices of the columns to include, in order
+   * @return unmodifiable view of the rows
+   */
+  public List<List<String>> rows(int[] selection, int offset, int limit, int[] columns) {
+    for (int column : columns) {
+      if (column < 0 || column >= this.columns.length) {
+        throw new IndexOutOfBoundsException(
+            "Column " + column + " out of bounds for " + this.columns.length);
+      }
+    }
+    int selected = selection == null ? this.rowCount : selection.length;
+    int from = Math.min(Math.max(offset, 0), selected);
+    int size = Math.min(Math.max(limit, 0), selected - from);
+    int[] projection = columns.clone();
+    return new AbstractList<>() {
+      @Override
+      public List<String> get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("Row " + index + " out of bounds for " + size);
+        }
+        int row = selection == null ? from + index : selection[from + index];
+        int width = getRowWidth(row);
+        String[] values = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+          values[i] =
+              projection[i] < width ? ColumnarTable.this.columns[projection[i]].getString(row) : "";
+        }
+        return List.of(values);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Finds a column by its name in the header.
+   *
+   * @param name name of the column
+   * @return index of the first column with the name, or -1 if there is none
+   */
+  public int getColumnIndex(String name) {
+    return this.header.indexOf(name);
+  }
+
+  /**
+   * Gets the statistics of every column. They are computed, one column per core, the first time
+   * they are requested, and kept for as long as the table, which never changes.
+   *
+   * @return unmodifiable list of the statistics of each column
+   */
+  public List<ColumnStats> getColumnStats() {
+    List<ColumnStats> stats = this.stats;
+    if (stats == null) {
+      // Computing twice in a race gives the same result, so no lock is needed
+      stats =
+          IntStream.range(0, this.columns.length)
+              .parallel()
+              .mapToObj(i -> ColumnStats.compute(this, i))
+              .collect(Collectors.toUnmodifiableList());
+      this.stats = stats;
+    }
+    return stats;
+  }
+
+  /**
+   * Whether a column stored as text holds only numbers and empty values, and at least one number,
+   * judged as ColumnIndex and ColumnStats judge it. It is worked out with one pass over the column
+   * the first time it is asked, and kept for as long as the table.
+   *
+   * @param index index of the column
+   * @return whether the column is text whose values are all numbers
+   */
+  boolean isNumericText(int index) {
+    Boolean numericText = this.numericText.get(index);
+    if (numericText == null) {
+      // Working it out twice in a race gives the same result, so no lock is needed
+      numericText = this.findNumericText(index);
+      this.numericText.set(index, numericText);
+    }
+    return numericText;
+  }
+
+  private boolean findNumericText(int index) {
+    Column values = this.columns[index];
+    if (values instanceof LongColumn || values instanceof DoubleColumn) {
+      return false;
+    }
+    boolean any = false;
+    if (values instanceof DictionaryColumn dictionary) {
+      for (int code = 0; code < dictionary.getDictionarySize(); code++) {
+        String value = dictionary.getDictionaryValue(code);
+        if (!value.isEmpty()) {
+          if (ColumnStats.parseNumber(value) == null) {
+            return false;
+          }
+          any = true;
+        }
+      }
+      return any;
+    }
+    for (int row = 0; row < this.rowCount; row++) {
+      if (this.hasValue(row, index)) {
+        String value = values.getString(row);
+        if (!value.isEmpty()) {
+          if (ColumnStats.parseNumber(value) == null) {
+            return false;
+          }
+          any = true;
+        }
+      }
+    }
+    return any;
+  }
+
+  /**
+   * Gets the search index of a column. The index is kept for as long as the table, so it is dropped
+   * along with the table when another load replaces it.
+   *
+   * @param index index of the column
+   * @return index of the column, whose lookups build it the first time they are made
+   */
+  public ColumnIndex getIndex(int index) {
+    ColumnIndex columnIndex = this.indexes.get(index);
+    if (columnIndex == null) {
+      this.indexes.compareAndSet(index, null, new ColumnIndex(this, index));
+      columnIndex = this.indexes.get(index);
+    }
+    return columnIndex;
+  }
+
+  /**
+   * Sets what is told of each index built for the table, such as the registry it is resident in.
+   *
+   * @param indexGrowth told the estimated size in bytes of each index built, or null
+   */
+  void setIndexGrowth(LongConsumer indexGrowth) {
+    this.indexGrowth = indexGrowth;
+  }
+
+  /**
+   * Counts an index built for the table in its estimated size.
+   *
+   * @param bytes estimated size of the index, in bytes
+   */
+  void addIndexBytes(long bytes) {
+    this.indexBytes.addAndGet(bytes);
+    LongConsumer indexGrowth = this.indexGrowth;
+    if (indexGrowth != null) {
+      indexGrowth.accept(bytes);
+    }
+  }
+
+  /**
+   * Gets the sketch of the distinct values of a column, made while the table was loaded. It is
+   * shared by every caller, so it must not be merged into.
+   *
+   * @param index index of the column
+   * @return sketch of the distinct non-empty values of the column
+   */
+  public HyperLogLog getDistinctSketch(int index) {
+    return this.distinct[index];
+  }
+
+  /**
+   * Gets the sketch of the quantiles of a column, made while the table was loaded. It is shared by
+   * every caller, so it must not be merged into.
+   *
+   * @param index index of the column
+   * @return sketch of the quantiles of the non-empty values of the column, or null if any of them
+   *     is not a number
+   */
+  public KllSketch getQuantileSketch(int index) {
+    return this.quantiles[index];
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the table, including its built indexes
+   */
+  public long estimateBytes() {
+    long bytes = 64 + (this.widths == null ? 0 : 4L * this.widths.length) + this.indexBytes.get();
+    for (int i = 0; i < this.columns.length; i++) {
+      bytes += this.columns[i].estimateBytes() + this.distinct[i].estimateBytes();
+      if (this.quantiles[i] != null) {
+        bytes += this.quantiles[i].estimateBytes();
+      }
+    }
+    return bytes;
+  }
+}
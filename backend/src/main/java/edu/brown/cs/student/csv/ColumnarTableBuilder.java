@@ -0,0 +1,159 @@
+package edu.brown.cs.student.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a ColumnarTable one row at a time, so that a CSV can be loaded straight into columns
+ * without first holding every row as a List of Strings. Builders for consecutive parts of a file
+ * can be filled in parallel and then joined in order with addAll.
+ */
+public class ColumnarTableBuilder {
+  private final List<ColumnBuilder> columns = new ArrayList<>();
+  private List<String> header = List.of();
+  private int[] widths = new int[16];
+  private int rowCount = 0;
+
+  public ColumnarTableBuilder() {}
+
+  /**
+   * Creates a builder holding every row of a table, so that rows can be appended to it, such as
+   * rows added to the end of the file it was loaded from, without loading the earlier rows again.
+   * The table itself is left unchanged.
+   *
+   * @param table table to start from
+   */
+  public ColumnarTableBuilder(ColumnarTable table) {
+    this.header = table.getHeader();
+    for (int i = 0; i < table.getColumnCount(); i++) {
+      this.columns.add(
+          new ColumnBuilder(
+              table.getColumn(i), table.getDistinctSketch(i), table.getQuantileSketch(i)));
+    }
+    this.rowCount = table.getRowCount();
+    this.widths = new int[Math.max(16, this.rowCount)];
+    for (int row = 0; row < this.rowCount; row++) {
+      this.widths[row] = table.getRowWidth(row);
+    }
+  }
+
+  /**
+   * @param header names of the columns, from the first line of the CSV
+   */
+  public void setHeader(List<String> header) {
+    this.header = List.copyOf(header);
+  }
+
+  /**
+   * @param row values of the next row
+   */
+  public void addRow(List<String> row) {
+    this.startRow(row.size());
+    for (int i = 0; i < row.size(); i++) {
+      this.columns.get(i).add(row.get(i));
+    }
+    this.endRow(row.size());
+  }
+
+  /**
+   * Adds the next row straight from the tokenizer's buffer, so numeric values never become Strings.
+   *
+   * @param row values of the next row
+   */
+  public void addRow(CSVRow row) {
+    int size = row.size();
+    this.startRow(size);
+    for (int i = 0; i < size; i++) {
+      ColumnBuilder column = this.columns.get(i);
+      if (row.isEscaped(i)) {
+        column.add(row.get(i));
+      } else {
+        column.add(row.getChars(), row.getStart(i), row.getEnd(i));
+      }
+    }
+    this.endRow(size);
+  }
+
+  /**
+   * Appends every row of another builder after the rows of this one.
+   *
+   * @param other builder holding the rows that follow
+   */
+  public void addAll(ColumnarTableBuilder other) {
+    while (this.columns.size() < other.columns.size()) {
+      this.columns.add(this.newColumn());
+    }
+    for (int i = 0; i < this.columns.size(); i++) {
+      if (i < other.columns.size()) {
+        this.columns.get(i).addAll(other.columns.get(i));
+      } else {
+        for (int row = 0; row < other.rowCount; row++) {
+          this.columns.get(i).addMissing();
+        }
+      }
+    }
+    this.ensureWidthCapacity(this.rowCount + other.rowCount);
+    System.arraycopy(other.widths, 0, this.widths, this.rowCount, other.rowCount);
+    this.rowCount += other.rowCount;
+  }
+
+  /**
+   * @return table holding every row added so far
+   */
+  public ColumnarTable build() {
+    Column[] built = new Column[this.columns.size()];
+    HyperLogLog[] distinct = new HyperLogLog[built.length];
+    KllSketch[] quantiles = new KllSketch[built.length];
+    for (int i = 0; i < built.length; i++) {
+      ColumnBuilder column = this.columns.get(i);
+      built[i] = column.build();
+      distinct[i] = column.getDistinctSketch();
+      quantiles[i] = column.getQuantileSketch();
+      if (quantiles[i] != null) {
+        quantiles[i].trimToSize();
+      }
+    }
+
+    // Only keeps the width of each row if some rows are shorter than others
+    int[] rowWidths = null;
+    for (int i = 0; i < this.rowCount; i++) {
+      if (this.widths[i] != built.length) {
+        rowWidths = Arrays.copyOf(this.widths, this.rowCount);
+        break;
+      }
+    }
+    return new ColumnarTable(this.header, built, this.rowCount, rowWidths, distinct, quantiles);
+  }
+
+  /** Adds columns for a row wider than any before it. */
+  private void startRow(int width) {
+    while (this.columns.size() < width) {
+      this.columns.add(this.newColumn());
+    }
+  }
+
+  /** Pads the columns a row was too short for, and records its width. */
+  private void endRow(int width) {
+    for (int i = width; i < this.columns.size(); i++) {
+      this.columns.get(i).addMissing();
+    }
+    this.ensureWidthCapacity(this.rowCount + 1);
+    this.widths[this.rowCount++] = width;
+  }
+
+  /** Creates a column with a placeholder for each earlier row. */
+  private ColumnBuilder newColumn() {
+    ColumnBuilder column = new ColumnBuilder();
+    for (int i = 0; i < this.rowCount; i++) {
+      column.addMissing();
+    }
+    return column;
+  }
+
+  private void ensureWidthCapacity(int capacity) {
+    if (capacity > this.widths.length) {
+      this.widths = Arrays.copyOf(this.widths, Math.max(capacity, this.widths.length * 2));
+    }
+  }
+}
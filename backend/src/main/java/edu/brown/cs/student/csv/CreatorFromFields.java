@@ -0,0 +1,19 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * A CreatorFromRow that can also create an object directly from a CSVRow. CSVParser and
+ * MappedCSVLoader use this variant when it is available, so numeric fields can be read with
+ * CSVRow.getLong and CSVRow.getDouble straight from the parser's buffer, without a String being
+ * allocated for every field.
+ *
+ * @param <T> object to be created
+ */
+public interface CreatorFromFields<T> extends CreatorFromRow<T> {
+
+  /**
+   * @param row current row in the CSV file, which is only valid until the parser advances
+   * @return type version of the row
+   * @throws FactoryFailureException error from creating object
+   */
+  T create(CSVRow row) throws FactoryFailureException;
+}
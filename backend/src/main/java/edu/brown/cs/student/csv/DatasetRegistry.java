@@ -0,0 +1,349 @@
+package edu.brown.cs.student.csv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps recently loaded CSV files resident so that switching back to a file does not parse it
+ * again. Datasets are named by their filepath, and each one remembers the modification time and
+ * size of the file it was parsed from: loading a file that is resident and unchanged returns the
+ * table already in memory, while a changed file is parsed again.
+ *
+ * <p>A file that has only been appended to since it was parsed is not parsed again from the start:
+ * the rows after the end of the earlier parse are loaded and appended to the resident table. A file
+ * counts as appended to if it has grown, the earlier parse ended at the end of a line, and the
+ * bytes at its start and just before the end of the earlier parse are unchanged. Anything else,
+ * such as a file rewritten in place, is parsed again in full.
+ *
+ * <p>A file that is not resident is read from its TableSnapshotFile, if it has one that was made
+ * from the start of the file as it is now, instead of being parsed. Snapshots are written after
+ * each parse if the registry is created to write them, or on request with writeSnapshot().
+ *
+ * <p>The tables share a memory budget, measured with ColumnarTable.estimateBytes(). When a load
+ * takes the total over budget, the least recently used datasets are evicted until it fits again.
+ * The dataset just loaded is never evicted, so a single file larger than the budget is still
+ * served. Search indexes built for a resident table count towards its size, so building one may
+ * also evict other datasets.
+ */
+public class DatasetRegistry {
+  /** Memory budget used when none is configured, in bytes */
+  public static final long DEFAULT_MEMORY_BUDGET = 512L * 1024 * 1024;
+  // Bytes read at each end of the parsed part of a file to tell whether it was only appended to
+  private static final int FINGERPRINT_BYTES = 4096;
+  // Fingerprint of a file that cannot be appended to, such as one ending partway through a line
+  private static final long NOT_APPENDABLE = -1;
+
+  private final long memoryBudget;
+  private final boolean writeSnapshots;
+  // Ordered from least to most recently used
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong versions = new AtomicLong();
+  private long residentBytes = 0;
+
+  public DatasetRegistry() {
+    this(DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * @param memoryBudget total estimated size of the resident tables, in bytes
+   */
+  public DatasetRegistry(long memoryBudget) {
+    this(memoryBudget, false);
+  }
+
+  /**
+   * @param memoryBudget total estimated size of the resident tables, in bytes
+   * @param writeSnapshots whether to write a snapshot next to each file after it is parsed
+   */
+  public DatasetRegistry(long memoryBudget, boolean writeSnapshots) {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+    }
+    this.memoryBudget = memoryBudget;
+    this.writeSnapshots = writeSnapshots;
+  }
+
+  /**
+   * Returns the dataset for a file, parsing the file only if it is not resident or has changed
+   * since it was parsed, and then only the rows appended to it if that is all that changed.
+   *
+   * @param filepath path of the CSV file, which also names the dataset
+   * @return loaded snapshot of the dataset
+   * @throws IOException error from reading the file
+   */
+  public CSVSnapshot load(String filepath) throws IOException {
+    return this.load(filepath, null);
+  }
+
+  /**
+   * Returns the dataset for a file like load(filepath), reporting the progress of parsing it. A
+   * resident and unchanged dataset is reported as fully read at once, and a file that was appended
+   * to reports only the bytes and rows appended.
+   *
+   * @param filepath path of the CSV file, which also names the dataset
+   * @param progress progress to update, which may also cancel the load, or null
+   * @return loaded snapshot of the dataset
+   * @throws IOException error from reading the file
+   * @throws java.util.concurrent.CancellationException if the load was cancelled
+   */
+  public CSVSnapshot load(String filepath, LoadProgress progress) throws IOException {
+    Path path = Path.of(filepath);
+    String name = nameOf(path);
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(name);
+      if (entry != null && entry.matches(attributes)) {
+        if (progress != null) {
+          progress.setTotalBytes(attributes.size());
+          progress.addRows(entry.snapshot.getTable().getRowCount());
+          progress.complete();
+        }
+        return entry.snapshot;
+      }
+    }
+
+    // Parses outside of the lock, so that reads of other datasets are not held up
+    MappedCSVLoader<List<String>> loader = new MappedCSVLoader<>(path, new ListStringFactory());
+    ColumnarTable table = null;
+    boolean parsed = true;
+    if (entry != null && entry.isAppendedTo(path, attributes)) {
+      table = loader.appendTable(entry.snapshot.getTable(), entry.fileSize, progress);
+    } else {
+      TableSnapshotFile stored = TableSnapshotFile.read(path, attributes.size());
+      if (stored != null && stored.getSourceSize() == attributes.size()) {
+        table = stored.getTable();
+        parsed = false;
+        if (progress != null) {
+          progress.setTotalBytes(attributes.size());
+          progress.addRows(table.getRowCount());
+          progress.complete();
+        }
+      } else if (stored != null && fingerprint(path, stored.getSourceSize()) != NOT_APPENDABLE) {
+        // Only the rows appended since the snapshot was made are parsed
+        table = loader.appendTable(stored.getTable(), stored.getSourceSize(), progress);
+      }
+    }
+    if (table == null) {
+      table = loader.loadTable(progress);
+    }
+
+    // A file that changed while it was parsed may have been parsed past attributes.size(), so the
+    // end of this parse is not known well enough to append to it later or to snapshot it
+    boolean unchanged = sameFile(attributes, Files.readAttributes(path, BasicFileAttributes.class));
+    long fingerprint = unchanged ? fingerprint(path, attributes.size()) : NOT_APPENDABLE;
+    if (unchanged && parsed && this.writeSnapshots) {
+      try {
+        writeSnapshot(path, table, attributes);
+      } catch (IOException e) {
+        System.err.println("ERROR: the snapshot of " + filepath + " could not be written.");
+      }
+    }
+
+    CSVSnapshot snapshot = new CSVSnapshot(table, true, this.versions.incrementAndGet());
+    ColumnarTable resident = table;
+    synchronized (this) {
+      table.setIndexGrowth(bytes -> this.grow(name, resident, bytes));
+      Entry loaded =
+          new Entry(
+              attributes.lastModifiedTime(),
+              attributes.size(),
+              fingerprint,
+              snapshot,
+              table.estimateBytes());
+      Entry previous = this.entries.put(name, loaded);
+      if (previous != null) {
+        this.residentBytes -= previous.bytes;
+      }
+      this.residentBytes += loaded.bytes;
+      this.evict(name);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Writes the snapshot of a resident dataset next to its file, so that it can be read back instead
+   * of parsed, such as after the server restarts.
+   *
+   * @param filepath path of the CSV file that names the dataset
+   * @return path of the snapshot, or null if the dataset is not resident or its file has changed
+   *     since it was loaded
+   * @throws IOException error from reading the file or writing the snapshot
+   */
+  public Path writeSnapshot(String filepath) throws IOException {
+    Path path = Path.of(filepath);
+    Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(nameOf(path));
+    }
+    if (entry == null) {
+      return null;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    if (!entry.matches(attributes)) {
+      return null;
+    }
+    return writeSnapshot(path, entry.snapshot.getTable(), attributes);
+  }
+
+  /**
+   * Returns a resident dataset without touching the file, marking it as recently used.
+   *
+   * @param filepath path of the CSV file that names the dataset
+   * @return loaded snapshot of the dataset, or null if it is not resident
+   */
+  public synchronized CSVSnapshot get(String filepath) {
+    Entry entry = this.entries.get(nameOf(Path.of(filepath)));
+    return entry == null ? null : entry.snapshot;
+  }
+
+  /**
+   * @return number of resident datasets
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * @return total estimated size of the resident tables, in bytes
+   */
+  public synchronized long getResidentBytes() {
+    return this.residentBytes;
+  }
+
+  /**
+   * @return total estimated size the resident tables are kept under, in bytes
+   */
+  public long getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  /**
+   * Counts an index built for a table in the size of its dataset, if the table is still the one
+   * resident under that name, and evicts other datasets if that takes the total over budget.
+   */
+  private synchronized void grow(String name, ColumnarTable table, long bytes) {
+    Entry entry = this.entries.get(name);
+    if (entry != null && entry.snapshot.getTable() == table) {
+      entry.bytes += bytes;
+      this.residentBytes += bytes;
+      this.evict(name);
+    }
+  }
+
+  /** Evicts least recently used datasets, other than the given one, until the budget is met. */
+  private void evict(String keep) {
+    Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+    while (this.residentBytes > this.memoryBudget && iterator.hasNext()) {
+      Map.Entry<String, Entry> eldest = iterator.next();
+      if (!eldest.getKey().equals(keep)) {
+        this.residentBytes -= eldest.getValue().bytes;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Writes the snapshot of a table parsed from a file with the given attributes, and removes it
+   * again if the file changed meanwhile, since it would then describe bytes the table was not
+   * parsed from.
+   */
+  private static Path writeSnapshot(Path path, ColumnarTable table, BasicFileAttributes attributes)
+      throws IOException {
+    Path written = TableSnapshotFile.write(table, path, attributes.size());
+    if (!sameFile(attributes, Files.readAttributes(path, BasicFileAttributes.class))) {
+      Files.deleteIfExists(written);
+      return null;
+    }
+    return written;
+  }
+
+  /** Whether two reads of a file's attributes show the same size and modification time. */
+  private static boolean sameFile(BasicFileAttributes before, BasicFileAttributes after) {
+    return before.size() == after.size()
+        && before.lastModifiedTime().equals(after.lastModifiedTime());
+  }
+
+  /**
+   * Fingerprints the first size bytes of a file by their first and last FINGERPRINT_BYTES, which
+   * cover the header and the last rows parsed from them.
+   *
+   * @return checksum of the bytes, or NOT_APPENDABLE if they do not end with a line break
+   */
+  private static long fingerprint(Path path, long size) throws IOException {
+    if (size == 0) {
+      return NOT_APPENDABLE;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer tail = read(channel, Math.max(0, size - FINGERPRINT_BYTES), size);
+      if (tail.get(tail.limit() - 1) != '\n') {
+        return NOT_APPENDABLE;
+      }
+      CRC32 checksum = new CRC32();
+      checksum.update(read(channel, 0, Math.min(size, FINGERPRINT_BYTES)));
+      checksum.update(tail);
+      return checksum.getValue();
+    }
+  }
+
+  /** Reads the byte range [start, end) of a file. */
+  private static ByteBuffer read(FileChannel channel, long start, long end) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException("File is shorter than " + end + " bytes");
+      }
+    }
+    return buffer.flip();
+  }
+
+  /** Names a dataset by the absolute form of its path, so different spellings share an entry. */
+  private static String nameOf(Path path) {
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  /** A resident dataset, along with the state of the file it was parsed from. */
+  private static final class Entry {
+    private final FileTime modified;
+    private final long fileSize;
+    private final long fingerprint;
+    private final CSVSnapshot snapshot;
+    // Grows as indexes are built for the table
+    private long bytes;
+
+    private Entry(
+        FileTime modified, long fileSize, long fingerprint, CSVSnapshot snapshot, long bytes) {
+      this.modified = modified;
+      this.fileSize = fileSize;
+      this.fingerprint = fingerprint;
+      this.snapshot = snapshot;
+      this.bytes = bytes;
+    }
+
+    /** Whether the file is unchanged since this entry was parsed from it. */
+    private boolean matches(BasicFileAttributes attributes) {
+      return this.modified.equals(attributes.lastModifiedTime())
+          && this.fileSize == attributes.size();
+    }
+
+    /** Whether the file has only been appended to since this entry was parsed from it. */
+    private boolean isAppendedTo(Path path, BasicFileAttributes attributes) throws IOException {
+      return this.fingerprint != NOT_APPENDABLE
+          && attributes.size() > this.fileSize
+          && fingerprint(path, this.fileSize) == this.fingerprint;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package edu.brown.cs.student.csv;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the datasets of watched files current by reloading a file whenever it changes, using a
+ * WatchService on the folders that hold them. Reloads go through the DatasetRegistry, so a file
+ * that has only been appended to has just its new rows parsed. If the dataset of a reloaded file is
+ * the one being served, the new table is published in its place; otherwise it is only kept
+ * resident.
+ *
+ * <p>A single write usually raises several events, and may still be under way when the first one
+ * arrives, so changes are reloaded only once the watched folders have been quiet for a short delay.
+ * The watching thread is started by the first call to watch().
+ */
+public class DatasetWatcher implements Closeable {
+  /** Time without further changes after which changed files are reloaded, in milliseconds */
+  public static final long DEFAULT_QUIET_MILLIS = 200;
+
+  private final CSVData data;
+  private final long quietMillis;
+  // Absolute paths of the watched files
+  private final Set<Path> files = ConcurrentHashMap.newKeySet();
+  private final Set<Path> folders = new HashSet<>();
+  private WatchService service;
+
+  /**
+   * @param data shared state whose datasets are reloaded
+   */
+  public DatasetWatcher(CSVData data) {
+    this(data, DEFAULT_QUIET_MILLIS);
+  }
+
+  /**
+   * @param data shared state whose datasets are reloaded
+   * @param quietMillis time without further changes after which changed files are reloaded
+   */
+  public DatasetWatcher(CSVData data, long quietMillis) {
+    this.data = data;
+    this.quietMillis = quietMillis;
+  }
+
+  /**
+   * Starts reloading a file whenever it changes. Watching a file that is already watched changes
+   * nothing.
+   *
+   * @param filepath path of the CSV file, which also names its dataset
+   * @throws IOException error from watching the folder that holds the file
+   */
+  public synchronized void watch(String filepath) throws IOException {
+    Path file = Path.of(filepath).toAbsolutePath().normalize();
+    Path folder = file.getParent();
+    if (this.service == null) {
+      WatchService service = FileSystems.getDefault().newWatchService();
+      Thread thread = new Thread(() -> this.run(service), "csv-watcher");
+      // Watching should not keep the server from shutting down
+      thread.setDaemon(true);
+      thread.start();
+      this.service = service;
+    }
+    if (!this.folders.contains(folder)) {
+      folder.register(this.service, ENTRY_CREATE, ENTRY_MODIFY);
+      this.folders.add(folder);
+    }
+    this.files.add(file);
+  }
+
+  /**
+   * @param filepath path of a CSV file
+   * @return whether the file is watched
+   */
+  public boolean isWatching(String filepath) {
+    return this.files.contains(Path.of(filepath).toAbsolutePath().normalize());
+  }
+
+  /** Stops watching every file. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.service != null) {
+      this.service.close();
+      this.service = null;
+    }
+    this.files.clear();
+    this.folders.clear();
+  }
+
+  /** Waits for changes to the watched files and reloads them, until the service is closed. */
+  private void run(WatchService service) {
+    try {
+      while (true) {
+        Set<Path> changed = new LinkedHashSet<>();
+        WatchKey key = service.take();
+        // Gathers the changes until the folders have been quiet for quietMillis
+        while (key != null) {
+          Path folder = (Path) key.watchable();
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+              // Events were lost, so any file in the folder may have changed
+              for (Path file : this.files) {
+                if (folder.equals(file.getParent())) {
+                  changed.add(file);
+                }
+              }
+            } else {
+              Path file = folder.resolve((Path) event.context());
+              if (this.files.contains(file)) {
+                changed.add(file);
+              }
+            }
+          }
+          key.reset();
+          key = service.poll(this.quietMillis, TimeUnit.MILLISECONDS);
+        }
+        for (Path file : changed) {
+          this.reload(file);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stops once the watcher is closed
+    }
+  }
+
+  /** Reloads a file, publishing its new table if its old one was being served. */
+  private void reload(Path file) {
+    String filepath = file.toString();
+    CSVSnapshot before = this.data.getRegistry().get(filepath);
+    try {
+      CSVSnapshot after = this.data.getRegistry().load(filepath);
+      if (before != null) {
+        this.data.replace(before.getTable(), after.getTable());
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("ERROR: " + filepath + " could not be reloaded.");
+    }
+  }
+}
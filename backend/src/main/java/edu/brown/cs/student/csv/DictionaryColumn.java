@@ -0,0 +1,66 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * A column of text with few distinct values. Each distinct value is stored once in a dictionary,
+ * and each row stores the int code of its value.
+ */
+public class DictionaryColumn extends Column {
+  private final int[] codes;
+  private final String[] dictionary;
+
+  /**
+   * @param codes index into the dictionary of each row's value
+   * @param dictionary distinct values of the column
+   */
+  DictionaryColumn(int[] codes, String[] dictionary) {
+    this.codes = codes;
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * @param row index of the row
+   * @return dictionary code of the row's value
+   */
+  public int getCode(int row) {
+    return this.codes[row];
+  }
+
+  /**
+   * @return number of distinct values in the column
+   */
+  public int getDictionarySize() {
+    return this.dictionary.length;
+  }
+
+  /**
+   * @param code dictionary code
+   * @return value with the given code
+   */
+  public String getDictionaryValue(int code) {
+    return this.dictionary[code];
+  }
+
+  @Override
+  public ColumnType getType() {
+    return ColumnType.STRING;
+  }
+
+  @Override
+  public int size() {
+    return this.codes.length;
+  }
+
+  @Override
+  public String getString(int row) {
+    return this.dictionary[this.codes[row]];
+  }
+
+  @Override
+  public long estimateBytes() {
+    long bytes = 32 + 4L * this.codes.length + 8L * this.dictionary.length;
+    for (String value : this.dictionary) {
+      bytes += Column.estimateBytes(value);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,83 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * A column of decimal numbers, stored in a double[]. The number of decimal places each value was
+ * written with is kept alongside it, so that every value can be written back exactly as it appeared
+ * in the CSV.
+ */
+public class DoubleColumn extends Column {
+  // Only values with at most this many digits are stored here, so they round-trip exactly
+  static final int MAX_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = new double[MAX_DIGITS + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i <= MAX_DIGITS; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final double[] values;
+  private final byte[] scales;
+
+  /**
+   * @param values value of each row, which the column takes ownership of
+   * @param scales number of decimal places each value was written with
+   */
+  DoubleColumn(double[] values, byte[] scales) {
+    this.values = values;
+    this.scales = scales;
+  }
+
+  /**
+   * Converts a decimal written as an unscaled integer and a number of decimal places to a double.
+   * This is exact for values with at most MAX_DIGITS digits.
+   */
+  static double toDouble(long unscaled, int scale) {
+    return unscaled / POWERS_OF_TEN[scale];
+  }
+
+  /**
+   * @param row index of the row
+   * @return value of the row
+   */
+  public double getDouble(int row) {
+    return this.values[row];
+  }
+
+  /**
+   * @param row index of the row
+   * @return number of decimal places the value of the row was written with
+   */
+  int getScale(int row) {
+    return this.scales[row];
+  }
+
+  /**
+   * @param row index of the row
+   * @return value of the row without its decimal point, as it was written
+   */
+  long getUnscaled(int row) {
+    return Math.round(this.values[row] * POWERS_OF_TEN[this.scales[row]]);
+  }
+
+  @Override
+  public ColumnType getType() {
+    return ColumnType.DOUBLE;
+  }
+
+  @Override
+  public int size() {
+    return this.values.length;
+  }
+
+  @Override
+  public String getString(int row) {
+    return ColumnBuilder.decimalText(this.getUnscaled(row), this.scales[row]);
+  }
+
+  @Override
+  public long estimateBytes() {
+    return 32 + 9L * this.values.length;
+  }
+}
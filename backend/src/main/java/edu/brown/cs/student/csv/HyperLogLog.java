@@ -0,0 +1,221 @@
+package edu.brown.cs.student.csv;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the number of distinct values in a column with a fixed 16KB of memory, however many
+ * values there are (Flajolet et al., "HyperLogLog: the analysis of a near-optimal cardinality
+ * estimation algorithm", 2007). Each value is hashed to 64 bits; the first PRECISION bits pick a
+ * register, which keeps the longest run of leading zeros seen in the remaining bits.
+ *
+ * <p>The estimate has a relative standard error of 1.04 / sqrt(2^PRECISION), about 0.81%, so it is
+ * within 1.6% of the true count about 95% of the time. Small counts are corrected with linear
+ * counting, which is close to exact while most registers are still empty. Sketches of different
+ * parts of a file merge into exactly the sketch of the whole file.
+ *
+ * <p>Until a sketch has set a sixteenth of its registers, it keeps only the set ones in a small
+ * hash table, so that a column with few distinct values does not pay for all of the registers. The
+ * estimate is the same either way.
+ */
+public class HyperLogLog {
+  /** Number of bits of the hash used to pick a register */
+  public static final int PRECISION = 14;
+
+  /** Relative standard error of the estimate */
+  public static final double RELATIVE_ERROR = 1.04 / Math.sqrt(1 << PRECISION);
+
+  private static final int REGISTERS = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+  // Set registers kept in the sparse table before switching to the full array
+  private static final int SPARSE_LIMIT = REGISTERS / 16;
+
+  // Set registers as (index + 1) << 8 | rank, in an open addressing table with 0 for empty slots
+  private int[] sparse = new int[0];
+  private int sparseSize = 0;
+  // Every register, once more than SPARSE_LIMIT are set
+  private byte[] registers;
+
+  /** Adds the value in the given range of characters. */
+  void add(char[] chars, int start, int end) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ chars[i]) * 0x100000001b3L;
+    }
+    this.addHash(mix(hash));
+  }
+
+  /** Adds a value, which hashes the same as the same characters added from a buffer. */
+  void add(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+    }
+    this.addHash(mix(hash));
+  }
+
+  /**
+   * Merges another sketch into this one, after which this estimates the distinct values of both.
+   *
+   * @param other sketch to merge
+   */
+  public void merge(HyperLogLog other) {
+    if (other.registers == null) {
+      for (int entry : other.sparse) {
+        if (entry != 0) {
+          this.set((entry >>> 8) - 1, (byte) entry);
+        }
+      }
+      return;
+    }
+    if (this.registers == null) {
+      this.toDense();
+    }
+    for (int i = 0; i < REGISTERS; i++) {
+      this.registers[i] = (byte) Math.max(this.registers[i], other.registers[i]);
+    }
+  }
+
+  /**
+   * @return estimated number of distinct values added
+   */
+  public long estimate() {
+    if (this.registers == null) {
+      // Linear counting, which is what the full array would give with this few registers set
+      return this.sparseSize == 0
+          ? 0
+          : Math.round(REGISTERS * Math.log((double) REGISTERS / (REGISTERS - this.sparseSize)));
+    }
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : this.registers) {
+      // 2^-register, built from its exponent bits
+      sum += Double.longBitsToDouble((1023L - register) << 52);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // Linear counting is more accurate while many registers are empty
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the sketch
+   */
+  public long estimateBytes() {
+    return 32 + (this.registers == null ? 16 + 4L * this.sparse.length : 16 + REGISTERS);
+  }
+
+  /** Writes the sketch in the form readFrom reads, keeping only the set registers while sparse. */
+  void writeTo(DataOutput out) throws IOException {
+    if (this.registers != null) {
+      out.writeByte(1);
+      out.write(this.registers);
+      return;
+    }
+    out.writeByte(0);
+    out.writeInt(this.sparseSize);
+    for (int entry : this.sparse) {
+      if (entry != 0) {
+        out.writeInt(entry);
+      }
+    }
+  }
+
+  /**
+   * Reads a sketch written by writeTo.
+   *
+   * @param in buffer positioned at the sketch, which is left positioned after it
+   * @return the sketch
+   */
+  static HyperLogLog readFrom(ByteBuffer in) {
+    HyperLogLog sketch = new HyperLogLog();
+    if (in.get() == 1) {
+      sketch.registers = new byte[REGISTERS];
+      in.get(sketch.registers);
+      sketch.sparse = null;
+      return sketch;
+    }
+    int size = in.getInt();
+    for (int i = 0; i < size; i++) {
+      int entry = in.getInt();
+      sketch.set((entry >>> 8) - 1, (byte) entry);
+    }
+    return sketch;
+  }
+
+  private void addHash(long hash) {
+    int index = (int) (hash >>> (64 - PRECISION));
+    // The marker bit caps the rank when the remaining bits are all zero
+    long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+    this.set(index, (byte) (Long.numberOfLeadingZeros(rest) + 1));
+  }
+
+  /** Raises a register to a rank, if it is lower. */
+  private void set(int index, byte rank) {
+    if (this.registers != null) {
+      if (rank > this.registers[index]) {
+        this.registers[index] = rank;
+      }
+      return;
+    }
+
+    if (this.sparseSize * 2 >= this.sparse.length) {
+      if (this.sparseSize == SPARSE_LIMIT) {
+        this.toDense();
+        this.set(index, rank);
+        return;
+      }
+      this.resizeSparse(Math.max(16, this.sparse.length * 2));
+    }
+    int mask = this.sparse.length - 1;
+    int slot = (index * 0x9e3779b9) >>> 8 & mask;
+    while (this.sparse[slot] != 0 && (this.sparse[slot] >>> 8) - 1 != index) {
+      slot = (slot + 1) & mask;
+    }
+    if (this.sparse[slot] == 0) {
+      this.sparse[slot] = (index + 1) << 8 | rank;
+      this.sparseSize++;
+    } else if (rank > (byte) this.sparse[slot]) {
+      this.sparse[slot] = (index + 1) << 8 | rank;
+    }
+  }
+
+  private void resizeSparse(int length) {
+    int[] old = this.sparse;
+    this.sparse = new int[length];
+    this.sparseSize = 0;
+    for (int entry : old) {
+      if (entry != 0) {
+        this.set((entry >>> 8) - 1, (byte) entry);
+      }
+    }
+  }
+
+  /** Moves the sparse registers into the full array. */
+  private void toDense() {
+    this.registers = new byte[REGISTERS];
+    for (int entry : this.sparse) {
+      if (entry != 0) {
+        this.registers[(entry >>> 8) - 1] = (byte) entry;
+      }
+    }
+    this.sparse = null;
+    this.sparseSize = 0;
+  }
+
+  /** Spreads the bits of an FNV-1a hash with the MurmurHash3 finalizer. */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,242 @@
+package edu.brown.cs.student.csv;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates the quantiles of a column of numbers in a few kilobytes of memory, however many values
+ * there are (Karnin, Lang and Liberty, "Optimal Quantile Approximation in Streams", 2016). Values
+ * are kept in a stack of compactors, where an item at level h stands for 2^h values. When a level
+ * fills, it is sorted and every other item, starting from a random one, is promoted to the next
+ * level, which halves the level while keeping the total weight.
+ *
+ * <p>With K = 200, a quantile is within about 1.65% of its true rank with 99% confidence: the
+ * median returned lies between the 48.35th and 51.65th percentiles. The minimum and maximum are
+ * exact. Sketches of different parts of a file merge into a sketch of the whole file with the same
+ * error bound.
+ */
+public class KllSketch {
+  /** Capacity of the top level, which sets the accuracy */
+  public static final int K = 200;
+
+  /** Normalized rank error of a quantile, with 99% confidence */
+  public static final double RANK_ERROR = 0.0165;
+
+  // Levels below the top shrink by this factor, so most items are at high, heavy levels
+  private static final double DECAY = 2.0 / 3.0;
+
+  private double[][] levels = new double[1][8];
+  private int[] sizes = new int[1];
+  private long count = 0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /**
+   * @param value the next value
+   */
+  void update(double value) {
+    if (this.count == 0 || value < this.min) {
+      this.min = value;
+    }
+    if (this.count == 0 || value > this.max) {
+      this.max = value;
+    }
+    this.count++;
+    this.append(0, value);
+    if (this.sizes[0] >= this.capacity(0)) {
+      this.compress();
+    }
+  }
+
+  /**
+   * Merges another sketch into this one, after which this estimates the quantiles of both.
+   *
+   * @param other sketch to merge
+   */
+  public void merge(KllSketch other) {
+    if (other.count == 0) {
+      return;
+    }
+    if (this.count == 0 || other.min < this.min) {
+      this.min = other.min;
+    }
+    if (this.count == 0 || other.max > this.max) {
+      this.max = other.max;
+    }
+    this.count += other.count;
+    for (int level = 0; level < other.levels.length; level++) {
+      for (int i = 0; i < other.sizes[level]; i++) {
+        this.append(level, other.levels[level][i]);
+      }
+    }
+    this.compress();
+  }
+
+  /**
+   * @param rank fraction of the values that the quantile is greater than or equal to, from 0 to 1
+   * @return estimated quantile, or NaN if no values were added
+   */
+  public double quantile(double rank) {
+    if (this.count == 0) {
+      return Double.NaN;
+    }
+    if (rank <= 0) {
+      return this.min;
+    }
+    if (rank >= 1) {
+      return this.max;
+    }
+
+    // Sorts every retained item together with its level, which gives its weight
+    int total = 0;
+    for (int size : this.sizes) {
+      total += size;
+    }
+    double[] values = new double[total];
+    int[] weights = new int[total];
+    Integer[] order = new Integer[total];
+    int n = 0;
+    for (int level = 0; level < this.levels.length; level++) {
+      for (int i = 0; i < this.sizes[level]; i++) {
+        values[n] = this.levels[level][i];
+        weights[n] = level;
+        order[n] = n++;
+      }
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+    double target = rank * this.count;
+    long cumulative = 0;
+    for (Integer index : order) {
+      cumulative += 1L << weights[index];
+      if (cumulative >= target) {
+        return values[index];
+      }
+    }
+    return this.max;
+  }
+
+  /**
+   * @return number of values added
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * @return smallest value added, or NaN if none were
+   */
+  public double getMin() {
+    return this.min;
+  }
+
+  /**
+   * @return largest value added, or NaN if none were
+   */
+  public double getMax() {
+    return this.max;
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the sketch
+   */
+  public long estimateBytes() {
+    long bytes = 64 + 4L * this.sizes.length;
+    for (double[] level : this.levels) {
+      bytes += 16 + 8L * level.length;
+    }
+    return bytes;
+  }
+
+  /** Shrinks each level to the items it holds, once no more values are expected. */
+  void trimToSize() {
+    for (int level = 0; level < this.levels.length; level++) {
+      this.levels[level] = Arrays.copyOf(this.levels[level], Math.max(1, this.sizes[level]));
+    }
+  }
+
+  /** Writes the sketch in the form readFrom reads. */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeLong(this.count);
+    out.writeDouble(this.min);
+    out.writeDouble(this.max);
+    out.writeInt(this.levels.length);
+    for (int level = 0; level < this.levels.length; level++) {
+      out.writeInt(this.sizes[level]);
+      for (int i = 0; i < this.sizes[level]; i++) {
+        out.writeDouble(this.levels[level][i]);
+      }
+    }
+  }
+
+  /**
+   * Reads a sketch written by writeTo, with each level trimmed to the items it holds.
+   *
+   * @param in buffer positioned at the sketch, which is left positioned after it
+   * @return the sketch
+   */
+  static KllSketch readFrom(ByteBuffer in) {
+    KllSketch sketch = new KllSketch();
+    sketch.count = in.getLong();
+    sketch.min = in.getDouble();
+    sketch.max = in.getDouble();
+    int depth = in.getInt();
+    sketch.levels = new double[depth][];
+    sketch.sizes = new int[depth];
+    for (int level = 0; level < depth; level++) {
+      int size = in.getInt();
+      sketch.levels[level] = new double[Math.max(1, size)];
+      sketch.sizes[level] = size;
+      for (int i = 0; i < size; i++) {
+        sketch.levels[level][i] = in.getDouble();
+      }
+    }
+    return sketch;
+  }
+
+  /** Capacity of a level, given the current number of levels. */
+  private int capacity(int level) {
+    int depth = this.levels.length - 1 - level;
+    return Math.max(2, (int) Math.ceil(K * Math.pow(DECAY, depth)));
+  }
+
+  /** Adds an item to a level, adding the level if needed. */
+  private void append(int level, double value) {
+    if (level >= this.levels.length) {
+      this.levels = Arrays.copyOf(this.levels, level + 1);
+      this.sizes = Arrays.copyOf(this.sizes, level + 1);
+      for (int i = 0; i <= level; i++) {
+        if (this.levels[i] == null) {
+          this.levels[i] = new double[8];
+        }
+      }
+    }
+    if (this.sizes[level] == this.levels[level].length) {
+      this.levels[level] = Arrays.copyOf(this.levels[level], Math.max(8, this.sizes[level] * 2));
+    }
+    this.levels[level][this.sizes[level]++] = value;
+  }
+
+  /** Compacts every level that is over capacity, from the bottom up. */
+  private void compress() {
+    for (int level = 0; level < this.levels.length; level++) {
+      if (this.sizes[level] < this.capacity(level)) {
+        continue;
+      }
+      double[] items = this.levels[level];
+      int size = this.sizes[level];
+      Arrays.sort(items, 0, size);
+
+      // An odd item out stays behind, so the promoted items keep the total weight exact
+      int kept = size % 2;
+      int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+      for (int i = kept + offset; i < size; i += 2) {
+        this.append(level + 1, items[i]);
+      }
+      this.sizes[level] = kept;
+    }
+  }
+}
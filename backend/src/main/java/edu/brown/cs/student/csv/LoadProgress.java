@@ -0,0 +1,67 @@
+package edu.brown.cs.student.csv;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a CSV file being loaded, updated by the threads parsing its chunks and read by
+ * whoever reports on the load. A load can also be cancelled through its progress: the parsing
+ * threads check for it as they go, and give up with a CancellationException.
+ */
+public class LoadProgress {
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong rowsParsed = new AtomicLong();
+  private volatile long totalBytes = -1;
+  private volatile boolean cancelled = false;
+
+  /**
+   * @return size of the file, in bytes, or -1 if not yet known
+   */
+  public long getTotalBytes() {
+    return this.totalBytes;
+  }
+
+  /**
+   * @return number of bytes of the file parsed so far
+   */
+  public long getBytesRead() {
+    return this.bytesRead.get();
+  }
+
+  /**
+   * @return number of rows parsed so far
+   */
+  public long getRowsParsed() {
+    return this.rowsParsed.get();
+  }
+
+  /** Asks the load to stop as soon as the parsing threads next check. */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * @return whether the load has been asked to stop
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  void setTotalBytes(long totalBytes) {
+    this.totalBytes = totalBytes;
+  }
+
+  void addBytes(long bytes) {
+    this.bytesRead.addAndGet(bytes);
+  }
+
+  void addRows(long rows) {
+    this.rowsParsed.addAndGet(rows);
+  }
+
+  /** Marks the whole file as read, including the parts such as the header not counted as parsed. */
+  void complete() {
+    if (this.totalBytes >= 0) {
+      this.bytesRead.set(this.totalBytes);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package edu.brown.cs.student.csv;
+
+/** A column of integers, stored in a long[]. */
+public class LongColumn extends Column {
+  private final long[] values;
+
+  /**
+   * @param values value of each row, which the column takes ownership of
+   */
+  LongColumn(long[] values) {
+    this.values = values;
+  }
+
+  /**
+   * @param row index of the row
+   * @return value of the row
+   */
+  public long getLong(int row) {
+    return this.values[row];
+  }
+
+  @Override
+  public ColumnType getType() {
+    return ColumnType.LONG;
+  }
+
+  @Override
+  public int size() {
+    return this.values.length;
+  }
+
+  @Override
+  public String getString(int row) {
+    return Long.toString(this.values[row]);
+  }
+
+  @Override
+  public long estimateBytes() {
+    return 16 + 8L * this.values.length;
+  }
+}
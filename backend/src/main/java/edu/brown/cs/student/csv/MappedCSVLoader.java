@@ -0,0 +1,471 @@
+package edu.brown.cs.student.csv;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Loads a CSV file in parallel by memory-mapping it, cutting it into record-aligned chunks, and
+ * tokenizing the chunks on a ForkJoinPool. The results are merged back together in file order, so
+ * the returned list is identical to the one produced by CSVParser.create() on the same file.
+ *
+ * @param <T> any type the user provides through their implementation of the CreatorFromRow
+ *     interface
+ */
+public class MappedCSVLoader<T> {
+  // Bounds on the automatically chosen chunk size
+  private static final long MIN_CHUNK_SIZE = 1 << 20;
+  private static final long MAX_CHUNK_SIZE = 64 << 20;
+  // Size of the window mapped while searching for a line boundary
+  private static final int SCAN_WINDOW = 64 << 10;
+  // Rows parsed between updates of the progress of a load
+  private static final int ROWS_PER_UPDATE = 4096;
+
+  // Class parameters
+  private final Path path;
+  private final CreatorFromRow<T> rowCreator;
+  private final ForkJoinPool pool;
+  private final long chunkSize;
+
+  /**
+   * Represents a CSV file that is parsed on the common ForkJoinPool, with a chunk size chosen from
+   * the file size and the pool's parallelism.
+   *
+   * @param path path of the CSV file
+   * @param rowCreator implementation of interface with type T
+   */
+  public MappedCSVLoader(Path path, CreatorFromRow<T> rowCreator) {
+    this(path, rowCreator, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * Represents a CSV file that is parsed on the given pool in chunks of roughly the given size.
+   *
+   * @param path path of the CSV file
+   * @param rowCreator implementation of interface with type T
+   * @param pool pool the chunks are parsed on
+   * @param chunkSize target number of bytes per chunk, or 0 to choose one automatically
+   */
+  public MappedCSVLoader(
+      Path path, CreatorFromRow<T> rowCreator, ForkJoinPool pool, long chunkSize) {
+    this.path = path;
+    this.rowCreator = rowCreator;
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Creates a list of objects of type T, where each row of the CSV is converted to one object. Like
+   * CSVParser.create(), the first line of the file is skipped.
+   *
+   * @return a list of objects generated from each row of the provided CSV, in file order
+   * @throws FactoryFailureException error from creating object
+   * @throws IOException error from reading file
+   */
+  public List<T> load() throws FactoryFailureException, IOException {
+    List<List<T>> results =
+        this.parseChunks(
+            -1,
+            null,
+            tokenizer -> {
+              List<T> objects = new ArrayList<>();
+              CSVRow row;
+              while ((row = tokenizer.next()) != null) {
+                // Creates object from row and adds it to list
+                objects.add(row.convert(this.rowCreator));
+              }
+              return objects;
+            });
+
+    // Concatenates the results in file order
+    int total = 0;
+    for (List<T> result : results) {
+      total += result.size();
+    }
+    List<T> objects = new ArrayList<>(total);
+    for (List<T> result : results) {
+      objects.addAll(result);
+    }
+    return objects;
+  }
+
+  /**
+   * Loads the CSV into a ColumnarTable. Each chunk is loaded into its own ColumnarTableBuilder in
+   * parallel, and the builders are joined in file order. Unlike load(), the first line of the file
+   * is kept as the table's header, and the CreatorFromRow is not used.
+   *
+   * @return table holding the contents of the CSV
+   * @throws IOException error from reading file
+   */
+  public ColumnarTable loadTable() throws IOException {
+    return this.loadTable(null);
+  }
+
+  /**
+   * Loads the CSV into a ColumnarTable like loadTable(), reporting the bytes and rows parsed as the
+   * chunks are loaded, and stopping early if the load is cancelled.
+   *
+   * @param progress progress to update, or null
+   * @return table holding the contents of the CSV
+   * @throws IOException error from reading file
+   * @throws CancellationException if the load was cancelled through its progress
+   */
+  public ColumnarTable loadTable(LoadProgress progress) throws IOException {
+    if (progress != null) {
+      progress.setTotalBytes(Files.size(this.path));
+    }
+    List<ColumnarTableBuilder> results = this.parseTableChunks(-1, progress);
+
+    ColumnarTableBuilder table = new ColumnarTableBuilder();
+    try (Reader headerReader =
+        new InputStreamReader(Files.newInputStream(this.path), StandardCharsets.UTF_8)) {
+      CSVRow header = new CSVTokenizer(headerReader).next();
+      if (header != null) {
+        table.setHeader(header.toList());
+      }
+    }
+    for (ColumnarTableBuilder result : results) {
+      table.addAll(result);
+    }
+    if (progress != null) {
+      progress.complete();
+    }
+    return table.build();
+  }
+
+  /**
+   * Loads the rows from a given offset to the end of the file, and appends them to a table loaded
+   * from the part of the file before the offset. This lets a file that is only ever appended to be
+   * reloaded by parsing just what was added since it was last loaded. The chunks are parsed in
+   * parallel like loadTable(), and the progress counts only the bytes and rows after the offset.
+   *
+   * @param table table loaded from the file before the offset, which is left unchanged
+   * @param from offset of the start of the first record to load, past the header
+   * @param progress progress to update, or null
+   * @return table holding the rows of the given table followed by those loaded
+   * @throws IOException error from reading file
+   * @throws CancellationException if the load was cancelled through its progress
+   */
+  public ColumnarTable appendTable(ColumnarTable table, long from, LoadProgress progress)
+      throws IOException {
+    if (from <= 0) {
+      throw new IllegalArgumentException("Appended rows must start after the header: " + from);
+    }
+    if (progress != null) {
+      progress.setTotalBytes(Math.max(0, Files.size(this.path) - from));
+    }
+    List<ColumnarTableBuilder> results = this.parseTableChunks(from, progress);
+
+    ColumnarTableBuilder appended = new ColumnarTableBuilder(table);
+    for (ColumnarTableBuilder result : results) {
+      appended.addAll(result);
+    }
+    if (progress != null) {
+      progress.complete();
+    }
+    return appended.build();
+  }
+
+  /** Loads each chunk from the given offset, or after the header if -1, into its own builder. */
+  private List<ColumnarTableBuilder> parseTableChunks(long from, LoadProgress progress)
+      throws IOException {
+    try {
+      return this.parseChunks(
+          from,
+          progress,
+          tokenizer -> {
+            ColumnarTableBuilder builder = new ColumnarTableBuilder();
+            CSVRow row;
+            int rows = 0;
+            while ((row = tokenizer.next()) != null) {
+              builder.addRow(row);
+              if (progress != null && ++rows == ROWS_PER_UPDATE) {
+                progress.addRows(rows);
+                rows = 0;
+                if (progress.isCancelled()) {
+                  throw new CancellationException("Load of " + this.path + " was cancelled");
+                }
+              }
+            }
+            if (progress != null) {
+              progress.addRows(rows);
+            }
+            return builder;
+          });
+    } catch (FactoryFailureException e) {
+      // Never thrown, since building a table does not use the CreatorFromRow
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Splits the file after its header, or from a given offset, into chunks, and tokenizes the chunks
+   * in parallel.
+   *
+   * @param from offset of the start of the first record to parse, or -1 to start after the header
+   * @param progress progress to add the bytes of each chunk to as it is read, or null
+   * @param parser consumes the records of one chunk and returns what was made from them
+   * @return result of each chunk, in file order
+   * @throws FactoryFailureException error from creating object
+   * @throws IOException error from reading file
+   */
+  private <R> List<R> parseChunks(long from, LoadProgress progress, ChunkParser<R> parser)
+      throws FactoryFailureException, IOException {
+    try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) {
+        System.err.println("ERROR: The file cannot be converted because it is empty.");
+        return new ArrayList<>();
+      }
+
+      // Skips the header, then splits the rest of the file into record-aligned chunks
+      long bodyStart = from < 0 ? nextRecordStart(channel, 0, size, false) : Math.min(from, size);
+      List<long[]> chunks = this.chunk(channel, bodyStart, size);
+
+      List<R> results = new ArrayList<>(chunks.size());
+      for (int i = 0; i < chunks.size(); i++) {
+        results.add(null);
+      }
+      if (!chunks.isEmpty()) {
+        this.pool.invoke(
+            new ChunkTask<>(channel, chunks, progress, parser, results, 0, chunks.size()));
+      }
+      return results;
+    } catch (UncheckedIOException e) { // IOException
+      System.err.println("ERROR: the file cannot be read!");
+      throw e.getCause();
+    } catch (UncheckedFactoryFailureException f) { // Factory Failure Exception
+      System.err.println("ERROR: a row cannot be converted to an object!");
+      throw f.getCause();
+    }
+  }
+
+  /**
+   * Splits the byte range [start, size) into chunks that each begin at the start of a record. The
+   * range is first cut at evenly spaced offsets and the quotes in each piece are counted in
+   * parallel; the parity of the running count tells whether a cut landed inside a quoted field, so
+   * each cut can then be moved forward to the next record boundary without rescanning the file.
+   * This assumes quotes only appear around quoted fields, as RFC 4180 requires.
+   *
+   * @return list of {start, end} byte offsets
+   */
+  private List<long[]> chunk(FileChannel channel, long start, long size) {
+    long target = this.chunkSize;
+    if (target <= 0) {
+      long perTask = (size - start) / (this.pool.getParallelism() * 4L);
+      target = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, perTask));
+    }
+
+    // Evenly spaced cuts, and the number of quotes between each pair of them
+    int pieces = (int) ((size - start + target - 1) / target);
+    long[] cuts = new long[pieces + 1];
+    for (int i = 0; i < pieces; i++) {
+      cuts[i] = start + i * target;
+    }
+    cuts[pieces] = size;
+    int[] quotes = new int[pieces];
+    this.pool.invoke(
+        ForkJoinTask.adapt(
+            () ->
+                IntStream.range(0, pieces)
+                    .parallel()
+                    .forEach(i -> quotes[i] = countQuotes(channel, cuts[i], cuts[i + 1]))));
+
+    // Moves each cut forward to the start of the next record
+    List<long[]> chunks = new ArrayList<>();
+    long chunkStart = start;
+    boolean inQuotes = false;
+    for (int i = 1; i < pieces; i++) {
+      inQuotes ^= quotes[i - 1] % 2 == 1;
+      long end = nextRecordStart(channel, cuts[i], size, inQuotes);
+      if (end > chunkStart && end < size) {
+        chunks.add(new long[] {chunkStart, end});
+        chunkStart = end;
+      }
+    }
+    if (chunkStart < size) {
+      chunks.add(new long[] {chunkStart, size});
+    }
+    return chunks;
+  }
+
+  /** Counts the double quotes in the byte range [start, end). */
+  private static int countQuotes(FileChannel channel, long start, long end) {
+    try {
+      MappedByteBuffer piece = channel.map(MapMode.READ_ONLY, start, end - start);
+      int count = 0;
+      for (int i = 0; i < piece.limit(); i++) {
+        if (piece.get(i) == '"') {
+          count++;
+        }
+      }
+      return count;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Finds the start of the first record after the given offset. Records end at an unquoted "\n",
+   * "\r\n" or lone "\r", matching CSVTokenizer.
+   *
+   * @param inQuotes whether the given offset is inside a quoted field
+   * @return offset of the start of the next record, or size if there is none
+   */
+  private static long nextRecordStart(FileChannel channel, long from, long size, boolean inQuotes) {
+    try {
+      long pos = from;
+      while (pos < size) {
+        int length = (int) Math.min(SCAN_WINDOW, size - pos);
+        MappedByteBuffer window = channel.map(MapMode.READ_ONLY, pos, length);
+        for (int i = 0; i < length; i++) {
+          byte b = window.get(i);
+          if (b == '"') {
+            inQuotes = !inQuotes;
+          } else if (inQuotes) {
+            continue;
+          } else if (b == '\n') {
+            return pos + i + 1;
+          } else if (b == '\r') {
+            // Keeps a "\r\n" pair together, even across the edge of the window
+            long next = pos + i + 1;
+            if (next < size && byteAt(channel, next) == '\n') {
+              next++;
+            }
+            return next;
+          }
+        }
+        pos += length;
+      }
+      return size;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Reads the single byte at the given offset. */
+  private static byte byteAt(FileChannel channel, long pos) throws IOException {
+    ByteBuffer single = ByteBuffer.allocate(1);
+    channel.read(single, pos);
+    return single.get(0);
+  }
+
+  /** Consumes the records of one chunk. */
+  private interface ChunkParser<R> {
+    R parse(CSVTokenizer tokenizer) throws IOException, FactoryFailureException;
+  }
+
+  /** Decodes the UTF-8 bytes of a mapped chunk as they are read, without copying the chunk. */
+  private static class ByteBufferReader extends Reader {
+    private final ByteBuffer bytes;
+    private final LoadProgress progress;
+    private final CharsetDecoder decoder =
+        StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean flushed = false;
+
+    ByteBufferReader(ByteBuffer bytes, LoadProgress progress) {
+      this.bytes = bytes;
+      this.progress = progress;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+      if (this.flushed) {
+        return -1;
+      }
+      CharBuffer out = CharBuffer.wrap(chars, offset, length);
+      int start = this.bytes.position();
+      this.decoder.decode(this.bytes, out, true);
+      if (this.progress != null) {
+        this.progress.addBytes(this.bytes.position() - start);
+      }
+      if (!this.bytes.hasRemaining()) {
+        this.flushed = !this.decoder.flush(out).isOverflow();
+      }
+      int read = out.position() - offset;
+      return read == 0 && this.flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /** Recursively splits a range of chunks in half, storing each chunk's result at its index. */
+  private static class ChunkTask<R> extends RecursiveAction {
+    private final FileChannel channel;
+    private final List<long[]> chunks;
+    private final LoadProgress progress;
+    private final ChunkParser<R> parser;
+    private final List<R> results;
+    private final int lo;
+    private final int hi;
+
+    ChunkTask(
+        FileChannel channel,
+        List<long[]> chunks,
+        LoadProgress progress,
+        ChunkParser<R> parser,
+        List<R> results,
+        int lo,
+        int hi) {
+      this.channel = channel;
+      this.chunks = chunks;
+      this.progress = progress;
+      this.parser = parser;
+      this.results = results;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.hi - this.lo > 1) {
+        int mid = (this.lo + this.hi) >>> 1;
+        invokeAll(
+            new ChunkTask<>(
+                this.channel, this.chunks, this.progress, this.parser, this.results, this.lo, mid),
+            new ChunkTask<>(
+                this.channel, this.chunks, this.progress, this.parser, this.results, mid, this.hi));
+        return;
+      }
+
+      // Tokenizes one mapped chunk, unless the load has been cancelled
+      if (this.progress != null && this.progress.isCancelled()) {
+        throw new CancellationException("Load was cancelled");
+      }
+      long[] chunk = this.chunks.get(this.lo);
+      try {
+        MappedByteBuffer buffer =
+            this.channel.map(MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+        CSVTokenizer tokenizer = new CSVTokenizer(new ByteBufferReader(buffer, this.progress));
+        this.results.set(this.lo, this.parser.parse(tokenizer));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (FactoryFailureException e) {
+        throw new UncheckedFactoryFailureException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,442 @@
+package edu.brown.cs.student.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A condition on the values of a row, parsed from an expression such as
+ *
+ * <pre>
+ *   ProperName ^= "Rigel" OR (X >= -1 AND X < 1 AND StarID != 0)
+ * </pre>
+ *
+ * <p>Each comparison names a column, by its header or its index, and compares its value with = !=
+ * &lt; &lt;= &gt; &gt;= or ^= (starts with). Comparisons are combined with AND, which binds more
+ * tightly, OR and parentheses. A name or value containing spaces or operators is written in double
+ * quotes, with a quote inside written twice as in a CSV. Columns of numbers compare by value, and
+ * other columns compare text; a row too short to have a value in a column matches no comparison of
+ * it. A column stored as text because some of its cells are empty still counts as numbers if every
+ * other cell is one, as it does for searching and statistics, so its values compare as numbers and
+ * its empty cells match no comparison with a number. Only = "" and != "" compare such a column as
+ * text, so that its empty cells can still be found.
+ *
+ * <p>The filter is evaluated a column at a time rather than a row at a time: each comparison runs
+ * in a tight loop over one column's array and sets bits in a selection bitmap, and AND and OR
+ * combine bitmaps 64 rows at a time. Text columns stored as a dictionary compare each distinct
+ * value once. The rows are split into ranges that are scanned in parallel on a ForkJoinPool.
+ */
+public class RowFilter {
+  // Largest range of rows scanned by one task. Ranges start at multiples of 64, so that no two
+  // tasks write to the same word of the bitmap
+  private static final int ROWS_PER_TASK = 1 << 14;
+
+  private final Node root;
+
+  private RowFilter(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Parses a filter, resolving the columns it names in a table.
+   *
+   * @param expression the filter
+   * @param table table the filter will be applied to
+   * @return the filter
+   * @throws IllegalArgumentException if the expression is malformed, names a column the table does
+   *     not have, or compares a column of numbers with a value that is not a number
+   */
+  public static RowFilter parse(String expression, ColumnarTable table) {
+    Parser parser = new Parser(tokenize(expression), table);
+    Node root = parser.parseOr();
+    if (parser.position != parser.tokens.size()) {
+      throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position).text);
+    }
+    return new RowFilter(root);
+  }
+
+  /**
+   * Finds the rows of a table that match the filter, on the common ForkJoinPool.
+   *
+   * @param table the table the filter was parsed for
+   * @return indices of the matching rows, in ascending order
+   */
+  public int[] select(ColumnarTable table) {
+    return this.select(table, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Finds the rows of a table that match the filter.
+   *
+   * @param table the table the filter was parsed for
+   * @param pool pool the ranges of rows are scanned on
+   * @return indices of the matching rows, in ascending order
+   */
+  public int[] select(ColumnarTable table, ForkJoinPool pool) {
+    int rowCount = table.getRowCount();
+    long[] selection = new long[(rowCount + 63) >>> 6];
+    pool.invoke(new ScanTask(table, this.root, 0, rowCount, selection));
+
+    int count = 0;
+    for (long word : selection) {
+      count += Long.bitCount(word);
+    }
+    int[] rows = new int[count];
+    int next = 0;
+    for (int i = 0; i < selection.length; i++) {
+      for (long word = selection[i]; word != 0; word &= word - 1) {
+        rows[next++] = (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return rows;
+  }
+
+  /** Scans a range of rows, splitting it in two while it is larger than ROWS_PER_TASK. */
+  private static final class ScanTask extends RecursiveAction {
+    private final ColumnarTable table;
+    private final Node root;
+    private final int from;
+    private final int to;
+    private final long[] selection;
+
+    private ScanTask(ColumnarTable table, Node root, int from, int to, long[] selection) {
+      this.table = table;
+      this.root = root;
+      this.from = from;
+      this.to = to;
+      this.selection = selection;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > ROWS_PER_TASK) {
+        int middle = this.from + ((this.to - this.from) / 2 & -64);
+        invokeAll(
+            new ScanTask(this.table, this.root, this.from, middle, this.selection),
+            new ScanTask(this.table, this.root, middle, this.to, this.selection));
+        return;
+      }
+      long[] words = new long[(this.to - this.from + 63) >>> 6];
+      this.root.evaluate(this.table, this.from, this.to, words);
+      System.arraycopy(words, 0, this.selection, this.from >>> 6, words.length);
+    }
+  }
+
+  /** A part of a filter, which sets bit i of a bitmap if row from + i matches. */
+  private interface Node {
+    void evaluate(ColumnarTable table, int from, int to, long[] words);
+  }
+
+  /** Rows matching both sides, or either side. */
+  private static final class Combination implements Node {
+    private final Node left;
+    private final Node right;
+    private final boolean and;
+
+    private Combination(Node left, Node right, boolean and) {
+      this.left = left;
+      this.right = right;
+      this.and = and;
+    }
+
+    @Override
+    public void evaluate(ColumnarTable table, int from, int to, long[] words) {
+      this.left.evaluate(table, from, to, words);
+      if (this.and && isEmpty(words)) {
+        // No row can match both sides, so the right side is not scanned
+        return;
+      }
+
+      long[] other = new long[words.length];
+      this.right.evaluate(table, from, to, other);
+      for (int i = 0; i < words.length; i++) {
+        words[i] = this.and ? words[i] & other[i] : words[i] | other[i];
+      }
+    }
+  }
+
+  /** Comparison of the values in one column with a constant. */
+  private static final class Comparison implements Node {
+    private final int column;
+    private final String operator;
+    private final String value;
+    // Set if the column holds numbers and the operator compares them
+    private final Long longValue;
+    private final Double doubleValue;
+    // Whether the column is stored as text, but every non-empty value is a number
+    private final boolean numericText;
+
+    private Comparison(ColumnarTable table, int column, String operator, String value) {
+      this.column = column;
+      this.operator = operator;
+      this.value = value;
+      Column values = table.getColumn(column);
+      boolean stored = values instanceof LongColumn || values instanceof DoubleColumn;
+      boolean emptyText = value.isEmpty() && (operator.equals("=") || operator.equals("!="));
+      this.numericText =
+          !stored && !operator.equals("^=") && !emptyText && table.isNumericText(column);
+      if ((stored && !operator.equals("^=")) || this.numericText) {
+        Double number = ColumnStats.parseNumber(value);
+        if (number == null) {
+          throw new IllegalArgumentException("Not a number: " + value);
+        }
+        // Adding zero turns -0.0 into 0.0, which Double.compare would otherwise tell apart
+        this.doubleValue = number + 0.0;
+        this.longValue = parseLong(value);
+      } else {
+        this.doubleValue = null;
+        this.longValue = null;
+      }
+    }
+
+    @Override
+    public void evaluate(ColumnarTable table, int from, int to, long[] words) {
+      Column values = table.getColumn(this.column);
+      if (values instanceof LongColumn longs && this.longValue != null) {
+        long constant = this.longValue;
+        for (int row = from; row < to; row++) {
+          if (this.matches(Long.compare(longs.getLong(row), constant))) {
+            set(words, row - from);
+          }
+        }
+      } else if (values instanceof LongColumn longs && this.doubleValue != null) {
+        double constant = this.doubleValue;
+        for (int row = from; row < to; row++) {
+          if (this.matches(Double.compare(longs.getLong(row), constant))) {
+            set(words, row - from);
+          }
+        }
+      } else if (values instanceof DoubleColumn doubles && this.doubleValue != null) {
+        double constant = this.doubleValue;
+        for (int row = from; row < to; row++) {
+          if (this.matches(Double.compare(doubles.getDouble(row), constant))) {
+            set(words, row - from);
+          }
+        }
+      } else if (values instanceof DictionaryColumn dictionary) {
+        // Compares each distinct value once, then only looks up the code of each row
+        boolean[] matching = new boolean[dictionary.getDictionarySize()];
+        for (int code = 0; code < matching.length; code++) {
+          matching[code] = this.matches(dictionary.getDictionaryValue(code));
+        }
+        for (int row = from; row < to; row++) {
+          if (matching[dictionary.getCode(row)]) {
+            set(words, row - from);
+          }
+        }
+      } else {
+        for (int row = from; row < to; row++) {
+          if (this.matches(values.getString(row))) {
+            set(words, row - from);
+          }
+        }
+      }
+      clearMissing(table, this.column, from, to, words);
+    }
+
+    /** Whether a value of a text column matches. */
+    private boolean matches(String text) {
+      if (this.numericText) {
+        Double number = ColumnStats.parseNumber(text);
+        return number != null && this.matches(Double.compare(number + 0.0, this.doubleValue));
+      }
+      return this.operator.equals("^=")
+          ? text.startsWith(this.value)
+          : this.matches(text.compareTo(this.value));
+    }
+
+    /** Whether the result of comparing a value with the constant matches. */
+    private boolean matches(int comparison) {
+      switch (this.operator) {
+        case "=":
+          return comparison == 0;
+        case "!=":
+          return comparison != 0;
+        case "<":
+          return comparison < 0;
+        case "<=":
+          return comparison <= 0;
+        case ">":
+          return comparison > 0;
+        default:
+          return comparison >= 0;
+      }
+    }
+  }
+
+  private static boolean isEmpty(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void set(long[] words, int bit) {
+    words[bit >>> 6] |= 1L << bit;
+  }
+
+  /** Clears the bits of rows too short to have a value in a column. */
+  private static void clearMissing(
+      ColumnarTable table, int column, int from, int to, long[] words) {
+    for (int row = from; row < to; row++) {
+      if (!table.hasValue(row, column)) {
+        words[(row - from) >>> 6] &= ~(1L << (row - from));
+      }
+    }
+  }
+
+  private static Long parseLong(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** A word, quoted string, operator or parenthesis of an expression. */
+  private static final class Token {
+    private final String text;
+    private final boolean quoted;
+
+    private Token(String text, boolean quoted) {
+      this.text = text;
+      this.quoted = quoted;
+    }
+
+    private boolean is(String text) {
+      return !this.quoted && this.text.equalsIgnoreCase(text);
+    }
+
+    private boolean isOperator() {
+      return !this.quoted && List.of("=", "!=", "<", "<=", ">", ">=", "^=").contains(this.text);
+    }
+  }
+
+  /** Splits an expression into tokens. */
+  private static List<Token> tokenize(String expression) {
+    List<Token> tokens = new ArrayList<>();
+    int i = 0;
+    while (i < expression.length()) {
+      char c = expression.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '(' || c == ')') {
+        tokens.add(new Token(String.valueOf(c), false));
+        i++;
+      } else if (c == '"') {
+        StringBuilder text = new StringBuilder();
+        i++;
+        while (true) {
+          if (i >= expression.length()) {
+            throw new IllegalArgumentException("Unterminated quote in " + expression);
+          }
+          if (expression.charAt(i) == '"') {
+            if (i + 1 < expression.length() && expression.charAt(i + 1) == '"') {
+              text.append('"');
+              i += 2;
+              continue;
+            }
+            i++;
+            break;
+          }
+          text.append(expression.charAt(i++));
+        }
+        tokens.add(new Token(text.toString(), true));
+      } else if ("=!<>^".indexOf(c) >= 0) {
+        int start = i++;
+        if (i < expression.length() && expression.charAt(i) == '=') {
+          i++;
+        }
+        tokens.add(new Token(expression.substring(start, i), false));
+      } else {
+        int start = i;
+        while (i < expression.length()
+            && !Character.isWhitespace(expression.charAt(i))
+            && "()\"=!<>^".indexOf(expression.charAt(i)) < 0) {
+          i++;
+        }
+        tokens.add(new Token(expression.substring(start, i), false));
+      }
+    }
+    return tokens;
+  }
+
+  /** Recursive descent parser, in which AND binds more tightly than OR. */
+  private static final class Parser {
+    private final List<Token> tokens;
+    private final ColumnarTable table;
+    private int position = 0;
+
+    private Parser(List<Token> tokens, ColumnarTable table) {
+      this.tokens = tokens;
+      this.table = table;
+    }
+
+    private Node parseOr() {
+      Node node = this.parseAnd();
+      while (this.peekIs("OR")) {
+        this.position++;
+        node = new Combination(node, this.parseAnd(), false);
+      }
+      return node;
+    }
+
+    private Node parseAnd() {
+      Node node = this.parsePrimary();
+      while (this.peekIs("AND")) {
+        this.position++;
+        node = new Combination(node, this.parsePrimary(), true);
+      }
+      return node;
+    }
+
+    private Node parsePrimary() {
+      if (this.peekIs("(")) {
+        this.position++;
+        Node node = this.parseOr();
+        if (!this.peekIs(")")) {
+          throw new IllegalArgumentException("Expected )");
+        }
+        this.position++;
+        return node;
+      }
+      Token name = this.next();
+      Token operator = this.next();
+      Token value = this.next();
+      if (name.isOperator() || !operator.isOperator() || value.isOperator() || value.is("(")) {
+        throw new IllegalArgumentException("Expected a comparison at " + name.text);
+      }
+      return new Comparison(this.table, this.findColumn(name), operator.text, value.text);
+    }
+
+    /** Finds a column named by its header or, failing that, by its index. */
+    private int findColumn(Token name) {
+      int index = this.table.getColumnIndex(name.text);
+      if (index < 0 && !name.quoted) {
+        try {
+          index = Integer.parseInt(name.text);
+        } catch (NumberFormatException e) {
+          index = -1;
+        }
+      }
+      if (index < 0 || index >= this.table.getColumnCount()) {
+        throw new IllegalArgumentException("No column " + name.text);
+      }
+      return index;
+    }
+
+    private boolean peekIs(String text) {
+      return this.position < this.tokens.size() && this.tokens.get(this.position).is(text);
+    }
+
+    private Token next() {
+      if (this.position >= this.tokens.size()) {
+        throw new IllegalArgumentException("Unexpected end of filter");
+      }
+      return this.tokens.get(this.position++);
+    }
+  }
+}
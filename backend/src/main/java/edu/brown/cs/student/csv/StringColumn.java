@@ -0,0 +1,37 @@
+package edu.brown.cs.student.csv;
+
+/** A column of text with many distinct values, stored in a String[]. */
+public class StringColumn extends Column {
+  private final String[] values;
+
+  /**
+   * @param values value of each row, which the column takes ownership of
+   */
+  StringColumn(String[] values) {
+    this.values = values;
+  }
+
+  @Override
+  public ColumnType getType() {
+    return ColumnType.STRING;
+  }
+
+  @Override
+  public int size() {
+    return this.values.length;
+  }
+
+  @Override
+  public String getString(int row) {
+    return this.values[row];
+  }
+
+  @Override
+  public long estimateBytes() {
+    long bytes = 16 + 8L * this.values.length;
+    for (String value : this.values) {
+      bytes += Column.estimateBytes(value);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,420 @@
+package edu.brown.cs.student.csv;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a ColumnarTable to a compact binary snapshot next to the CSV it was loaded from, and reads
+ * it back, so that a file parsed once can be loaded again, such as after the server restarts,
+ * without parsing its text. A snapshot of "stars.csv" is kept in "stars.csv.snap" and holds the
+ * header, the type and values of each column, the dictionaries of text columns, and the sketches
+ * made while the file was parsed. Reading it back maps the file and copies each column into its
+ * array in bulk, so it takes about as long as reading the bytes.
+ *
+ * <p>A snapshot records the size and CRC32C checksum of the part of the CSV it was made from, and
+ * is only read while the CSV still begins with exactly those bytes. Rows appended to the CSV since
+ * are left for the caller to parse. The snapshot's own bytes are checksummed as well, so a snapshot
+ * that was damaged or only partly written is ignored rather than read.
+ */
+public final class TableSnapshotFile {
+  /** Appended to the path of a CSV to give the path of its snapshot */
+  public static final String EXTENSION = ".snap";
+
+  // "CSVS", followed by the version of the format
+  private static final int MAGIC = 0x43535653;
+  private static final int VERSION = 1;
+  // Bytes before the table: the magic number, version, source size and source checksum
+  private static final int PREAMBLE_BYTES = 24;
+  // Largest part of a file mapped at once
+  private static final int WINDOW = 64 << 20;
+
+  // Tags of the column types
+  private static final byte LONG = 0;
+  private static final byte DOUBLE = 1;
+  private static final byte DICTIONARY = 2;
+  private static final byte STRING = 3;
+
+  private final ColumnarTable table;
+  private final long sourceSize;
+
+  private TableSnapshotFile(ColumnarTable table, long sourceSize) {
+    this.table = table;
+    this.sourceSize = sourceSize;
+  }
+
+  /**
+   * @return table read from the snapshot
+   */
+  public ColumnarTable getTable() {
+    return this.table;
+  }
+
+  /**
+   * @return number of bytes at the start of the CSV that the table was loaded from
+   */
+  public long getSourceSize() {
+    return this.sourceSize;
+  }
+
+  /**
+   * @param source path of a CSV file
+   * @return path of the snapshot of the file
+   */
+  public static Path pathOf(Path source) {
+    return source.resolveSibling(source.getFileName() + EXTENSION);
+  }
+
+  /**
+   * Writes the snapshot of a table loaded from the first sourceSize bytes of a CSV. The snapshot is
+   * written to a temporary file that then replaces any earlier one, so readers never see it partly
+   * written.
+   *
+   * @param table table loaded from the CSV
+   * @param source path of the CSV file
+   * @param sourceSize number of bytes of the file the table was loaded from
+   * @return path of the snapshot
+   * @throws IOException error from reading the CSV or writing the snapshot
+   */
+  public static Path write(ColumnarTable table, Path source, long sourceSize) throws IOException {
+    long sourceChecksum = checksum(source, sourceSize);
+    Path target = pathOf(source);
+    Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), ".snap", ".tmp");
+    try {
+      try (OutputStream file = Files.newOutputStream(temporary)) {
+        CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32C());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sourceSize);
+        out.writeLong(sourceChecksum);
+        writeTable(table, out);
+        out.flush();
+        // Ends with the checksum of every byte before it
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+      }
+      Files.move(
+          temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return target;
+  }
+
+  /**
+   * Reads the snapshot of a CSV, if there is one that was made from the start of the file as it is
+   * now.
+   *
+   * @param source path of the CSV file
+   * @param size current size of the file
+   * @return the snapshot, or null if there is none, it is damaged, or the file has changed other
+   *     than by being appended to
+   * @throws IOException error from reading the CSV or the snapshot
+   */
+  public static TableSnapshotFile read(Path source, long size) throws IOException {
+    Path path = pathOf(source);
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length < PREAMBLE_BYTES + 8) {
+        return damaged(path);
+      }
+      ByteBuffer preamble = channel.map(MapMode.READ_ONLY, 0, PREAMBLE_BYTES);
+      if (preamble.getInt() != MAGIC || preamble.getInt() != VERSION) {
+        // Written by another version of the server, so it is simply replaced on the next write
+        return null;
+      }
+      long sourceSize = preamble.getLong();
+      long sourceChecksum = preamble.getLong();
+      if (sourceSize > size || checksum(source, sourceSize) != sourceChecksum) {
+        return null;
+      }
+
+      // Checks the snapshot itself before trusting anything in it
+      CRC32C checksum = new CRC32C();
+      for (long position = 0; position < length - 8; position += WINDOW) {
+        checksum.update(
+            channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW, length - 8 - position)));
+      }
+      if (channel.map(MapMode.READ_ONLY, length - 8, 8).getLong() != checksum.getValue()) {
+        return damaged(path);
+      }
+
+      Input in = new Input(channel, PREAMBLE_BYTES, length - 8);
+      return new TableSnapshotFile(readTable(in), sourceSize);
+    }
+  }
+
+  /** Reports a snapshot that cannot be read. */
+  private static TableSnapshotFile damaged(Path path) {
+    System.err.println("ERROR: the snapshot " + path + " is damaged and was ignored.");
+    return null;
+  }
+
+  /** Computes the CRC32C checksum of the first size bytes of a file. */
+  private static long checksum(Path path, long size) throws IOException {
+    CRC32C checksum = new CRC32C();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < size) {
+        throw new EOFException(path + " is shorter than " + size + " bytes");
+      }
+      for (long position = 0; position < size; position += WINDOW) {
+        checksum.update(
+            channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW, size - position)));
+      }
+    }
+    return checksum.getValue();
+  }
+
+  private static void writeTable(ColumnarTable table, DataOutputStream out) throws IOException {
+    int rowCount = table.getRowCount();
+    int columnCount = table.getColumnCount();
+    out.writeInt(rowCount);
+    out.writeInt(columnCount);
+    out.writeInt(table.getHeader().size());
+    for (String name : table.getHeader()) {
+      writeString(name, out);
+    }
+
+    // Only writes the width of each row if some rows are shorter than others
+    boolean ragged = false;
+    for (int row = 0; row < rowCount && !ragged; row++) {
+      ragged = table.getRowWidth(row) != columnCount;
+    }
+    out.writeBoolean(ragged);
+    if (ragged) {
+      for (int row = 0; row < rowCount; row++) {
+        out.writeInt(table.getRowWidth(row));
+      }
+    }
+
+    for (int i = 0; i < columnCount; i++) {
+      writeColumn(table.getColumn(i), out);
+      writeSketches(table.getDistinctSketch(i), table.getQuantileSketch(i), out);
+    }
+  }
+
+  private static void writeColumn(Column column, DataOutputStream out) throws IOException {
+    int size = column.size();
+    if (column instanceof LongColumn longs) {
+      out.writeByte(LONG);
+      for (int row = 0; row < size; row++) {
+        out.writeLong(longs.getLong(row));
+      }
+    } else if (column instanceof DoubleColumn doubles) {
+      out.writeByte(DOUBLE);
+      for (int row = 0; row < size; row++) {
+        out.writeDouble(doubles.getDouble(row));
+      }
+      for (int row = 0; row < size; row++) {
+        out.writeByte(doubles.getScale(row));
+      }
+    } else if (column instanceof DictionaryColumn dictionary) {
+      out.writeByte(DICTIONARY);
+      out.writeInt(dictionary.getDictionarySize());
+      for (int code = 0; code < dictionary.getDictionarySize(); code++) {
+        writeString(dictionary.getDictionaryValue(code), out);
+      }
+      for (int row = 0; row < size; row++) {
+        out.writeInt(dictionary.getCode(row));
+      }
+    } else {
+      out.writeByte(STRING);
+      for (int row = 0; row < size; row++) {
+        writeString(column.getString(row), out);
+      }
+    }
+  }
+
+  /**
+   * Writes the sketches of a column, each prefixed by its length so it can be read in one piece.
+   */
+  private static void writeSketches(HyperLogLog distinct, KllSketch quantiles, DataOutputStream out)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream sketches = new DataOutputStream(bytes);
+    distinct.writeTo(sketches);
+    sketches.writeBoolean(quantiles != null);
+    if (quantiles != null) {
+      quantiles.writeTo(sketches);
+    }
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  private static void writeString(String value, DataOutputStream out) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static ColumnarTable readTable(Input in) throws IOException {
+    int rowCount = in.getInt();
+    int columnCount = in.getInt();
+    List<String> header = new ArrayList<>();
+    for (int i = in.getInt(); i > 0; i--) {
+      header.add(in.getString());
+    }
+    int[] widths = null;
+    if (in.getByte() != 0) {
+      widths = new int[rowCount];
+      in.getInts(widths);
+    }
+
+    Column[] columns = new Column[columnCount];
+    HyperLogLog[] distinct = new HyperLogLog[columnCount];
+    KllSketch[] quantiles = new KllSketch[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      columns[i] = readColumn(in, rowCount);
+      ByteBuffer sketches = in.getBlock(in.getInt());
+      distinct[i] = HyperLogLog.readFrom(sketches);
+      quantiles[i] = sketches.get() != 0 ? KllSketch.readFrom(sketches) : null;
+    }
+    return new ColumnarTable(List.copyOf(header), columns, rowCount, widths, distinct, quantiles);
+  }
+
+  private static Column readColumn(Input in, int size) throws IOException {
+    byte type = in.getByte();
+    switch (type) {
+      case LONG:
+        long[] longs = new long[size];
+        in.getLongs(longs);
+        return new LongColumn(longs);
+      case DOUBLE:
+        double[] doubles = new double[size];
+        byte[] scales = new byte[size];
+        in.getDoubles(doubles);
+        in.getBytes(scales);
+        return new DoubleColumn(doubles, scales);
+      case DICTIONARY:
+        String[] dictionary = new String[in.getInt()];
+        for (int code = 0; code < dictionary.length; code++) {
+          dictionary[code] = in.getString();
+        }
+        int[] codes = new int[size];
+        in.getInts(codes);
+        return new DictionaryColumn(codes, dictionary);
+      case STRING:
+        String[] strings = new String[size];
+        for (int row = 0; row < size; row++) {
+          strings[row] = in.getString();
+        }
+        return new StringColumn(strings);
+      default:
+        throw new IOException("Unknown column type " + type);
+    }
+  }
+
+  /**
+   * Reads a range of a file through a mapped window that moves along it, so that files larger than
+   * a single mapping can be read, and arrays are filled in bulk from the mapped bytes.
+   */
+  private static final class Input {
+    private final FileChannel channel;
+    private final long end;
+    private long windowStart;
+    private ByteBuffer window = ByteBuffer.allocate(0);
+
+    Input(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.end = end;
+      this.windowStart = start;
+    }
+
+    byte getByte() throws IOException {
+      return this.ensure(1).get();
+    }
+
+    int getInt() throws IOException {
+      return this.ensure(4).getInt();
+    }
+
+    String getString() throws IOException {
+      int length = this.getInt();
+      ByteBuffer bytes = this.ensure(length);
+      String value = StandardCharsets.UTF_8.decode(bytes.slice().limit(length)).toString();
+      bytes.position(bytes.position() + length);
+      return value;
+    }
+
+    /** Returns the next length bytes as a buffer of their own. */
+    ByteBuffer getBlock(int length) throws IOException {
+      ByteBuffer bytes = this.ensure(length);
+      ByteBuffer block = bytes.slice().limit(length);
+      bytes.position(bytes.position() + length);
+      return block;
+    }
+
+    void getBytes(byte[] values) throws IOException {
+      for (int done = 0; done < values.length; ) {
+        ByteBuffer bytes = this.ensure(1);
+        int count = Math.min(values.length - done, bytes.remaining());
+        bytes.get(values, done, count);
+        done += count;
+      }
+    }
+
+    void getInts(int[] values) throws IOException {
+      for (int done = 0; done < values.length; ) {
+        ByteBuffer bytes = this.ensure(4);
+        int count = Math.min(values.length - done, bytes.remaining() / 4);
+        bytes.asIntBuffer().get(values, done, count);
+        bytes.position(bytes.position() + 4 * count);
+        done += count;
+      }
+    }
+
+    void getLongs(long[] values) throws IOException {
+      for (int done = 0; done < values.length; ) {
+        ByteBuffer bytes = this.ensure(8);
+        int count = Math.min(values.length - done, bytes.remaining() / 8);
+        bytes.asLongBuffer().get(values, done, count);
+        bytes.position(bytes.position() + 8 * count);
+        done += count;
+      }
+    }
+
+    void getDoubles(double[] values) throws IOException {
+      for (int done = 0; done < values.length; ) {
+        ByteBuffer bytes = this.ensure(8);
+        int count = Math.min(values.length - done, bytes.remaining() / 8);
+        bytes.asDoubleBuffer().get(values, done, count);
+        bytes.position(bytes.position() + 8 * count);
+        done += count;
+      }
+    }
+
+    /** Moves the window forward if fewer than the given number of bytes are left in it. */
+    private ByteBuffer ensure(int bytes) throws IOException {
+      if (this.window.remaining() >= bytes) {
+        return this.window;
+      }
+      long position = this.windowStart + this.window.position();
+      if (position + bytes > this.end) {
+        throw new EOFException("Snapshot ends partway through a value");
+      }
+      int length = (int) Math.min(Math.max(WINDOW, bytes), this.end - position);
+      this.window = this.channel.map(MapMode.READ_ONLY, position, length);
+      this.windowStart = position;
+      return this.window;
+    }
+  }
+}
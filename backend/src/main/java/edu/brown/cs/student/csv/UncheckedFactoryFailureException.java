@@ -0,0 +1,23 @@
+package edu.brown.cs.student.csv;
+
+/**
+ * Wraps a FactoryFailureException so that it can escape from methods that cannot throw checked
+ * exceptions, such as Iterator.next() while lazily iterating over a CSVParser.
+ */
+public class UncheckedFactoryFailureException extends RuntimeException {
+
+  /**
+   * @param cause the FactoryFailureException thrown while creating an object from a row
+   */
+  public UncheckedFactoryFailureException(FactoryFailureException cause) {
+    super(cause);
+  }
+
+  /**
+   * @return the wrapped FactoryFailureException
+   */
+  @Override
+  public FactoryFailureException getCause() {
+    return (FactoryFailureException) super.getCause();
+  }
+}
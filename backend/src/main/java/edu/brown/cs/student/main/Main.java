@@ -1,17 +1,24 @@
 package edu.brown.cs.student.main;
 
 import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.CreatorFromRow;
 import edu.brown.cs.student.csv.FactoryFailureException;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.UncheckedFactoryFailureException;
 import edu.brown.cs.student.kdtree.DistanceSorter;
 import edu.brown.cs.student.kdtree.KdTree;
 import edu.brown.cs.student.stars.GalaxyGenerator;
 import edu.brown.cs.student.stars.Star;
 import edu.brown.cs.student.stars.StarFactory;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.PriorityQueue;
 
@@ -28,6 +35,9 @@ public final class Main {
     new Main(args).run();
   }
 
+  // Number of times each parser is timed by the benchmark_parse command
+  private static final int BENCHMARK_ROUNDS = 5;
+
   private final String[] args;
 
   private Main(String[] args) {
@@ -90,17 +100,100 @@ public final class Main {
         File file = new File(filePathway);
         FileReader fr = new FileReader(file);
 
-        // Creates CSVParser object and runs analysis of file
+        // Creates CSVParser object and lazily streams the stars so the file never has to fit
+        // in memory at once
         StarFactory sf = new StarFactory();
         CSVParser<Star> parser = new CSVParser<>(fr, sf);
-        parser.create();
+        long starCount = 0;
+        Iterator<Star> stars = parser.iterator();
+        while (stars.hasNext()) {
+          stars.next();
+          starCount++;
+        }
+        System.out.println("Star Count: " + starCount);
       } catch (IOException e) { // IOException
         System.err.println("ERROR: The file cannot be read");
         throw e;
-      } catch (FactoryFailureException f) { // FactoryFailureException
+      } catch (UncheckedIOException e) { // IOException while streaming
+        System.err.println("ERROR: The file cannot be read");
+        throw e.getCause();
+      } catch (UncheckedFactoryFailureException f) { // FactoryFailureException
         System.err.println("ERROR: a row cannot be converted to an object!");
-        throw f;
+        throw f.getCause();
+      }
+    } else if (args.length == 2 && args[0].equals("benchmark_parse")) {
+      // Times the tokenizer against splitting each line on commas, on a generated star catalog
+      int numStars = 0;
+      try {
+        numStars = Integer.parseInt(args[1]);
+      } catch (Exception ignored) {
+        System.err.println("ERROR: Could not parse number of stars to generate.");
+      }
+      String catalog = generateCatalog(numStars);
+      for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+        // Tokenizing alone, then tokenizing and building Star objects
+        long splitNanos = timeSplitParse(catalog, new ListStringFactory());
+        long tokenizerNanos = timeTokenizerParse(catalog, new ListStringFactory());
+        long splitStarNanos = timeSplitParse(catalog, new StarFactory());
+        long tokenizerStarNanos = timeTokenizerParse(catalog, new StarFactory());
+        // The first round includes warming up the JIT, so later rounds are the ones to compare
+        System.out.printf(
+            "Round %d: List<String> rows: split %d ms, tokenizer %d ms;"
+                + " Stars: split %d ms, tokenizer %d ms%n",
+            round + 1,
+            splitNanos / 1_000_000,
+            tokenizerNanos / 1_000_000,
+            splitStarNanos / 1_000_000,
+            tokenizerStarNanos / 1_000_000);
       }
     }
   }
+
+  /**
+   * Builds the text of a CSV shaped like the files in data/stars, with a header and one row for
+   * each generated star.
+   *
+   * @param numStars number of stars in the catalog
+   * @return text of the CSV
+   */
+  private static String generateCatalog(int numStars) {
+    StringBuilder catalog = new StringBuilder("StarID,ProperName,X,Y,Z\n");
+    for (Star star : GalaxyGenerator.generate(numStars)) {
+      // Coordinates in the star files are written with five decimal places
+      catalog.append(star.id()).append(',').append(star.name()).append(',');
+      catalog.append(Math.round(star.x() * 1e8) / 1e5).append(',');
+      catalog.append(Math.round(star.y() * 1e8) / 1e5).append(',');
+      catalog.append(Math.round(star.z() * 1e8) / 1e5).append('\n');
+    }
+    return catalog.toString();
+  }
+
+  /**
+   * Parses the catalog by reading lines and splitting them on commas, as CSVParser used to.
+   *
+   * @return elapsed nanoseconds
+   */
+  private static long timeSplitParse(String catalog, CreatorFromRow<?> rowCreator)
+      throws IOException, FactoryFailureException {
+    long start = System.nanoTime();
+    BufferedReader in = new BufferedReader(new StringReader(catalog));
+    in.readLine();
+    String line;
+    while ((line = in.readLine()) != null) {
+      rowCreator.create(Arrays.asList(line.split(",")));
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Parses the catalog with CSVParser, which uses CSVTokenizer and, for a CreatorFromFields, skips
+   * building a String for every field.
+   *
+   * @return elapsed nanoseconds
+   */
+  private static long timeTokenizerParse(String catalog, CreatorFromRow<?> rowCreator) {
+    long start = System.nanoTime();
+    new CSVParser<>(new StringReader(catalog), rowCreator).stream().count();
+    return System.nanoTime() - start;
+  }
 }
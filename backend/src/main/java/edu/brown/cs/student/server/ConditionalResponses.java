@@ -0,0 +1,152 @@
+package edu.brown.cs.student.server;
+
+import edu.brown.cs.student.csv.CSVSnapshot;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletResponse;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Sends the successful responses of the CSV endpoints with HTTP validators and compression. Every
+ * response carries a strong ETag derived from the dataset, its version and the request, along with
+ * the time the version was published as Last-Modified. A client that already holds the current
+ * version, according to If-None-Match or If-Modified-Since, is answered with 304 Not Modified and
+ * no body. HTTP dates only count whole seconds, so a version published in the same second as an
+ * If-Modified-Since date is taken to be newer than it, since another load could have replaced the
+ * client's version within that second; only the ETag tells those versions apart. Otherwise the body
+ * is compressed with gzip or deflate when the client accepts it, using the copies kept by the
+ * ResponseCache.
+ *
+ * <p>Compressed bodies are written straight to the connection. Spark only applies its own gzip
+ * wrapping when it serializes the returned body, which it skips once the response is committed.
+ */
+final class ConditionalResponses {
+  // Distinguishes versions numbered by this process from those of an earlier run of the server
+  private static final String EPOCH = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+  private ConditionalResponses() {}
+
+  /**
+   * Sends a successful response built from a snapshot of a dataset.
+   *
+   * @param request the request
+   * @param response response to the request
+   * @param cache serialized responses
+   * @param dataset name of the dataset, or null for the most recently loaded CSV
+   * @param snapshot the state the response is built from
+   * @param shape description of the request, such as the endpoint and the page
+   * @param stream whether an uncached body should be streamed rather than serialized and cached
+   * @param responses builds the map of the response
+   * @return body for Spark to send, which is empty if the response was written directly
+   */
+  static Object send(
+      Request request,
+      Response response,
+      ResponseCache cache,
+      String dataset,
+      CSVSnapshot snapshot,
+      String shape,
+      boolean stream,
+      Supplier<Map<String, Object>> responses) {
+    String tag =
+        EPOCH
+            + "-"
+            + Long.toHexString(snapshot.getVersion())
+            + "-"
+            + Integer.toHexString((dataset + "\n" + shape).hashCode());
+    ContentEncoding encoding = ContentEncoding.negotiate(request.headers("Accept-Encoding"));
+    long lastModified = snapshot.getCreatedAt() / 1000 * 1000;
+
+    // Each coding of the body is a different representation, so it needs its own strong tag
+    response.header(
+        "ETag",
+        "\""
+            + tag
+            + (encoding == ContentEncoding.IDENTITY ? "" : "-" + encoding.getToken())
+            + "\"");
+    response.header("Last-Modified", formatDate(lastModified));
+    response.header("Vary", "Accept-Encoding");
+    response.header("Cache-Control", "no-cache");
+    if (notModified(request, tag, lastModified)) {
+      response.status(HttpServletResponse.SC_NOT_MODIFIED);
+      return "";
+    }
+
+    // Uncached bodies that are streamed are compressed as they are written
+    long version = snapshot.getVersion();
+    byte[] cached = stream ? cache.getIfPresent(dataset, version, shape) : null;
+    if (stream && cached == null) {
+      return StreamingResponse.write(response, responses.get(), encoding);
+    }
+    byte[] body =
+        cache.get(dataset, version, shape, encoding, () -> JsonResponses.toBytes(responses.get()));
+    response.type("application/json");
+    if (encoding == ContentEncoding.IDENTITY) {
+      return body;
+    }
+
+    response.header("Content-Encoding", encoding.getToken());
+    response.raw().setContentLength(body.length);
+    try {
+      OutputStream out = response.raw().getOutputStream();
+      out.write(body);
+      out.flush();
+    } catch (IOException e) {
+      // The client most likely disconnected partway through the response
+      System.err.println("ERROR: Could not send response: " + e.getMessage());
+    }
+    return "";
+  }
+
+  /**
+   * Whether the client already holds the current representation. If-None-Match takes precedence
+   * over If-Modified-Since, as in RFC 9110.
+   */
+  private static boolean notModified(Request request, String tag, long lastModified) {
+    String ifNoneMatch = request.headers("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String candidate : ifNoneMatch.split(",")) {
+        String value = candidate.trim();
+        if (value.startsWith("W/")) {
+          value = value.substring(2);
+        }
+        // Tags of compressed representations match the same version of the data
+        if (value.equals("*")
+            || value.equals("\"" + tag + "\"")
+            || value.startsWith("\"" + tag + "-")) {
+          return true;
+        }
+      }
+      return false;
+    }
+    String ifModifiedSince = request.headers("If-Modified-Since");
+    if (ifModifiedSince != null) {
+      try {
+        long since =
+            ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME)
+                .toInstant()
+                .toEpochMilli();
+        // A version from the same second as the date may be newer than the client's
+        return lastModified < since;
+      } catch (DateTimeParseException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /** Formats a time as an HTTP date. */
+  private static String formatDate(long millis) {
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+  }
+}
@@ -0,0 +1,130 @@
+package edu.brown.cs.student.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings a response body may be compressed with, chosen from a client's Accept-Encoding
+ */
+enum ContentEncoding {
+  IDENTITY("identity"),
+  GZIP("gzip"),
+  DEFLATE("deflate");
+
+  private final String token;
+
+  ContentEncoding(String token) {
+    this.token = token;
+  }
+
+  /**
+   * @return name of the coding in the Content-Encoding header
+   */
+  String getToken() {
+    return this.token;
+  }
+
+  /**
+   * Picks the coding for a response, preferring gzip, then deflate, over an uncompressed body. A
+   * coding named with q=0 is never picked, even if the header also accepts "*", since a coding's
+   * own entry takes precedence over the wildcard.
+   *
+   * @param acceptEncoding value of the request's Accept-Encoding header, or null
+   * @return the chosen coding
+   */
+  static ContentEncoding negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return IDENTITY;
+    }
+    // Each is null while the coding has not been named
+    Boolean gzip = null;
+    Boolean deflate = null;
+    boolean any = false;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase();
+      boolean accepted = quality(parts) > 0;
+      if (name.equals("gzip") || name.equals("x-gzip")) {
+        gzip = (gzip != null && gzip) || accepted;
+      } else if (name.equals("deflate")) {
+        deflate = (deflate != null && deflate) || accepted;
+      } else if (name.equals("*")) {
+        any |= accepted;
+      }
+    }
+    // The wildcard only stands for the codings the header does not name
+    if (gzip == null ? any : gzip) {
+      return GZIP;
+    }
+    return (deflate == null ? any : deflate) ? DEFLATE : IDENTITY;
+  }
+
+  /** Reads the q parameter of a coding, which is 1 when it is missing or malformed. */
+  private static double quality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 1;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Wraps a stream so that what is written to it is compressed with this coding. The returned
+   * stream must be closed to finish the compressed body.
+   *
+   * @param out stream the compressed body is written to
+   * @return stream to write the uncompressed body to
+   * @throws IOException error from writing the start of the compressed body
+   */
+  OutputStream wrap(OutputStream out) throws IOException {
+    switch (this) {
+      case GZIP:
+        return new GZIPOutputStream(out, 8192);
+      case DEFLATE:
+        // A stream given its own deflater does not end it, so it is ended here rather than leaving
+        // its native memory to be freed whenever the deflater is collected
+        Deflater deflater = new Deflater();
+        return new DeflaterOutputStream(out, deflater, 8192) {
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              deflater.end();
+            }
+          }
+        };
+      default:
+        return out;
+    }
+  }
+
+  /**
+   * @param body uncompressed body
+   * @return body compressed with this coding
+   */
+  byte[] encode(byte[] body) {
+    if (this == IDENTITY) {
+      return body;
+    }
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+    try (OutputStream out = this.wrap(compressed)) {
+      out.write(body);
+    } catch (IOException e) {
+      // A ByteArrayOutputStream never fails to be written to
+      throw new UncheckedIOException(e);
+    }
+    return compressed.toByteArray();
+  }
+}
@@ -0,0 +1,194 @@
+package edu.brown.cs.student.server;
+
+import edu.brown.cs.student.kdtree.DistanceSorter;
+import edu.brown.cs.student.kdtree.KdTree;
+import edu.brown.cs.student.kdtree.KdTreeNode;
+import edu.brown.cs.student.kdtree.Point;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * A spatial cache of NWS forecast grid cells, which answers which cached cell a point falls in
+ * without asking the points endpoint. Each cell is kept as the centroid of its outline, indexed in
+ * a KdTree, and a point within a fixed distance of a fresh centroid is taken to lie in that cell.
+ * NWS cells are about 2.5km across, so that distance should be kept under half of that.
+ *
+ * <p>Distances are measured on a local flat projection, with longitude scaled by the cosine of the
+ * latitude, which is accurate to well under a metre over the distances involved. The KdTree cannot
+ * be changed once built, so it is rebuilt whenever the set of centroids changes; putting a cell
+ * that is already held at the same centroid, as every refresh of its forecast does, only extends
+ * its time to live. Cells are only added after an upstream request, so rebuilds are rare next to
+ * lookups, which read the latest tree without locking.
+ */
+public class ForecastCells {
+  /** Distance from the centroid of a cached cell within which points are taken to lie in it */
+  public static final double DEFAULT_RADIUS_KM = 1.0;
+
+  // Kilometres in a degree of latitude
+  private static final double KM_PER_DEGREE = 111.32;
+
+  private final double radiusDegrees;
+  private final long ttlNanos;
+  private final int maxCells;
+  private final LongSupplier clock;
+  // Cells by forecast URL, ordered from first to last put
+  private final LinkedHashMap<String, Cell> cells = new LinkedHashMap<>();
+  private volatile KdTree<Cell> tree = new KdTree<>(new ArrayList<>(), 0);
+
+  /**
+   * @param radiusKm distance from a centroid within which points are taken to lie in its cell
+   * @param ttl time a cell is kept after it is put
+   * @param maxCells greatest number of cells kept
+   */
+  public ForecastCells(double radiusKm, Duration ttl, int maxCells) {
+    this(radiusKm, ttl, maxCells, System::nanoTime);
+  }
+
+  /**
+   * @param radiusKm distance from a centroid within which points are taken to lie in its cell
+   * @param ttl time a cell is kept after it is put
+   * @param maxCells greatest number of cells kept
+   * @param clock current time in nanoseconds, which only needs to be consistent with itself
+   */
+  ForecastCells(double radiusKm, Duration ttl, int maxCells, LongSupplier clock) {
+    if (radiusKm < 0 || ttl.isNegative() || maxCells < 0) {
+      throw new IllegalArgumentException(
+          "Invalid cell cache bounds: " + radiusKm + ", " + ttl + ", " + maxCells);
+    }
+    this.radiusDegrees = radiusKm / KM_PER_DEGREE;
+    this.ttlNanos = ttl.toNanos();
+    this.maxCells = maxCells;
+    this.clock = clock;
+  }
+
+  /**
+   * @param latitude latitude of the point
+   * @param longitude longitude of the point
+   * @return forecast URL of the nearest fresh cell within the radius of the point, or null if there
+   *     is none
+   */
+  public String find(double latitude, double longitude) {
+    KdTree<Cell> current = this.tree;
+    Point target = project(latitude, longitude);
+    long now = this.clock.getAsLong();
+    Cell nearest = null;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (Cell cell :
+        current.kdTreeSearch(
+            "radius", this.radiusDegrees, target, new DistanceSorter(target), new HashSet<>())) {
+      double distance = cell.euclideanDistance(target);
+      if (!cell.isExpired(now) && distance < nearestDistance) {
+        nearest = cell;
+        nearestDistance = distance;
+      }
+    }
+    return nearest == null ? null : nearest.forecastURL;
+  }
+
+  /**
+   * Caches a cell, replacing any cell with the same forecast URL, until the time to live has
+   * passed.
+   *
+   * @param latitude latitude of the centroid of the cell
+   * @param longitude longitude of the centroid of the cell
+   * @param forecastURL forecast URL of the cell
+   */
+  public synchronized void put(double latitude, double longitude, String forecastURL) {
+    long now = this.clock.getAsLong();
+    Point centroid = project(latitude, longitude);
+    Cell held = this.cells.remove(forecastURL);
+    if (held != null && Arrays.equals(held.getPoint(), centroid.getPoint())) {
+      // The tree already holds the cell where it is, so it is only kept for longer
+      held.expiresAt = now + this.ttlNanos;
+      this.cells.put(forecastURL, held);
+      return;
+    }
+    this.cells.put(forecastURL, new Cell(centroid, forecastURL, now + this.ttlNanos));
+
+    // Drops expired cells, then the oldest ones, once there are too many
+    if (this.cells.size() > this.maxCells) {
+      this.cells.values().removeIf(cell -> cell.isExpired(now));
+      var iterator = this.cells.values().iterator();
+      while (this.cells.size() > this.maxCells && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+    // The tree sorts the list it is built from, so it is given its own copy
+    this.tree = new KdTree<>(new ArrayList<>(this.cells.values()), 0);
+  }
+
+  /**
+   * @return number of cells held, including expired ones not yet dropped
+   */
+  public synchronized int size() {
+    return this.cells.size();
+  }
+
+  /**
+   * Finds the centroid of a cell from its outline.
+   *
+   * @param ring GeoJSON ring of [longitude, latitude] positions, which ends where it starts
+   * @return latitude and longitude of the centroid, or null if the ring has no positions
+   */
+  public static double[] centroid(List<List<Double>> ring) {
+    int count = ring.size();
+    if (count > 1 && ring.get(0).equals(ring.get(count - 1))) {
+      // The closing position repeats the first, so it would count twice
+      count--;
+    }
+    if (count == 0) {
+      return null;
+    }
+    double latitude = 0;
+    double longitude = 0;
+    for (int i = 0; i < count; i++) {
+      longitude += ring.get(i).get(0);
+      latitude += ring.get(i).get(1);
+    }
+    return new double[] {latitude / count, longitude / count};
+  }
+
+  /** Projects a position onto the flat plane distances are measured on, in degrees of latitude. */
+  private static Point project(double latitude, double longitude) {
+    return new Point(new double[] {latitude, longitude * Math.cos(Math.toRadians(latitude))});
+  }
+
+  /** A cached cell, placed at its projected centroid. */
+  private static final class Cell implements KdTreeNode {
+    private final Point centroid;
+    private final String forecastURL;
+    // Extended in place when the cell is put again at the same centroid
+    private volatile long expiresAt;
+
+    private Cell(Point centroid, String forecastURL, long expiresAt) {
+      this.centroid = centroid;
+      this.forecastURL = forecastURL;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired(long now) {
+      return now - this.expiresAt >= 0;
+    }
+
+    @Override
+    public double[] getPoint() {
+      return this.centroid.getPoint();
+    }
+
+    @Override
+    public int getDimension() {
+      return this.centroid.getDimension();
+    }
+
+    @Override
+    public double euclideanDistance(KdTreeNode node) {
+      return this.centroid.euclideanDistance(node);
+    }
+  }
+}
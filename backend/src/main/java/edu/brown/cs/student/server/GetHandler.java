@@ -1,10 +1,17 @@
 package edu.brown.cs.student.server;
 
-import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.RowFilter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -12,19 +19,47 @@ import spark.Route;
 /** Handler class for retrieving contents of CSV "getcsv" API endpoint */
 public class GetHandler implements Route {
   private final CSVData data;
+  private final ResponseCache cache;
 
   /**
    * @param data
    */
   public GetHandler(CSVData data) {
+    this(data, new ResponseCache());
+  }
+
+  /**
+   * @param data
+   * @param cache serialized responses, which may be shared with other handlers
+   */
+  public GetHandler(CSVData data, ResponseCache cache) {
     this.data = data;
+    this.cache = cache;
   }
 
   /**
    * This main method of the class dictates the processing and response of a request made to the API
    * server. The method accesses the instance of CSVData (shared state) and returns the results of
    * corresponding failureResponses method calls depending on if the CSVData has been loaded or if
-   * the fileData is null. Otherwise, a successfulResponse method is called. If
+   * the fileData is null. Otherwise, a successfulResponse method is called.
+   *
+   * <p>Without parameters, every row is returned. A page of the rows is returned instead when any
+   * of "offset" (first row, default 0), "limit" (greatest number of rows, default all), or
+   * "columns" (comma separated header names or indices, default all) is given. If more rows remain,
+   * the page includes a "next_cursor" token that can be passed back as "cursor" to get the next
+   * page, until a new version of the dataset is published.
+   *
+   * <p>With "filter", the pages hold only the rows that match it (see RowFilter for the syntax),
+   * and "total_rows" is the number of matching rows. Filters are evaluated by scanning the columns
+   * they name in parallel, without building the rows that do not match.
+   *
+   * <p>With "stream=true", the response is written to the client as it is serialized instead of
+   * being built as one String, so memory use does not grow with the size of the table.
+   *
+   * <p>Successful responses are cached as bytes for each version of the dataset, so repeating a
+   * request for unchanged data does not serialize the table again. They carry an ETag, so that a
+   * client holding the current version gets a 304 response, and are compressed if the client
+   * accepts gzip or deflate.
    *
    * @param request
    * @param response
@@ -32,19 +67,221 @@ public class GetHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
+    // A cursor carries the dataset, page size and columns of the request that produced it
+    PageCursor cursor = null;
+    String dataset = request.queryParams("dataset");
+    if (request.queryParams("cursor") != null) {
+      cursor = PageCursor.decode(request.queryParams("cursor"));
+      if (cursor == null) {
+        return getFailureResponse("error_bad_request");
+      }
+      dataset = cursor.getDataset();
+    }
+
+    // Reads the shared state once, so a concurrent load cannot change it partway through. A
+    // dataset may be named by its filepath; otherwise the most recently loaded CSV is used
+    CSVSnapshot snapshot = this.data.getSnapshot(dataset);
+
     // Checks if there is a CSV already loaded
-    if (this.data.getIsLoaded() != true) {
+    if (snapshot == null || !snapshot.isLoaded()) {
       return getFailureResponse("error_bad_request");
     }
 
     // Checks if the CSV was properly parsed
-    List<List<String>> fileData = this.data.getData();
+    List<List<String>> fileData = snapshot.getRows();
     if (fileData == null) {
       return getFailureResponse("error_datasource");
     }
 
     // Returns the contents of the CSV
-    return getSuccessResponse();
+    boolean paged =
+        cursor != null
+            || request.queryParams("offset") != null
+            || request.queryParams("limit") != null
+            || request.queryParams("columns") != null
+            || request.queryParams("filter") != null;
+    boolean stream = "true".equalsIgnoreCase(request.queryParams("stream"));
+    if (!paged) {
+      return ConditionalResponses.send(
+          request,
+          response,
+          this.cache,
+          dataset,
+          snapshot,
+          "getcsv",
+          stream,
+          () -> successResponses(fileData));
+    }
+
+    ColumnarTable fileTable = snapshot.getTable();
+
+    // The pages of a cursor must all come from the same version of the dataset
+    if (cursor != null && cursor.getVersion() != snapshot.getVersion()) {
+      return getFailureResponse("error_stale_cursor");
+    }
+    // A cursor comes from the client, so its page is checked as the query parameters are
+    if (cursor != null && !isValidPage(fileTable, cursor)) {
+      return getFailureResponse("error_bad_request");
+    }
+    if (cursor == null) {
+      try {
+        cursor =
+            new PageCursor(
+                dataset,
+                snapshot.getVersion(),
+                parseCount(request.queryParams("offset"), 0),
+                parseCount(request.queryParams("limit"), Integer.MAX_VALUE),
+                parseColumns(fileTable, request.queryParams("columns")),
+                request.queryParams("filter"));
+      } catch (IllegalArgumentException e) {
+        // Also covers NumberFormatException
+        return getFailureResponse("error_bad_request");
+      }
+    }
+    PageCursor page = cursor;
+    RowFilter filter;
+    try {
+      filter = page.getFilter() == null ? null : RowFilter.parse(page.getFilter(), fileTable);
+    } catch (IllegalArgumentException e) {
+      return getFailureResponse("error_bad_request");
+    }
+    String shape =
+        "getcsv?offset="
+            + page.getOffset()
+            + "&limit="
+            + page.getLimit()
+            + "&columns="
+            + Arrays.toString(page.getColumns())
+            + (page.getFilter() == null
+                ? ""
+                : "&filter=" + URLEncoder.encode(page.getFilter(), StandardCharsets.UTF_8));
+    return ConditionalResponses.send(
+        request,
+        response,
+        this.cache,
+        dataset,
+        snapshot,
+        shape,
+        stream,
+        () -> pageResponses(fileTable, page, filter));
+  }
+
+  /**
+   * Reads a non-negative count from a query parameter.
+   *
+   * @param value value of the parameter, or null
+   * @param defaultValue count to use if the parameter is missing
+   * @return the count
+   * @throws IllegalArgumentException if the value is not a non-negative integer
+   */
+  private static int parseCount(String value, int defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    int count = Integer.parseInt(value.trim());
+    if (count < 0) {
+      throw new IllegalArgumentException("Negative count: " + value);
+    }
+    return count;
+  }
+
+  /**
+   * Resolves the "columns" query parameter, in which each column is named by its header or index.
+   *
+   * @param table the loaded CSV
+   * @param value value of the parameter, or null for every column
+   * @return indices of the columns
+   * @throws IllegalArgumentException if a column does not exist
+   */
+  private static int[] parseColumns(ColumnarTable table, String value) {
+    if (value == null) {
+      return IntStream.range(0, table.getColumnCount()).toArray();
+    }
+    String[] names = value.split(",");
+    int[] columns = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i].trim();
+      int index = table.getColumnIndex(name);
+      if (index < 0) {
+        index = Integer.parseInt(name);
+      }
+      if (index < 0 || index >= table.getColumnCount()) {
+        throw new IllegalArgumentException("No column " + name);
+      }
+      columns[i] = index;
+    }
+    return columns;
+  }
+
+  /**
+   * Checks a page decoded from a cursor, which may have been forged or edited by the client.
+   *
+   * @param table the loaded CSV
+   * @param cursor position and shape of the page
+   * @return whether the offset and limit are non-negative and every column exists
+   */
+  private static boolean isValidPage(ColumnarTable table, PageCursor cursor) {
+    if (cursor.getOffset() < 0 || cursor.getLimit() < 0) {
+      return false;
+    }
+    for (int column : cursor.getColumns()) {
+      if (column < 0 || column >= table.getColumnCount()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method executes when a page of the CSV is requested. Only the rows and columns of the page
+   * are read from the table. The map holds the page, the header names of its columns, the offset
+   * and total number of rows, and a cursor for the next page if there are more rows.
+   *
+   * @param table the loaded CSV
+   * @param cursor position and shape of the page
+   * @return serialized JSON of Map, in UTF-8
+   */
+  public byte[] getPageResponse(ColumnarTable table, PageCursor cursor) {
+    // Serializes responses into JSON format
+    RowFilter filter =
+        cursor.getFilter() == null ? null : RowFilter.parse(cursor.getFilter(), table);
+    return JsonResponses.toBytes(pageResponses(table, cursor, filter));
+  }
+
+  /**
+   * Builds the map of a page response, in which the page is a lazy view of the table. With a
+   * filter, the table is scanned for the matching rows and the page is taken from those.
+   */
+  private static Map<String, Object> pageResponses(
+      ColumnarTable table, PageCursor cursor, RowFilter filter) {
+    int[] columns = cursor.getColumns();
+    int[] selection = filter == null ? null : filter.select(table);
+    int total = selection == null ? table.getRowCount() : selection.length;
+    List<List<String>> page = table.rows(selection, cursor.getOffset(), cursor.getLimit(), columns);
+    List<String> header = new ArrayList<>();
+    for (int column : columns) {
+      header.add(column < table.getHeader().size() ? table.getHeader().get(column) : "");
+    }
+
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("data", page);
+    responses.put("header", header);
+    responses.put("offset", cursor.getOffset());
+    responses.put("total_rows", total);
+    long next = (long) cursor.getOffset() + page.size();
+    if (!page.isEmpty() && next < total) {
+      PageCursor nextCursor =
+          new PageCursor(
+              cursor.getDataset(),
+              cursor.getVersion(),
+              (int) next,
+              cursor.getLimit(),
+              columns,
+              cursor.getFilter());
+      responses.put("next_cursor", nextCursor.encode());
+    }
+    return responses;
   }
 
   /**
@@ -52,17 +289,20 @@ public class GetHandler implements Route {
    * String stored denoting the successful result and the contents of the CSV held in the CSVData
    * instance is stored in the map. The map is serialized and returned in JSON string format.
    *
-   * @return serialized JSON string of Map
+   * @param fileData- rows of the CSV, shared with the CSVData instance
+   * @return serialized JSON of Map, in UTF-8
    */
-  public Object getSuccessResponse() {
-    // Creates map with failure response
+  public byte[] getSuccessResponse(List<List<String>> fileData) {
+    // Serializes responses into JSON format
+    return JsonResponses.toBytes(successResponses(fileData));
+  }
+
+  /** Builds the map of a successful response holding every row. */
+  private static Map<String, Object> successResponses(List<List<String>> fileData) {
     Map<String, Object> responses = new HashMap<>();
     responses.put("result", "success");
-    responses.put("data", this.data.getData());
-
-    // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    responses.put("data", fileData);
+    return responses;
   }
 
   /**
@@ -78,7 +318,6 @@ public class GetHandler implements Route {
     responses.put("result", responseType);
 
     // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
   }
 }
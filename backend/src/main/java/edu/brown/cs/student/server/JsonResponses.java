@@ -0,0 +1,33 @@
+package edu.brown.cs.student.server;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import java.io.IOException;
+import java.util.Map;
+import okio.Buffer;
+
+/**
+ * Serializes response maps with one shared Moshi adapter, which is thread-safe, rather than
+ * building a new Moshi instance and adapter for every request.
+ */
+final class JsonResponses {
+  /** Adapter for the maps that every handler responds with */
+  static final JsonAdapter<Map> MAP_ADAPTER = new Moshi.Builder().build().adapter(Map.class);
+
+  private JsonResponses() {}
+
+  /**
+   * @param responses values of the response
+   * @return the response as JSON in UTF-8, without going through a String
+   */
+  static byte[] toBytes(Map<String, Object> responses) {
+    Buffer buffer = new Buffer();
+    try {
+      MAP_ADAPTER.toJson(buffer, responses);
+    } catch (IOException e) {
+      // A Buffer never fails to be written to
+      throw new IllegalStateException(e);
+    }
+    return buffer.readByteArray();
+  }
+}
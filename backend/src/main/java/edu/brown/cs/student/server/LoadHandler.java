@@ -1,15 +1,12 @@
 package edu.brown.cs.student.server;
 
-import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.csv.CSVData;
-import edu.brown.cs.student.csv.CSVParser;
-import edu.brown.cs.student.csv.FactoryFailureException;
-import edu.brown.cs.student.csv.ListStringFactory;
-import java.io.File;
-import java.io.FileReader;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.DatasetWatcher;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import spark.Request;
 import spark.Response;
@@ -17,22 +14,57 @@ import spark.Route;
 
 /** Handler class for loading CSV "loadcsv" API endpoint */
 public class LoadHandler implements Route {
-  private String filepath;
+  // Folder that every loaded file must be inside
+  private static final String DATA_FOLDER = "data";
+
   private final CSVData data;
+  private final LoadJobs jobs;
+  private final DatasetWatcher watcher;
 
   /**
    * @param data
    */
   public LoadHandler(CSVData data) {
-    this.filepath = null;
+    this(data, new LoadJobs(data));
+  }
+
+  /**
+   * @param data
+   * @param jobs background loads, shared with the handler that reports on them
+   */
+  public LoadHandler(CSVData data, LoadJobs jobs) {
+    this(data, jobs, new DatasetWatcher(data));
+  }
+
+  /**
+   * @param data
+   * @param jobs background loads, shared with the handler that reports on them
+   * @param watcher reloads the files loaded with "watch=true" when they change
+   */
+  public LoadHandler(CSVData data, LoadJobs jobs, DatasetWatcher watcher) {
     this.data = data;
+    this.jobs = jobs;
+    this.watcher = watcher;
   }
 
   /**
    * This main method of the class dictates the processing and response of a request made to the API
    * server. If the user does not pass a filepath in the request, a corresponding loadReponse is
    * called The method creates a file and attempts to parse the file. Exceptions with improper file
-   * types and invalid filepaths are caught and corresponding loadResponses are called.
+   * types and invalid filepaths are caught and corresponding loadResponses are called. The filepath
+   * is kept local to the request, since requests are handled on many threads at once.
+   *
+   * <p>With "async=true", the file is loaded in the background and the response, returned at once,
+   * holds the id of the job under "job". Its progress can be followed at the "loadstatus" endpoint,
+   * and the previously loaded CSV is served until the job publishes the new one.
+   *
+   * <p>Loading a file again parses only the rows appended to it since the last load, when it has
+   * only been appended to. With "watch=true", the file is also reloaded that way whenever it
+   * changes, once it has loaded, and the response says under "watching" whether it is watched; for
+   * a load in the background, the "loadstatus" endpoint says so once the job succeeds. With
+   * "snapshot=true", a binary snapshot of the loaded file is written next to it, so that it can be
+   * loaded again without being parsed, and the response says under "snapshot_written" whether it
+   * was.
    *
    * @param request
    * @param response
@@ -41,33 +73,88 @@ public class LoadHandler implements Route {
   @Override
   public Object handle(Request request, Response response) {
     // Retrieves filepath from request
-    this.filepath = request.queryParams("filepath");
+    String filepath = request.queryParams("filepath");
 
     // Determines if the user provided a filepath
-    if (this.filepath == null) {
-      return loadResponse("error_bad_request");
+    if (filepath == null) {
+      return loadResponse("error_bad_request", filepath);
+    }
+
+    // Determines if the desired file is in the data folder, before anything reads, writes or
+    // watches next to it
+    if (!filepath.startsWith("data/") || !isInDataFolder(filepath)) {
+      return loadResponse("error_datasource", filepath);
+    }
+
+    // Loads the file on a loader thread, so this request thread is not held while it is parsed
+    boolean watch = "true".equalsIgnoreCase(request.queryParams("watch"));
+    if ("true".equalsIgnoreCase(request.queryParams("async"))) {
+      LoadJobs.LoadJob job = this.jobs.submit(filepath, watch ? this.watcher : null);
+      if (job == null) {
+        return loadResponse("error_busy", filepath);
+      }
+      Map<String, Object> responses = new HashMap<>();
+      responses.put("result", "success");
+      responses.put("filepath", filepath);
+      responses.put("job", job.getId());
+      responses.put("status", job.getStatus());
+      return JsonResponses.MAP_ADAPTER.toJson(responses);
+    }
+
+    // Attempt to read file and parse it into columns, unless it is already resident and unchanged
+    CSVSnapshot loaded;
+    try {
+      loaded = this.data.getRegistry().load(filepath);
+    } catch (IOException | InvalidPathException e) {
+      return loadResponse("error_datasource", filepath);
     }
 
-    // Determines if the desired file is in the data folder
-    if (!filepath.startsWith("data/")) {
-      return loadResponse("error_datasource");
+    // Publishes the table and the loaded status together
+    this.data.publish(loaded.getTable());
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("filepath", filepath);
+    if (watch) {
+      responses.put("watching", watch(this.watcher, filepath));
+    }
+    if ("true".equalsIgnoreCase(request.queryParams("snapshot"))) {
+      responses.put("snapshot_written", this.writeSnapshot(filepath));
     }
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
 
-    // Attempt to read file and parse it into List of List of String
+  /** Writes the snapshot of a loaded file, returning whether it was written. */
+  private boolean writeSnapshot(String filepath) {
     try {
-      File file = new File(this.filepath);
-      FileReader fr = new FileReader(file);
-      CSVParser<List<String>> parser = new CSVParser<>(fr, new ListStringFactory());
-      List<List<String>> fileData = parser.create();
-      this.data.setData(fileData);
-    } catch (FactoryFailureException e) {
-      return loadResponse("error_datasource");
+      return this.data.getRegistry().writeSnapshot(filepath) != null;
     } catch (IOException e) {
-      return loadResponse("error_datasource");
+      System.err.println("ERROR: the snapshot of " + filepath + " could not be written.");
+      return false;
+    }
+  }
+
+  /** Watches a loaded file for changes, returning whether it is watched. */
+  static boolean watch(DatasetWatcher watcher, String filepath) {
+    try {
+      watcher.watch(filepath);
+      return true;
+    } catch (IOException | InvalidPathException e) {
+      System.err.println("ERROR: " + filepath + " cannot be watched.");
+      return false;
     }
+  }
 
-    this.data.setIsLoaded(true);
-    return loadResponse("success");
+  /**
+   * Whether a file is inside the data folder once ".." and symbolic links are resolved, so that a
+   * path such as data/../x.csv cannot load, snapshot or watch a file elsewhere. A file that does
+   * not exist is not.
+   */
+  static boolean isInDataFolder(String filepath) {
+    try {
+      return Path.of(filepath).toRealPath().startsWith(Path.of(DATA_FOLDER).toRealPath());
+    } catch (IOException | InvalidPathException e) {
+      return false;
+    }
   }
 
   /**
@@ -76,16 +163,16 @@ public class LoadHandler implements Route {
    * HashMap is then serialized into JSON string format and returned
    *
    * @param responseType - String of either success or descriptive error message
+   * @param filepath - filepath passed in the request
    * @return JSON string of HashMap
    */
-  public Object loadResponse(String responseType) {
+  public Object loadResponse(String responseType, String filepath) {
     // Creates map with failure response
     Map<String, Object> responses = new HashMap<>();
     responses.put("result", responseType);
-    responses.put("filepath", this.filepath);
+    responses.put("filepath", filepath);
 
     // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
   }
 }
@@ -0,0 +1,270 @@
+package edu.brown.cs.student.server;
+
+import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.DatasetWatcher;
+import edu.brown.cs.student.csv.LoadProgress;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads CSV files in the background, so that a request to load a large file returns at once instead
+ * of holding a server thread until the file is parsed. Loads run on a small fixed number of threads
+ * with a bounded queue, and the parsing of each file is itself spread over the common ForkJoinPool
+ * by MappedCSVLoader. While a file loads, the previously published dataset keeps being served; the
+ * new one is published in a single step once it is complete.
+ *
+ * <p>Each load is a job, named by an id, whose progress can be read and which can be cancelled
+ * until it publishes. The most recent jobs are remembered after they finish, so that their outcome
+ * can still be read.
+ */
+public class LoadJobs {
+  /** Number of files loaded at once when none is configured */
+  public static final int DEFAULT_THREADS = 2;
+
+  /** Number of loads that may wait for a thread when none is configured */
+  public static final int DEFAULT_QUEUE_SIZE = 16;
+
+  // Finished jobs remembered beyond those still queued or running
+  private static final int MAX_FINISHED_JOBS = 64;
+
+  private final CSVData data;
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong ids = new AtomicLong();
+  // Ordered from oldest to newest
+  private final Map<String, LoadJob> jobs = new LinkedHashMap<>();
+
+  /**
+   * @param data shared state that finished loads are published to
+   */
+  public LoadJobs(CSVData data) {
+    this(data, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * @param data shared state that finished loads are published to
+   * @param threads number of files loaded at once
+   * @param queueSize number of loads that may wait for a thread
+   */
+  public LoadJobs(CSVData data, int threads, int queueSize) {
+    this.data = data;
+    AtomicLong threadIds = new AtomicLong();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            runnable -> {
+              Thread thread = new Thread(runnable, "csv-loader-" + threadIds.incrementAndGet());
+              // Loads in progress should not keep the server from shutting down
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Starts loading a file in the background.
+   *
+   * @param filepath path of the CSV file
+   * @return the job, or null if too many loads are already waiting
+   */
+  public LoadJob submit(String filepath) {
+    return this.submit(filepath, null);
+  }
+
+  /**
+   * Starts loading a file in the background, and watches it for changes once it has loaded.
+   *
+   * @param filepath path of the CSV file
+   * @param watcher watches the file once it has loaded, or null to not watch it
+   * @return the job, or null if too many loads are already waiting
+   */
+  public LoadJob submit(String filepath, DatasetWatcher watcher) {
+    LoadJob job = new LoadJob(Long.toString(this.ids.incrementAndGet()), filepath, watcher);
+    synchronized (this) {
+      try {
+        job.future = this.executor.submit(() -> this.run(job));
+      } catch (RejectedExecutionException e) {
+        return null;
+      }
+      this.jobs.put(job.getId(), job);
+      this.forgetFinished();
+    }
+    return job;
+  }
+
+  /**
+   * @param id id of a job
+   * @return the job, or null if there is no such job or it finished long ago
+   */
+  public synchronized LoadJob get(String id) {
+    return this.jobs.get(id);
+  }
+
+  /** Stops accepting loads, cancelling any that are queued or running. */
+  public synchronized void shutdown() {
+    for (LoadJob job : this.jobs.values()) {
+      job.cancel();
+    }
+    this.executor.shutdown();
+  }
+
+  /** Loads a job's file and publishes it, unless the job is cancelled first. */
+  private void run(LoadJob job) {
+    if (job.getProgress().isCancelled()) {
+      job.status = LoadJob.CANCELLED;
+      job.finishedAt = System.currentTimeMillis();
+      return;
+    }
+    job.startedAt = System.currentTimeMillis();
+    job.status = LoadJob.RUNNING;
+    try {
+      CSVSnapshot loaded = this.data.getRegistry().load(job.getFilepath(), job.getProgress());
+      if (job.getProgress().isCancelled()) {
+        job.status = LoadJob.CANCELLED;
+      } else {
+        // Swaps the new table in as a whole, so readers see either the old or the new dataset
+        this.data.publish(loaded.getTable());
+        if (job.watcher != null) {
+          job.watching = LoadHandler.watch(job.watcher, job.getFilepath());
+        }
+        job.status = LoadJob.SUCCESS;
+      }
+    } catch (IOException | InvalidPathException e) {
+      System.err.println("ERROR: " + job.getFilepath() + " could not be loaded.");
+      job.status = LoadJob.ERROR_DATASOURCE;
+    } catch (CancellationException e) {
+      job.status = LoadJob.CANCELLED;
+    } catch (RuntimeException e) {
+      System.err.println("ERROR: loading " + job.getFilepath() + " failed: " + e);
+      job.status = LoadJob.ERROR_DATASOURCE;
+    } finally {
+      job.finishedAt = System.currentTimeMillis();
+    }
+  }
+
+  /** Forgets the oldest finished jobs beyond MAX_FINISHED_JOBS. */
+  private void forgetFinished() {
+    int finished = 0;
+    for (LoadJob job : this.jobs.values()) {
+      if (job.isFinished()) {
+        finished++;
+      }
+    }
+    Iterator<LoadJob> iterator = this.jobs.values().iterator();
+    while (finished > MAX_FINISHED_JOBS && iterator.hasNext()) {
+      if (iterator.next().isFinished()) {
+        iterator.remove();
+        finished--;
+      }
+    }
+  }
+
+  /** A file being loaded in the background. */
+  public static final class LoadJob {
+    static final String QUEUED = "queued";
+    static final String RUNNING = "running";
+    static final String SUCCESS = "success";
+    static final String CANCELLED = "cancelled";
+    static final String ERROR_DATASOURCE = "error_datasource";
+
+    private final String id;
+    private final String filepath;
+    private final DatasetWatcher watcher;
+    private final LoadProgress progress = new LoadProgress();
+    private final long submittedAt = System.currentTimeMillis();
+    private volatile String status = QUEUED;
+    private volatile long startedAt = -1;
+    private volatile long finishedAt = -1;
+    private volatile Future<?> future;
+    // Set once the file has loaded, if it was to be watched
+    private volatile Boolean watching;
+
+    private LoadJob(String id, String filepath, DatasetWatcher watcher) {
+      this.id = id;
+      this.filepath = filepath;
+      this.watcher = watcher;
+    }
+
+    /**
+     * Cancels the job. A queued job never starts, and a running one stops parsing and does not
+     * publish; a job that has finished is unaffected.
+     */
+    public void cancel() {
+      this.progress.cancel();
+      Future<?> future = this.future;
+      if (future != null && future.cancel(false)) {
+        this.status = CANCELLED;
+        this.finishedAt = System.currentTimeMillis();
+      }
+    }
+
+    public String getId() {
+      return this.id;
+    }
+
+    public String getFilepath() {
+      return this.filepath;
+    }
+
+    public LoadProgress getProgress() {
+      return this.progress;
+    }
+
+    /**
+     * @return "queued", "running", "success", "cancelled" or "error_datasource"
+     */
+    public String getStatus() {
+      return this.status;
+    }
+
+    /**
+     * @return whether the file is watched for changes, or null if it was not to be watched or has
+     *     not loaded
+     */
+    public Boolean getWatching() {
+      return this.watching;
+    }
+
+    /**
+     * @return whether the job has stopped, whether or not it succeeded
+     */
+    public boolean isFinished() {
+      String status = this.status;
+      return !status.equals(QUEUED) && !status.equals(RUNNING);
+    }
+
+    /**
+     * @return time the job was submitted, in milliseconds since the epoch
+     */
+    public long getSubmittedAt() {
+      return this.submittedAt;
+    }
+
+    /**
+     * @return time the job started loading, in milliseconds since the epoch, or -1 if it has not
+     */
+    public long getStartedAt() {
+      return this.startedAt;
+    }
+
+    /**
+     * @return time the job finished, in milliseconds since the epoch, or -1 if it has not
+     */
+    public long getFinishedAt() {
+      return this.finishedAt;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package edu.brown.cs.student.server;
+
+import edu.brown.cs.student.csv.LoadProgress;
+import java.util.HashMap;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Handler class for following and cancelling background loads at the "loadstatus" endpoint */
+public class LoadStatusHandler implements Route {
+  private final LoadJobs jobs;
+
+  /**
+   * @param jobs background loads, shared with the LoadHandler that starts them
+   */
+  public LoadStatusHandler(LoadJobs jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * Reports on the load named by "job": its "status" ("queued", "running", "success", "cancelled"
+   * or "error_datasource"), the bytes read out of the total, the rows parsed, the throughput so far
+   * and, while it is running, the estimated time left. A load started with "watch=true" also says
+   * under "watching", once it has succeeded, whether the file is watched. With "cancel=true", the
+   * load is cancelled first.
+   *
+   * @param request
+   * @param response
+   * @return JSON string of HashMap based on response method call
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String id = request.queryParams("job");
+    LoadJobs.LoadJob job = id == null ? null : this.jobs.get(id);
+    if (job == null) {
+      return getFailureResponse("error_bad_request");
+    }
+    if ("true".equalsIgnoreCase(request.queryParams("cancel"))) {
+      job.cancel();
+    }
+    return JsonResponses.MAP_ADAPTER.toJson(statusResponses(job));
+  }
+
+  /** Builds the map of a job's status, with rates measured from when it started running. */
+  private static Map<String, Object> statusResponses(LoadJobs.LoadJob job) {
+    LoadProgress progress = job.getProgress();
+    String status = job.getStatus();
+    long bytesRead = progress.getBytesRead();
+    long totalBytes = progress.getTotalBytes();
+    long rowsParsed = progress.getRowsParsed();
+
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("job", job.getId());
+    responses.put("filepath", job.getFilepath());
+    responses.put("status", status);
+    responses.put("bytes_read", bytesRead);
+    responses.put("rows_parsed", rowsParsed);
+    if (totalBytes >= 0) {
+      responses.put("total_bytes", totalBytes);
+    }
+    if (job.getWatching() != null) {
+      responses.put("watching", job.getWatching());
+    }
+
+    long startedAt = job.getStartedAt();
+    if (startedAt >= 0) {
+      long finishedAt = job.getFinishedAt();
+      long elapsed = (finishedAt >= 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+      responses.put("elapsed_ms", elapsed);
+      if (elapsed > 0) {
+        double bytesPerSecond = bytesRead * 1000.0 / elapsed;
+        responses.put("bytes_per_second", bytesPerSecond);
+        responses.put("rows_per_second", rowsParsed * 1000.0 / elapsed);
+        if (status.equals(LoadJobs.LoadJob.RUNNING) && totalBytes >= 0 && bytesPerSecond > 0) {
+          responses.put(
+              "eta_ms", Math.round(Math.max(0, totalBytes - bytesRead) * 1000.0 / bytesPerSecond));
+        }
+      }
+    }
+    return responses;
+  }
+
+  public Object getFailureResponse(String responseType) {
+    // Creates map with failure response
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", responseType);
+
+    // Serializes responses into JSON format
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
+}
@@ -0,0 +1,143 @@
+package edu.brown.cs.student.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * Position of the next page of a paginated "getcsv" request. The cursor remembers which dataset and
+ * which version of it the pages come from, along with the page size, the columns and the filter
+ * requested, and is handed to the client as an opaque URL-safe token. A cursor stops being valid
+ * once a new version of its dataset is published, so a client never mixes pages of two different
+ * loads.
+ */
+public final class PageCursor {
+  private final String dataset;
+  private final long version;
+  private final int offset;
+  private final int limit;
+  private final int[] columns;
+  private final String filter;
+
+  /**
+   * @param dataset filepath of the dataset, or null for the most recently loaded CSV
+   * @param version version of the dataset the pages come from
+   * @param offset index of the first row of the page
+   * @param limit greatest number of rows in the page
+   * @param columns indices of the columns in the page
+   */
+  public PageCursor(String dataset, long version, int offset, int limit, int[] columns) {
+    this(dataset, version, offset, limit, columns, null);
+  }
+
+  /**
+   * @param dataset filepath of the dataset, or null for the most recently loaded CSV
+   * @param version version of the dataset the pages come from
+   * @param offset index within the matching rows of the first row of the page
+   * @param limit greatest number of rows in the page
+   * @param columns indices of the columns in the page
+   * @param filter filter the rows must match, or null for every row
+   */
+  public PageCursor(
+      String dataset, long version, int offset, int limit, int[] columns, String filter) {
+    this.dataset = dataset;
+    this.version = version;
+    this.offset = offset;
+    this.limit = limit;
+    this.columns = columns.clone();
+    this.filter = filter;
+  }
+
+  /**
+   * Reads a token created by encode().
+   *
+   * @param token the token passed by the client
+   * @return the cursor, or null if the token is malformed
+   */
+  public static PageCursor decode(String token) {
+    try {
+      String text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      // The dataset comes last, since a filepath may contain any separator
+      String[] parts = text.split("\n", 6);
+      if (parts.length != 6) {
+        return null;
+      }
+      int[] columns =
+          parts[3].isEmpty()
+              ? new int[0]
+              : Arrays.stream(parts[3].split(",")).mapToInt(Integer::parseInt).toArray();
+      String filter =
+          parts[4].isEmpty()
+              ? null
+              : new String(
+                  Base64.getUrlDecoder().decode(parts[4].substring(1)), StandardCharsets.UTF_8);
+      String dataset = parts[5].isEmpty() ? null : parts[5].substring(1);
+      int offset = Integer.parseInt(parts[1]);
+      int limit = Integer.parseInt(parts[2]);
+      if (offset < 0 || limit < 0) {
+        return null;
+      }
+      return new PageCursor(dataset, Long.parseLong(parts[0]), offset, limit, columns, filter);
+    } catch (IllegalArgumentException e) {
+      // Also covers NumberFormatException
+      return null;
+    }
+  }
+
+  /**
+   * @return opaque URL-safe token for the cursor
+   */
+  public String encode() {
+    String columns =
+        Arrays.stream(this.columns).mapToObj(Integer::toString).collect(Collectors.joining(","));
+    // A filter may hold any character, so it is encoded on its own line
+    String filter =
+        this.filter == null
+            ? ""
+            : "/"
+                + Base64.getUrlEncoder()
+                    .withoutPadding()
+                    .encodeToString(this.filter.getBytes(StandardCharsets.UTF_8));
+    // A dataset or filter is marked with a leading '/' so that an empty one is distinct from none
+    String text =
+        this.version
+            + "\n"
+            + this.offset
+            + "\n"
+            + this.limit
+            + "\n"
+            + columns
+            + "\n"
+            + filter
+            + "\n"
+            + (this.dataset == null ? "" : "/" + this.dataset);
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public String getDataset() {
+    return this.dataset;
+  }
+
+  public long getVersion() {
+    return this.version;
+  }
+
+  public int getOffset() {
+    return this.offset;
+  }
+
+  public int getLimit() {
+    return this.limit;
+  }
+
+  public int[] getColumns() {
+    return this.columns.clone();
+  }
+
+  public String getFilter() {
+    return this.filter;
+  }
+}
@@ -0,0 +1,235 @@
+package edu.brown.cs.student.server;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the serialized UTF-8 bodies of successful CSV responses, so that a repeated request for
+ * unchanged data is answered by copying bytes rather than serializing the table again.
+ *
+ * <p>Bodies are stored by dataset and by the shape of the request (the endpoint, page and columns),
+ * and each remembers the version of the dataset it was serialized from. Once a newer version of a
+ * dataset is seen, every body of the older version is dropped, so publishing a new load invalidates
+ * the cache without the loader having to know about it. Bodies larger than the entry limit are not
+ * kept, and the least recently used bodies are dropped to stay within the memory budget.
+ *
+ * <p>Each body may also keep compressed copies of itself, built the first time a client asks for
+ * that content coding, so a body is compressed at most once per version.
+ */
+public class ResponseCache {
+  /** Total size of the cached bodies when none is configured, in bytes */
+  public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+  private final long memoryBudget;
+  private final long maxEntryBytes;
+  // Ordered from least to most recently used
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // Latest version seen of each dataset
+  private final Map<String, Long> versions = new HashMap<>();
+  private long cachedBytes = 0;
+
+  public ResponseCache() {
+    this(DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * @param memoryBudget total size of the cached bodies, in bytes; a single body may use up to a
+   *     quarter of it
+   */
+  public ResponseCache(long memoryBudget) {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+    }
+    this.memoryBudget = memoryBudget;
+    this.maxEntryBytes = memoryBudget / 4;
+  }
+
+  /**
+   * Returns the cached body of a response, or serializes and caches it if there is none.
+   *
+   * @param dataset name of the dataset, or null for the most recently loaded CSV
+   * @param version version of the dataset the response is built from
+   * @param shape description of the request, such as the endpoint and the page
+   * @param serializer builds the body if it is not cached
+   * @return UTF-8 bytes of the body
+   */
+  public byte[] get(String dataset, long version, String shape, Supplier<byte[]> serializer) {
+    byte[] body = this.getIfPresent(dataset, version, shape);
+    if (body != null) {
+      return body;
+    }
+
+    // Serializes outside of the lock, so that hits are never held up by a miss
+    body = serializer.get();
+    this.put(dataset, version, shape, body);
+    return body;
+  }
+
+  /**
+   * Returns the cached body of a response compressed with a content coding, compressing it and
+   * keeping the result alongside the body if it has not been compressed with that coding before.
+   *
+   * @param dataset name of the dataset, or null for the most recently loaded CSV
+   * @param version version of the dataset the response is built from
+   * @param shape description of the request, such as the endpoint and the page
+   * @param encoding content coding of the returned bytes
+   * @param serializer builds the body if it is not cached
+   * @return bytes of the body, compressed with the coding
+   */
+  byte[] get(
+      String dataset,
+      long version,
+      String shape,
+      ContentEncoding encoding,
+      Supplier<byte[]> serializer) {
+    byte[] body = this.get(dataset, version, shape, serializer);
+    if (encoding == ContentEncoding.IDENTITY) {
+      return body;
+    }
+    Key key = new Key(dataset, shape);
+    synchronized (this) {
+      Entry entry = this.entries.get(key);
+      if (entry != null && entry.body == body && entry.encoded.containsKey(encoding)) {
+        return entry.encoded.get(encoding);
+      }
+    }
+
+    // Compresses outside of the lock, then keeps the result if the body is still cached
+    byte[] encoded = encoding.encode(body);
+    synchronized (this) {
+      Entry entry = this.entries.get(key);
+      if (entry != null && entry.body == body && !entry.encoded.containsKey(encoding)) {
+        entry.encoded.put(encoding, encoded);
+        this.cachedBytes += encoded.length;
+        this.trim();
+      }
+    }
+    return encoded;
+  }
+
+  /**
+   * @param dataset name of the dataset, or null for the most recently loaded CSV
+   * @param version version of the dataset the response is built from
+   * @param shape description of the request
+   * @return UTF-8 bytes of the body, or null if it is not cached
+   */
+  public synchronized byte[] getIfPresent(String dataset, long version, String shape) {
+    if (!this.observe(dataset, version)) {
+      return null;
+    }
+    Entry entry = this.entries.get(new Key(dataset, shape));
+    return entry != null && entry.version == version ? entry.body : null;
+  }
+
+  /**
+   * @return total size of the cached bodies, in bytes
+   */
+  public synchronized long getCachedBytes() {
+    return this.cachedBytes;
+  }
+
+  /**
+   * @return number of cached bodies
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /** Caches a body unless it is too large or was built from a version that has been replaced. */
+  private synchronized void put(String dataset, long version, String shape, byte[] body) {
+    if (body.length > this.maxEntryBytes || !this.observe(dataset, version)) {
+      return;
+    }
+    Entry previous = this.entries.put(new Key(dataset, shape), new Entry(version, body));
+    if (previous != null) {
+      this.cachedBytes -= previous.bytes();
+    }
+    this.cachedBytes += body.length;
+    this.trim();
+  }
+
+  /** Drops the least recently used bodies until the budget is met. */
+  private void trim() {
+    Iterator<Entry> iterator = this.entries.values().iterator();
+    while (this.cachedBytes > this.memoryBudget && iterator.hasNext()) {
+      this.cachedBytes -= iterator.next().bytes();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Records a version of a dataset, dropping the bodies of its older versions when it is new.
+   *
+   * @return false if a newer version of the dataset has already been seen
+   */
+  private boolean observe(String dataset, long version) {
+    Long latest = this.versions.get(dataset);
+    if (latest != null && latest > version) {
+      return false;
+    }
+    if (latest == null || latest < version) {
+      this.versions.put(dataset, version);
+      Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Entry> entry = iterator.next();
+        if (entry.getKey().matches(dataset) && entry.getValue().version < version) {
+          this.cachedBytes -= entry.getValue().bytes();
+          iterator.remove();
+        }
+      }
+    }
+    return true;
+  }
+
+  /** A dataset together with the shape of a request. */
+  private static final class Key {
+    private final String dataset;
+    private final String shape;
+
+    private Key(String dataset, String shape) {
+      this.dataset = dataset;
+      this.shape = shape;
+    }
+
+    private boolean matches(String dataset) {
+      return this.dataset == null ? dataset == null : this.dataset.equals(dataset);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key key && key.matches(this.dataset) && key.shape.equals(this.shape);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (this.dataset == null ? 0 : this.dataset.hashCode()) + this.shape.hashCode();
+    }
+  }
+
+  /**
+   * A cached body, its compressed copies, and the version of the dataset it was serialized from.
+   */
+  private static final class Entry {
+    private final long version;
+    private final byte[] body;
+    private final Map<ContentEncoding, byte[]> encoded = new EnumMap<>(ContentEncoding.class);
+
+    private Entry(long version, byte[] body) {
+      this.version = version;
+      this.body = body;
+    }
+
+    /** Total size of the body and its compressed copies. */
+    private long bytes() {
+      long bytes = this.body.length;
+      for (byte[] copy : this.encoded.values()) {
+        bytes += copy.length;
+      }
+      return bytes;
+    }
+  }
+}
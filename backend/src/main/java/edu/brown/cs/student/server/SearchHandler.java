@@ -0,0 +1,171 @@
+package edu.brown.cs.student.server;
+
+import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.ColumnIndex;
+import edu.brown.cs.student.csv.ColumnarTable;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Handler class for searching the rows of a loaded CSV at the "searchcsv" API endpoint */
+public class SearchHandler implements Route {
+  private final CSVData data;
+  private final ResponseCache cache;
+
+  /**
+   * @param data
+   */
+  public SearchHandler(CSVData data) {
+    this(data, new ResponseCache());
+  }
+
+  /**
+   * @param data
+   * @param cache serialized responses, which may be shared with other handlers
+   */
+  public SearchHandler(CSVData data, ResponseCache cache) {
+    this.data = data;
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the rows whose value in "column" (a header name or index) equals "value", or with "min"
+   * and/or "max" instead, the rows whose value is within that range, including both ends. Ranges
+   * compare numbers by value if every value of the column is a number.
+   *
+   * <p>Searches use the indexes of the loaded table, which are built the first time a column is
+   * searched, so later searches of the column only touch the matching rows. The indexes belong to
+   * the table and are dropped along with it when another CSV is loaded.
+   *
+   * @param request
+   * @param response
+   * @return JSON string of HashMap based on response method call
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    // Reads the shared state once, so a concurrent load cannot change it partway through. A
+    // dataset may be named by its filepath; otherwise the most recently loaded CSV is used
+    String dataset = request.queryParams("dataset");
+    CSVSnapshot snapshot = this.data.getSnapshot(dataset);
+
+    // Checks if there is a CSV already loaded
+    if (snapshot == null || !snapshot.isLoaded()) {
+      return getFailureResponse("error_bad_request");
+    }
+
+    // Checks if the CSV was properly parsed
+    ColumnarTable table = snapshot.getTable();
+    if (table == null) {
+      return getFailureResponse("error_datasource");
+    }
+
+    // Checks that a column and either a value or a range were given
+    String value = request.queryParams("value");
+    String min = request.queryParams("min");
+    String max = request.queryParams("max");
+    int column = findColumn(table, request.queryParams("column"));
+    if (column < 0 || (value == null) == (min == null && max == null)) {
+      return getFailureResponse("error_bad_request");
+    }
+
+    int[] rows;
+    try {
+      ColumnIndex index = table.getIndex(column);
+      rows = value != null ? index.equalTo(value) : index.between(min, max);
+    } catch (IllegalArgumentException e) {
+      // A bound that is not a number, for a column of numbers
+      return getFailureResponse("error_bad_request");
+    }
+
+    String shape =
+        "searchcsv?column="
+            + column
+            + (value != null ? "&value=" + encode(value) : "")
+            + (min != null ? "&min=" + encode(min) : "")
+            + (max != null ? "&max=" + encode(max) : "");
+    return ConditionalResponses.send(
+        request,
+        response,
+        this.cache,
+        dataset,
+        snapshot,
+        shape,
+        false,
+        () -> successResponses(table, rows));
+  }
+
+  /**
+   * Finds a column named by its header or, failing that, by its index.
+   *
+   * @return index of the column, or -1 if there is no such column
+   */
+  private static int findColumn(ColumnarTable table, String name) {
+    if (name == null) {
+      return -1;
+    }
+    int index = table.getColumnIndex(name.trim());
+    if (index >= 0) {
+      return index;
+    }
+    try {
+      index = Integer.parseInt(name.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+    return index < table.getColumnCount() ? index : -1;
+  }
+
+  /** Encodes a parameter for the cache key, so that no value can be mistaken for another. */
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param table the loaded CSV
+   * @param rows indices of the matching rows
+   * @return serialized JSON of Map, in UTF-8
+   */
+  public byte[] getSuccessResponse(ColumnarTable table, int[] rows) {
+    // Serializes responses into JSON format
+    return JsonResponses.toBytes(successResponses(table, rows));
+  }
+
+  /** Builds the map of a successful response, in which the matching rows are read lazily. */
+  private static Map<String, Object> successResponses(ColumnarTable table, int[] rows) {
+    List<List<String>> matches =
+        new AbstractList<>() {
+          @Override
+          public List<String> get(int index) {
+            return table.getRow(rows[index]);
+          }
+
+          @Override
+          public int size() {
+            return rows.length;
+          }
+        };
+
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("header", table.getHeader());
+    responses.put("data", matches);
+    responses.put("matches", rows.length);
+    return responses;
+  }
+
+  public Object getFailureResponse(String responseType) {
+    // Creates map with failure response
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", responseType);
+
+    // Serializes responses into JSON format
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
+}
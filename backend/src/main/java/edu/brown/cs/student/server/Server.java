@@ -1,8 +1,13 @@
 package edu.brown.cs.student.server;
 
-import static spark.Spark.after;
+import static spark.Spark.before;
 
 import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.DatasetRegistry;
+import edu.brown.cs.student.csv.DatasetWatcher;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import spark.Spark;
 
 /**
@@ -15,20 +20,99 @@ public class Server {
   public static void main(String[] args) {
     Spark.port(3232);
 
-    after(
+    // Headers are set before the handlers run, since a streamed response cannot take headers once
+    // it has started
+    before(
         (request, response) -> {
           response.header("Access-Control-Allow-Origin", "*");
           response.header("Access-Control-Allow-Methods", "*");
         });
 
-    // Creates a shared state for load and get processes
-    CSVData data = new CSVData();
+    // Creates a shared state for load and get processes, keeping loaded files resident within a
+    // memory budget that may be set in bytes with -Dcsv.memoryBudget. With -Dcsv.snapshots=true,
+    // a binary snapshot is written next to each parsed file, so it loads without parsing next time
+    long memoryBudget = Long.getLong("csv.memoryBudget", DatasetRegistry.DEFAULT_MEMORY_BUDGET);
+    CSVData data =
+        new CSVData(new DatasetRegistry(memoryBudget, Boolean.getBoolean("csv.snapshots")));
 
-    // Setting up the handlers for the GET loadCSV, getCSV, stats, and weather endpoints
-    Spark.get("loadcsv", new LoadHandler(data));
-    Spark.get("getcsv", new GetHandler(data));
-    Spark.get("stats", new StatsHandler(data));
-    Spark.get("weather", new WeatherHandler());
+    // Background loads run on a bounded pool of loader threads, whose size may be set with
+    // -Dcsv.loadThreads
+    LoadJobs jobs =
+        new LoadJobs(
+            data,
+            Integer.getInteger("csv.loadThreads", LoadJobs.DEFAULT_THREADS),
+            LoadJobs.DEFAULT_QUEUE_SIZE);
+
+    // Files loaded with watch=true are reloaded when they change, once they have been quiet for a
+    // delay that may be set in milliseconds with -Dcsv.watchQuietMillis
+    DatasetWatcher watcher =
+        new DatasetWatcher(
+            data, Long.getLong("csv.watchQuietMillis", DatasetWatcher.DEFAULT_QUIET_MILLIS));
+
+    // Setting up the handlers for the GET loadCSV, loadStatus, getCSV, searchCSV, stats, and
+    // weather endpoints
+    Spark.get("loadcsv", new LoadHandler(data, jobs, watcher));
+    Spark.get("loadstatus", new LoadStatusHandler(jobs));
+    ResponseCache cache = new ResponseCache();
+    Spark.get("getcsv", new GetHandler(data, cache));
+    Spark.get("searchcsv", new SearchHandler(data, cache));
+    Spark.get("stats", new StatsHandler(data, cache));
+
+    // Weather lookups share one HttpClient, whose base URL, timeouts in milliseconds and threads
+    // may be set with -Dweather.baseUrl, -Dweather.connectTimeoutMillis,
+    // -Dweather.requestTimeoutMillis and -Dweather.threads
+    HttpClient weatherClient =
+        WeatherHandler.newClient(
+            Duration.ofMillis(
+                Long.getLong(
+                    "weather.connectTimeoutMillis",
+                    WeatherHandler.DEFAULT_CONNECT_TIMEOUT.toMillis())),
+            Integer.getInteger("weather.threads", WeatherHandler.DEFAULT_CLIENT_THREADS));
+    URI weatherBase =
+        URI.create(System.getProperty("weather.baseUrl", WeatherHandler.NWS_API.toString()));
+    Duration weatherTimeout =
+        Duration.ofMillis(
+            Long.getLong(
+                "weather.requestTimeoutMillis", WeatherHandler.DEFAULT_REQUEST_TIMEOUT.toMillis()));
+    // The forecast URL of each point and the temperature of each forecast are cached, for times
+    // that may be set in seconds with -Dweather.pointsTtlSeconds and -Dweather.forecastTtlSeconds
+    Duration pointsTtl =
+        Duration.ofSeconds(
+            Long.getLong(
+                "weather.pointsTtlSeconds", WeatherHandler.DEFAULT_POINTS_TTL.toSeconds()));
+    TtlCache<String, String> forecastURLs =
+        new TtlCache<>(pointsTtl, WeatherHandler.DEFAULT_POINTS_ENTRIES);
+    TtlCache<String, Integer> temperatures =
+        new TtlCache<>(
+            Duration.ofSeconds(
+                Long.getLong(
+                    "weather.forecastTtlSeconds", WeatherHandler.DEFAULT_FORECAST_TTL.toSeconds())),
+            WeatherHandler.DEFAULT_FORECAST_ENTRIES);
+    // Points within -Dweather.cellRadiusKm of the centroid of a cached forecast cell are taken to
+    // lie in it, without asking for the point
+    ForecastCells cells =
+        new ForecastCells(
+            Double.parseDouble(
+                System.getProperty(
+                    "weather.cellRadiusKm", String.valueOf(ForecastCells.DEFAULT_RADIUS_KM))),
+            pointsTtl,
+            WeatherHandler.DEFAULT_POINTS_ENTRIES);
+    WeatherHandler weather =
+        new WeatherHandler(
+            weatherClient, weatherBase, weatherTimeout, forecastURLs, temperatures, cells);
+    Spark.get("weather", weather);
+    // Batches share the lookups of the weather endpoint, with at most -Dweather.batchConcurrency
+    // of their lookups under way at once, and wait at most -Dweather.batchDeadlineMillis for them
+    Spark.get(
+        "weather/batch",
+        new WeatherBatchHandler(
+            weather,
+            Integer.getInteger(
+                "weather.batchConcurrency", WeatherBatchHandler.DEFAULT_MAX_CONCURRENT),
+            Duration.ofMillis(
+                Long.getLong(
+                    "weather.batchDeadlineMillis",
+                    WeatherBatchHandler.DEFAULT_DEADLINE.toMillis()))));
     Spark.init();
     Spark.awaitInitialization();
     System.out.println("Server started.");
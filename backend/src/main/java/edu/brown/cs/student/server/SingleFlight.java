@@ -0,0 +1,65 @@
+package edu.brown.cs.student.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one, so that a burst of identical lookups makes
+ * a single request upstream. The first caller for a key starts the call, and every caller that
+ * arrives before its future completes is handed the same future instead of starting another.
+ * Nothing is kept once the call finishes, so a later caller starts it again; keeping answers is
+ * left to a cache in front of this.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the results
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Starts a call unless one for the same key is already running, in which case its future is
+   * returned. Starting the call should not block, since it runs on the caller's thread.
+   *
+   * @param key key of the call
+   * @param call starts the call, whose future fails every caller sharing it if it fails
+   * @return future of the result of the call for the key
+   */
+  public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> shared = new CompletableFuture<>();
+    CompletableFuture<V> running = this.inFlight.putIfAbsent(key, shared);
+    if (running != null) {
+      return running;
+    }
+
+    CompletableFuture<V> started;
+    try {
+      started = call.get();
+    } catch (Throwable t) {
+      // Every caller sharing the call must be released, whatever it threw
+      started = CompletableFuture.failedFuture(t);
+    }
+    started.whenComplete(
+        (value, failure) -> {
+          // Removed first, so a caller handed the finished future sees its result
+          this.inFlight.remove(key, shared);
+          if (failure == null) {
+            shared.complete(value);
+          } else if (failure instanceof CompletionException && failure.getCause() != null) {
+            shared.completeExceptionally(failure.getCause());
+          } else {
+            shared.completeExceptionally(failure);
+          }
+        });
+    return shared;
+  }
+
+  /**
+   * @return number of calls running
+   */
+  public int size() {
+    return this.inFlight.size();
+  }
+}
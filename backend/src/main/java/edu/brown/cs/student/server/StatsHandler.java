@@ -1,8 +1,14 @@
 package edu.brown.cs.student.server;
 
-import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.ColumnStats;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.HyperLogLog;
+import edu.brown.cs.student.csv.KllSketch;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import spark.Request;
@@ -11,41 +17,148 @@ import spark.Route;
 
 public class StatsHandler implements Route {
   private final CSVData data;
+  private final ResponseCache cache;
 
   public StatsHandler(CSVData data) {
+    this(data, new ResponseCache());
+  }
+
+  /**
+   * @param data
+   * @param cache serialized responses, which may be shared with other handlers
+   */
+  public StatsHandler(CSVData data, ResponseCache cache) {
     this.data = data;
+    this.cache = cache;
   }
 
   @Override
   public Object handle(Request request, Response response) {
+    // Reads the shared state once, so a concurrent load cannot change it partway through. A
+    // dataset may be named by its filepath; otherwise the most recently loaded CSV is used
+    String dataset = request.queryParams("dataset");
+    CSVSnapshot snapshot = this.data.getSnapshot(dataset);
+
     // Checks if there is a CSV already loaded
-    if (this.data.getIsLoaded() != true) {
+    if (snapshot == null || !snapshot.isLoaded()) {
       return getFailureResponse("error_bad_request");
     }
 
     // Checks if the CSV was properly parsed
-    List<List<String>> fileData = this.data.getData();
-    if (fileData == null) {
+    ColumnarTable table = snapshot.getTable();
+    if (table == null) {
       return getFailureResponse("error_datasource");
     }
 
-    // CSV data
-    int rows = fileData.size();
-    int columns = fileData.get(0).size();
+    // CSV data, read from the table without touching any rows
+    int rows = table.getRowCount();
+    int columns = rows == 0 ? 0 : table.getRowWidth(0);
+
+    // Approximate statistics come from the sketches made while loading, so they cost no scan
+    if ("true".equalsIgnoreCase(request.queryParams("approx"))) {
+      return ConditionalResponses.send(
+          request,
+          response,
+          this.cache,
+          dataset,
+          snapshot,
+          "stats?approx=true",
+          false,
+          () -> approximateResponses(rows, columns, table));
+    }
+
+    return ConditionalResponses.send(
+        request,
+        response,
+        this.cache,
+        dataset,
+        snapshot,
+        "stats",
+        false,
+        () -> successResponses(rows, columns, table.getColumnStats()));
+  }
 
-    return getSuccessResponse(rows, columns);
+  /**
+   * @param rows number of rows in the CSV
+   * @param columns number of columns in the CSV
+   * @param stats statistics of each column
+   * @return serialized successful response
+   */
+  public byte[] getSuccessResponse(int rows, int columns, List<ColumnStats> stats) {
+    // Serializes responses into JSON format
+    return JsonResponses.toBytes(successResponses(rows, columns, stats));
   }
 
-  public Object getSuccessResponse(int rows, int columns) {
-    // Creates map with failure response
+  /**
+   * Builds the map of a successful response, with the statistics of each column under
+   * "column_stats". Numeric columns also report "min", "max", "mean" and "stddev".
+   */
+  private static Map<String, Object> successResponses(
+      int rows, int columns, List<ColumnStats> stats) {
+    List<Map<String, Object>> columnStats = new ArrayList<>();
+    for (ColumnStats column : stats) {
+      Map<String, Object> values = new LinkedHashMap<>();
+      values.put("name", column.getName());
+      values.put("type", column.getType());
+      values.put("count", column.getCount());
+      values.put("empty", column.getEmpty());
+      values.put("missing", column.getMissing());
+      values.put("distinct", column.getDistinct());
+      if (column.isNumeric()) {
+        values.put("min", column.getMin());
+        values.put("max", column.getMax());
+        values.put("mean", column.getMean());
+        values.put("stddev", column.getStddev());
+      }
+      columnStats.add(values);
+    }
+
     Map<String, Object> responses = new HashMap<>();
     responses.put("result", "success");
     responses.put("rows", rows);
     responses.put("columns", columns);
+    responses.put("column_stats", columnStats);
+    return responses;
+  }
 
-    // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+  /**
+   * Builds the map of a successful approximate response. Each column reports an estimated
+   * "distinct" count, and columns of numbers also report their "count" and estimated quantiles from
+   * "min" through "max". The bounds on the error of the estimates are under "error_bounds".
+   */
+  private static Map<String, Object> approximateResponses(
+      int rows, int columns, ColumnarTable table) {
+    List<Map<String, Object>> columnStats = new ArrayList<>();
+    for (int i = 0; i < table.getColumnCount(); i++) {
+      Map<String, Object> values = new LinkedHashMap<>();
+      values.put("name", i < table.getHeader().size() ? table.getHeader().get(i) : "");
+      KllSketch quantiles = table.getQuantileSketch(i);
+      boolean numeric = quantiles != null && quantiles.getCount() > 0;
+      values.put("type", numeric ? "number" : "string");
+      values.put("distinct", table.getDistinctSketch(i).estimate());
+      if (numeric) {
+        values.put("count", quantiles.getCount());
+        values.put("min", quantiles.getMin());
+        values.put("p25", quantiles.quantile(0.25));
+        values.put("median", quantiles.quantile(0.5));
+        values.put("p75", quantiles.quantile(0.75));
+        values.put("p99", quantiles.quantile(0.99));
+        values.put("max", quantiles.getMax());
+      }
+      columnStats.add(values);
+    }
+
+    Map<String, Object> errorBounds = new LinkedHashMap<>();
+    errorBounds.put("distinct_relative_error", HyperLogLog.RELATIVE_ERROR);
+    errorBounds.put("quantile_rank_error", KllSketch.RANK_ERROR);
+
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("rows", rows);
+    responses.put("columns", columns);
+    responses.put("column_stats", columnStats);
+    responses.put("error_bounds", errorBounds);
+    return responses;
   }
 
   public Object getFailureResponse(String responseType) {
@@ -54,7 +167,6 @@ public class StatsHandler implements Route {
     responses.put("result", responseType);
 
     // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
   }
 }
@@ -0,0 +1,61 @@
+package edu.brown.cs.student.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import okio.BufferedSink;
+import okio.Okio;
+import spark.Response;
+
+/**
+ * Writes a JSON response straight to the client's connection while it is being serialized, rather
+ * than building the whole body as a String first. Moshi walks the lists in the map one element at a
+ * time, so when the rows are a lazy view of a ColumnarTable, only the row being written is ever in
+ * memory. The body has no Content-Length, so Jetty sends it with chunked transfer encoding as soon
+ * as its output buffer fills.
+ */
+final class StreamingResponse {
+  private StreamingResponse() {}
+
+  /**
+   * Streams a map to the client as JSON. Headers must be set before this is called, since the
+   * response is committed once the first bytes are sent.
+   *
+   * @param response response to the request
+   * @param responses values of the response
+   * @return empty body for Spark to append to the streamed response
+   */
+  static Object write(Response response, Map<String, Object> responses) {
+    return write(response, responses, ContentEncoding.IDENTITY);
+  }
+
+  /**
+   * Streams a map to the client as JSON, compressing it as it is written.
+   *
+   * @param response response to the request
+   * @param responses values of the response
+   * @param encoding content coding to compress the body with
+   * @return empty body for Spark, which does not write to a response that has already been sent
+   */
+  static Object write(Response response, Map<String, Object> responses, ContentEncoding encoding) {
+    response.type("application/json");
+    if (encoding != ContentEncoding.IDENTITY) {
+      response.header("Content-Encoding", encoding.getToken());
+    }
+    try {
+      OutputStream out = encoding.wrap(response.raw().getOutputStream());
+      BufferedSink sink = Okio.buffer(Okio.sink(out));
+      JsonResponses.MAP_ADAPTER.toJson(sink, responses);
+      if (encoding == ContentEncoding.IDENTITY) {
+        sink.flush();
+      } else {
+        // Finishes the compressed body
+        sink.close();
+      }
+    } catch (IOException e) {
+      // The client most likely disconnected partway through the response
+      System.err.println("ERROR: Could not stream response: " + e.getMessage());
+    }
+    return "";
+  }
+}
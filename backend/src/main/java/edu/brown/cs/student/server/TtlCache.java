@@ -0,0 +1,111 @@
+package edu.brown.cs.student.server;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded map whose entries expire a fixed time after they are put, for keeping answers from an
+ * upstream service that change slowly or not at all. An expired entry is dropped when it is next
+ * looked up, and once the cache is full, expired entries and then the least recently used ones are
+ * dropped to make room.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+public class TtlCache<K, V> {
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final LongSupplier clock;
+  // Ordered from least to most recently used
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * @param ttl time an entry is kept after it is put
+   * @param maxEntries greatest number of entries kept
+   */
+  public TtlCache(Duration ttl, int maxEntries) {
+    this(ttl, maxEntries, System::nanoTime);
+  }
+
+  /**
+   * @param ttl time an entry is kept after it is put
+   * @param maxEntries greatest number of entries kept
+   * @param clock current time in nanoseconds, which only needs to be consistent with itself
+   */
+  TtlCache(Duration ttl, int maxEntries, LongSupplier clock) {
+    if (ttl.isNegative() || maxEntries < 0) {
+      throw new IllegalArgumentException("Invalid cache bounds: " + ttl + ", " + maxEntries);
+    }
+    this.ttlNanos = ttl.toNanos();
+    this.maxEntries = maxEntries;
+    this.clock = clock;
+  }
+
+  /**
+   * @param key key of the entry
+   * @return the cached value, or null if there is none or it has expired
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = this.entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.isExpired(this.clock.getAsLong())) {
+      this.entries.remove(key);
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * Caches a value, replacing any value cached for the same key, until the time to live has passed.
+   *
+   * @param key key of the entry
+   * @param value value to cache
+   */
+  public synchronized void put(K key, V value) {
+    long now = this.clock.getAsLong();
+    this.entries.put(key, new Entry<>(value, now + this.ttlNanos));
+    if (this.entries.size() <= this.maxEntries) {
+      return;
+    }
+
+    // Drops expired entries first, then the least recently used live ones
+    this.entries.values().removeIf(entry -> entry.isExpired(now));
+    Iterator<Map.Entry<K, Entry<V>>> iterator = this.entries.entrySet().iterator();
+    while (this.entries.size() > this.maxEntries && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * @return number of entries held, including expired ones not yet dropped
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /** Drops every entry. */
+  public synchronized void clear() {
+    this.entries.clear();
+  }
+
+  /** A cached value and the time at which it expires. */
+  private static final class Entry<V> {
+    private final V value;
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired(long now) {
+      return now - this.expiresAt >= 0;
+    }
+  }
+}
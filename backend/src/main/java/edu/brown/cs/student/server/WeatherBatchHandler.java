@@ -0,0 +1,249 @@
+package edu.brown.cs.student.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Handler class for the "weather/batch" API endpoint, which looks up the temperature at many points
+ * in one request. The points are passed as "points=lat,lon;lat,lon;...", and the response holds one
+ * result per point, in the order they were passed, each shaped like a response from the "weather"
+ * endpoint. A request with no points, or more than MAX_POINTS, fails as a whole.
+ *
+ * <p>Points that truncate to the same coordinates are looked up once. Lookups go through the
+ * WeatherHandler, so points already seen are answered at once from its caches, and points in the
+ * same forecast grid share one forecast request. The lookups that do reach the NWS API are started
+ * together, but at most a fixed number are under way at once across every batch, so a large batch
+ * cannot flood the API or the client's connections.
+ *
+ * <p>A batch that is not answered at once takes a place among the WeatherHandler's waiting server
+ * threads, and waits at most a fixed deadline for its lookups. Points not yet looked up when the
+ * deadline passes, or when no place is free, are reported as error_datasource, and their lookups
+ * that have not started are dropped.
+ */
+public class WeatherBatchHandler implements Route {
+  /** Number of lookups under way at once when none is configured */
+  public static final int DEFAULT_MAX_CONCURRENT = 8;
+
+  /** Greatest number of points accepted in one request */
+  public static final int MAX_POINTS = 500;
+
+  /** Longest a batch waits for its lookups when no deadline is configured */
+  public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(20);
+
+  private final WeatherHandler weather;
+  private final Semaphore permits;
+  private final Duration deadline;
+  // Lookups queued for a permit, in the order they were submitted
+  private final Queue<Runnable> queued = new ConcurrentLinkedQueue<>();
+
+  /**
+   * @param weather handler whose client, caches and coalescing every lookup goes through
+   * @param maxConcurrent greatest number of lookups under way at once
+   */
+  public WeatherBatchHandler(WeatherHandler weather, int maxConcurrent) {
+    this(weather, maxConcurrent, DEFAULT_DEADLINE);
+  }
+
+  /**
+   * @param weather handler whose client, caches and coalescing every lookup goes through
+   * @param maxConcurrent greatest number of lookups under way at once
+   * @param deadline longest a batch waits for its lookups
+   */
+  public WeatherBatchHandler(WeatherHandler weather, int maxConcurrent, Duration deadline) {
+    if (maxConcurrent < 1 || deadline.isNegative()) {
+      throw new IllegalArgumentException(
+          "Invalid batch bounds: " + maxConcurrent + ", " + deadline);
+    }
+    this.weather = weather;
+    this.permits = new Semaphore(maxConcurrent);
+    this.deadline = deadline;
+  }
+
+  /**
+   * Looks up every point passed in the request and waits for all of them. A point that cannot be
+   * read as a latitude and longitude gets an error_bad_request result of its own, without failing
+   * the rest of the batch; a request with no points or too many gets one for the whole batch.
+   *
+   * @param request
+   * @param response
+   * @return serialized JSON string of Map
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String points = request.queryParams("points");
+    if (points == null || points.isBlank()) {
+      return batchFailureResponse("error_bad_request", points);
+    }
+    String[] pairs = points.split(";");
+    if (pairs.length > MAX_POINTS) {
+      return batchFailureResponse("error_bad_request", points);
+    }
+
+    // Starts one lookup for each distinct truncated point
+    Map<String, CompletableFuture<Integer>> lookups = new HashMap<>();
+    List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>();
+    for (String pair : pairs) {
+      String[] coordinates = pair.split(",", -1);
+      if (coordinates.length != 2) {
+        results.add(
+            CompletableFuture.completedFuture(itemFailure("error_bad_request", pair, null)));
+        continue;
+      }
+      String lat = coordinates[0].trim();
+      String lon = coordinates[1].trim();
+      String latRounded;
+      String lonRounded;
+      try {
+        latRounded = this.weather.truncate(lat);
+        lonRounded = this.weather.truncate(lon);
+      } catch (NumberFormatException e) {
+        results.add(CompletableFuture.completedFuture(itemFailure("error_bad_request", lat, lon)));
+        continue;
+      }
+
+      // Cached points are answered at once rather than queued behind lookups under way
+      CompletableFuture<Integer> lookup =
+          lookups.computeIfAbsent(
+              latRounded + "," + lonRounded,
+              point -> {
+                Integer cached = this.weather.getCachedTemperature(latRounded, lonRounded);
+                return cached != null
+                    ? CompletableFuture.completedFuture(cached)
+                    : this.submit(() -> this.weather.getTemperatureAsync(latRounded, lonRounded));
+              });
+      results.add(
+          lookup.handle(
+              (temperature, failure) ->
+                  failure == null
+                      ? itemSuccess(temperature, lat, lon)
+                      : itemFailure(WeatherHandler.failureType(failure), lat, lon)));
+    }
+
+    // Waits for the lookups, unless they are all answered already, within the deadline and only if
+    // a place among the waiting threads is free
+    CompletableFuture<Void> all =
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0]));
+    if (!all.isDone()) {
+      if (this.weather.startWaiting()) {
+        try {
+          all.orTimeout(this.deadline.toMillis(), TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+          // The deadline passed; the points still pending are failed below
+        } finally {
+          this.weather.stopWaiting();
+        }
+      }
+      // Fails the points still pending, which also drops their lookups that have not started
+      TimeoutException timeout = new TimeoutException("Weather batch was not answered in time");
+      for (CompletableFuture<Integer> lookup : lookups.values()) {
+        lookup.completeExceptionally(timeout);
+      }
+    }
+
+    // Every result is complete now, and none fails the batch
+    List<Map<String, Object>> items = new ArrayList<>();
+    for (CompletableFuture<Map<String, Object>> result : results) {
+      items.add(result.join());
+    }
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", "success");
+    responses.put("results", items);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
+
+  /**
+   * Starts a lookup once fewer than the greatest number are under way.
+   *
+   * @param lookup starts the lookup
+   * @return future of the temperature the lookup finds
+   */
+  private CompletableFuture<Integer> submit(Supplier<CompletableFuture<Integer>> lookup) {
+    CompletableFuture<Integer> result = new CompletableFuture<>();
+    this.queued.add(
+        () -> {
+          if (result.isDone()) {
+            // Its batch gave up waiting before it started, so its permit goes to the next one
+            this.permits.release();
+            return;
+          }
+          CompletableFuture<Integer> started;
+          try {
+            started = lookup.get();
+          } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+          }
+          started.whenComplete(
+              (temperature, failure) -> {
+                this.permits.release();
+                this.startQueued();
+                if (failure == null) {
+                  result.complete(temperature);
+                } else {
+                  result.completeExceptionally(failure);
+                }
+              });
+        });
+    this.startQueued();
+    return result;
+  }
+
+  /** Starts queued lookups, in order, while permits are free. */
+  private void startQueued() {
+    while (!this.queued.isEmpty() && this.permits.tryAcquire()) {
+      Runnable next = this.queued.poll();
+      if (next == null) {
+        // Another thread started the last one first
+        this.permits.release();
+      } else {
+        next.run();
+      }
+    }
+  }
+
+  /** Builds the result of a point whose temperature was found. */
+  private static Map<String, Object> itemSuccess(Integer temperature, String lat, String lon) {
+    Map<String, Object> item = new HashMap<>();
+    item.put("result", "success");
+    item.put("lat", lat);
+    item.put("lon", lon);
+    item.put("temperature", temperature);
+    return item;
+  }
+
+  /** Builds the result of a point that could not be looked up. */
+  private static Map<String, Object> itemFailure(String responseType, String lat, String lon) {
+    Map<String, Object> item = new HashMap<>();
+    item.put("result", responseType);
+    item.put("lat", lat);
+    item.put("lon", lon);
+    return item;
+  }
+
+  /**
+   * This method executes when the batch as a whole cannot be looked up.
+   *
+   * @param responseType Descriptive error type
+   * @param points points passed in the request, or null
+   * @return serialized JSON string of Map
+   */
+  private static Object batchFailureResponse(String responseType, String points) {
+    Map<String, Object> responses = new HashMap<>();
+    responses.put("result", responseType);
+    responses.put("points", points);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
+}
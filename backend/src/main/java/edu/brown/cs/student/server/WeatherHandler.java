@@ -1,5 +1,6 @@
 package edu.brown.cs.student.server;
 
+import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.weather.Forecast;
 import edu.brown.cs.student.weather.Weather;
@@ -10,21 +11,203 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
 import java.text.DecimalFormat;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
-/** Handler class for retrieving temperature given latitude and longitude "weather" API endpoint */
+/**
+ * Handler class for retrieving temperature given latitude and longitude "weather" API endpoint
+ *
+ * <p>Every request is sent through one long-lived HttpClient rather than a new client per request,
+ * so lookups reuse its pooled connections instead of each paying for a new connection and TLS
+ * handshake. The client prefers HTTP/2, which also lets concurrent lookups share one connection to
+ * the NWS API. Idle connections are kept alive for the client's keep-alive timeout, which may be
+ * set in seconds with -Djdk.httpclient.keepalive.timeout.
+ *
+ * <p>A lookup takes two upstream requests: the NWS points endpoint maps the coordinates to the URL
+ * of their forecast grid, and the forecast at that URL gives the temperature. Each answer is kept
+ * in its own TtlCache. The grid of a point essentially never changes, so that mapping is kept for a
+ * long time, keyed by the truncated coordinates; forecasts are updated through the day, so they are
+ * kept only briefly, keyed by the grid URL, which nearby points share. A lookup then needs at most
+ * one upstream request once its point has been seen, and none while its forecast is cached.
+ *
+ * <p>Points that have not been seen are first looked for in ForecastCells, a spatial cache of the
+ * grid cells whose forecasts have been fetched. A point near enough to the centroid of a fresh cell
+ * is taken to lie in it, so a cluster of nearby lookups asks the points endpoint once, and asks
+ * nothing at all while the forecast of its cell is cached.
+ *
+ * <p>Lookups that miss a cache at the same moment, as when many clients ask for the same place at
+ * once, are coalesced by a SingleFlight for each request, so only one of them asks the NWS API and
+ * the rest wait for its answer.
+ *
+ * <p>The requests are sent with sendAsync and chained as futures, points to forecast to
+ * temperature, so no thread is held while the NWS API answers. A Spark route must still return its
+ * response, so the server thread handling a lookup that is not answered at once waits for the chain
+ * to finish. At most MAX_WAITING_LOOKUPS threads wait at once, across this handler and the batches
+ * that share it, and lookups beyond that fail at once rather than holding more of the server's
+ * threads while the NWS API is slow. Lookups answered from the caches, or that finish before the
+ * thread would wait, never need a place. Every response, body included, must arrive within the
+ * request timeout, so an upstream that sends its headers and then trickles its body gives a place
+ * back once its time runs out.
+ */
 public class WeatherHandler implements Route {
-  private String lat;
-  private String lon;
+  /** Base URL of the National Weather Service API */
+  public static final URI NWS_API = URI.create("https://api.weather.gov/");
 
+  /** Time allowed to open a connection when none is configured */
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+  /** Time allowed for the response to each request when none is configured */
+  public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+  /** Number of threads the client handles responses on when none is configured */
+  public static final int DEFAULT_CLIENT_THREADS = 4;
+
+  /** Time the forecast URL of a point is kept when none is configured */
+  public static final Duration DEFAULT_POINTS_TTL = Duration.ofHours(24);
+
+  /** Time the temperature of a forecast is kept when none is configured */
+  public static final Duration DEFAULT_FORECAST_TTL = Duration.ofMinutes(5);
+
+  /** Number of points whose forecast URL is kept */
+  public static final int DEFAULT_POINTS_ENTRIES = 10_000;
+
+  /** Number of forecasts whose temperature is kept */
+  public static final int DEFAULT_FORECAST_ENTRIES = 1_000;
+
+  /** Greatest number of server threads that wait for lookups at once */
+  public static final int MAX_WAITING_LOOKUPS = 32;
+
+  // Requests a lookup sends one after another: the points, then the forecast
+  private static final int LOOKUP_REQUESTS = 2;
+
+  // Adapters are thread-safe, so they are built once rather than for every request
+  private static final JsonAdapter<Weather> WEATHER_ADAPTER =
+      new Moshi.Builder().build().adapter(Weather.class);
+  private static final JsonAdapter<Forecast> FORECAST_ADAPTER =
+      new Moshi.Builder().build().adapter(Forecast.class);
+
+  private final HttpClient client;
+  private final URI baseUri;
+  private final Duration requestTimeout;
+  // Forecast URL of each point, keyed by "lat,lon" truncated
+  private final TtlCache<String, String> forecastURLs;
+  // Current temperature of each forecast, keyed by its URL
+  private final TtlCache<String, Integer> temperatures;
+  // Grid cells whose forecasts have been fetched, placed by their centroids
+  private final ForecastCells cells;
+  // Requests under way for points and forecasts, shared by concurrent lookups of the same one
+  private final SingleFlight<String, String> pointRequests = new SingleFlight<>();
+  private final SingleFlight<String, Integer> forecastRequests = new SingleFlight<>();
+  // Server threads allowed to wait for a lookup
+  private final Semaphore waitingLookups = new Semaphore(MAX_WAITING_LOOKUPS);
+
+  /** Sends requests to the NWS API through a client shared by every handler created this way. */
   public WeatherHandler() {
-    this.lat = null;
-    this.lon = null;
+    this(SharedClient.CLIENT, NWS_API, DEFAULT_REQUEST_TIMEOUT);
+  }
+
+  /**
+   * @param client client that every request is sent through
+   * @param baseUri base URL of the NWS API, or of a server standing in for it
+   * @param requestTimeout time allowed for the response to each request
+   */
+  public WeatherHandler(HttpClient client, URI baseUri, Duration requestTimeout) {
+    this(
+        client,
+        baseUri,
+        requestTimeout,
+        new TtlCache<>(DEFAULT_POINTS_TTL, DEFAULT_POINTS_ENTRIES),
+        new TtlCache<>(DEFAULT_FORECAST_TTL, DEFAULT_FORECAST_ENTRIES));
+  }
+
+  /**
+   * @param client client that every request is sent through
+   * @param baseUri base URL of the NWS API, or of a server standing in for it
+   * @param requestTimeout time allowed for the response to each request
+   * @param forecastURLs cache of the forecast URL of each point
+   * @param temperatures cache of the current temperature of each forecast URL
+   */
+  public WeatherHandler(
+      HttpClient client,
+      URI baseUri,
+      Duration requestTimeout,
+      TtlCache<String, String> forecastURLs,
+      TtlCache<String, Integer> temperatures) {
+    this(
+        client,
+        baseUri,
+        requestTimeout,
+        forecastURLs,
+        temperatures,
+        new ForecastCells(
+            ForecastCells.DEFAULT_RADIUS_KM, DEFAULT_POINTS_TTL, DEFAULT_POINTS_ENTRIES));
+  }
+
+  /**
+   * @param client client that every request is sent through
+   * @param baseUri base URL of the NWS API, or of a server standing in for it
+   * @param requestTimeout time allowed for the response to each request
+   * @param forecastURLs cache of the forecast URL of each point
+   * @param temperatures cache of the current temperature of each forecast URL
+   * @param cells spatial cache of the grid cells whose forecasts have been fetched
+   */
+  public WeatherHandler(
+      HttpClient client,
+      URI baseUri,
+      Duration requestTimeout,
+      TtlCache<String, String> forecastURLs,
+      TtlCache<String, Integer> temperatures,
+      ForecastCells cells) {
+    this.client = client;
+    // Paths are resolved against the base, so it must end in a slash to keep its own path
+    String base = baseUri.toString();
+    this.baseUri = base.endsWith("/") ? baseUri : URI.create(base + "/");
+    this.requestTimeout = requestTimeout;
+    this.forecastURLs = forecastURLs;
+    this.temperatures = temperatures;
+    this.cells = cells;
+  }
+
+  /**
+   * Builds a client for weather requests, which prefers HTTP/2, keeps its connections alive between
+   * requests, and handles responses on its own daemon threads rather than on the common pool.
+   *
+   * @param connectTimeout time allowed to open a connection
+   * @param threads number of threads responses are handled on
+   * @return the client
+   */
+  public static HttpClient newClient(Duration connectTimeout, int threads) {
+    AtomicInteger threadIds = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "weather-http-" + threadIds.incrementAndGet());
+              // Idle client threads should not keep the server from shutting down
+              thread.setDaemon(true);
+              return thread;
+            });
+    return HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(connectTimeout)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(executor)
+        .build();
   }
 
   /**
@@ -32,7 +215,10 @@ public class WeatherHandler implements Route {
    * server. If the user does not pass a latitude and longitude in the request,
    * weatherFailureResponse is called with a bad_request description. The method attempts to make a
    * request to the NWS API and retrieve a temperature given the user latitude and longitude. If
-   * invalid coordinates are passed, weatherFailureResponse is called
+   * invalid coordinates are passed, weatherFailureResponse is called. The coordinates are kept
+   * local to the request, since requests are handled on many threads at once. If the lookup is not
+   * answered at once and too many lookups are already waiting, the datasource is reported as
+   * unavailable rather than waiting; the lookup still finishes in the background and is cached.
    *
    * @param request
    * @param response
@@ -41,32 +227,59 @@ public class WeatherHandler implements Route {
   @Override
   public Object handle(Request request, Response response) {
     // Retrieves latitude and longitude from requests
-    this.lat = request.queryParams("lat");
-    this.lon = request.queryParams("lon");
+    String lat = request.queryParams("lat");
+    String lon = request.queryParams("lon");
 
     // Determines if the user provided a latitude and longitude
-    if (this.lat == null || this.lon == null) {
-      return weatherFailureResponse("error_bad_request");
+    if (lat == null || lon == null) {
+      return weatherFailureResponse("error_bad_request", lat, lon);
+    }
+    String latRounded = truncate(lat);
+    String lonRounded = truncate(lon);
+
+    // Keeps a slow datasource from holding every server thread, but only takes a place among the
+    // waiting threads if the lookup is not already answered
+    CompletableFuture<Integer> lookup = this.getTemperatureAsync(latRounded, lonRounded);
+    boolean waiting = !lookup.isDone();
+    if (waiting && !this.startWaiting()) {
+      return weatherFailureResponse("error_datasource", lat, lon);
     }
-    String latRounded = truncate(this.lat);
-    String lonRounded = truncate(this.lon);
 
     // Retrieves temperature and returns a success response
     try {
       // Determines truncated values of latitude and longitude
-      Integer temperature = getTemperature(latRounded, lonRounded);
-      return weatherSuccessResponse(temperature);
+      Integer temperature = this.await(lookup);
+      return weatherSuccessResponse(temperature, lat, lon);
     } catch (IOException ex) {
-      return weatherFailureResponse("error_datasource");
+      return weatherFailureResponse("error_datasource", lat, lon);
     } catch (NullPointerException ex) {
-      return weatherFailureResponse("error_bad_json");
+      return weatherFailureResponse("error_bad_json", lat, lon);
     } catch (InterruptedException e) {
-      return weatherFailureResponse("error_datasource");
+      return weatherFailureResponse("error_datasource", lat, lon);
     } catch (URISyntaxException e) {
-      return weatherFailureResponse("error_datasource");
+      return weatherFailureResponse("error_datasource", lat, lon);
+    } finally {
+      if (waiting) {
+        this.stopWaiting();
+      }
     }
   }
 
+  /**
+   * Takes a place among the server threads waiting for lookups, if one is free. Each place taken
+   * must be given back with stopWaiting().
+   *
+   * @return whether a place was taken
+   */
+  boolean startWaiting() {
+    return this.waitingLookups.tryAcquire();
+  }
+
+  /** Gives back a place taken with startWaiting(). */
+  void stopWaiting() {
+    this.waitingLookups.release();
+  }
+
   /**
    * Format Strings for latitude and longitude
    *
@@ -81,7 +294,7 @@ public class WeatherHandler implements Route {
 
   /**
    * This method makes a request to the NWS API and deserializes the response to return an integer
-   * for temperature
+   * for temperature, waiting for getTemperatureAsync to finish.
    *
    * @param latitude
    * @param longitude
@@ -90,30 +303,189 @@ public class WeatherHandler implements Route {
    */
   public Integer getTemperature(String latitude, String longitude)
       throws IOException, InterruptedException, URISyntaxException, NullPointerException {
-    String websiteLink = "https://api.weather.gov/points/" + latitude + "," + longitude;
-    HttpRequest weatherRequest = HttpRequest.newBuilder().uri(new URI(websiteLink)).GET().build();
-    HttpResponse<String> weatherResponse =
-        HttpClient.newBuilder().build().send(weatherRequest, BodyHandlers.ofString());
+    return this.await(this.getTemperatureAsync(latitude, longitude));
+  }
 
-    Moshi moshi = new Moshi.Builder().build();
-    String forecastURL =
-        moshi.adapter(Weather.class).fromJson(weatherResponse.body()).properties.forecast;
+  /**
+   * Looks up the current temperature at a point without blocking. Both requests go through the
+   * shared client, and each must be answered within the request timeout. Either request is skipped
+   * while its answer is cached, and the points request is also skipped for a point near a cached
+   * cell. Only answers that could be read are cached. A request that another lookup already has
+   * under way is not sent again; its answer, or its failure, is shared instead.
+   *
+   * @param latitude truncated latitude of the point
+   * @param longitude truncated longitude of the point
+   * @return future of the temperature, which fails with an IOException if a request fails, a
+   *     NullPointerException if an answer cannot be read, or a URISyntaxException if the forecast
+   *     URL is malformed
+   */
+  public CompletableFuture<Integer> getTemperatureAsync(String latitude, String longitude) {
+    String point = latitude + "," + longitude;
+    String cachedURL = this.forecastURLs.get(point);
+    if (cachedURL == null) {
+      cachedURL = this.findCell(latitude, longitude);
+    }
+    CompletableFuture<String> forecastURL =
+        cachedURL != null
+            ? CompletableFuture.completedFuture(cachedURL)
+            : this.pointRequests.run(point, () -> this.requestForecastURL(point));
+
+    return forecastURL.thenCompose(
+        url -> {
+          Integer cachedTemperature = this.temperatures.get(url);
+          return cachedTemperature != null
+              ? CompletableFuture.completedFuture(cachedTemperature)
+              : this.forecastRequests.run(url, () -> this.requestTemperature(url));
+        });
+  }
+
+  /**
+   * Looks up the temperature at a point in the caches alone, without sending any request.
+   *
+   * @param latitude truncated latitude of the point
+   * @param longitude truncated longitude of the point
+   * @return the cached temperature, or null if it is not cached
+   */
+  Integer getCachedTemperature(String latitude, String longitude) {
+    String forecastURL = this.forecastURLs.get(latitude + "," + longitude);
+    if (forecastURL == null) {
+      forecastURL = this.findCell(latitude, longitude);
+    }
+    return forecastURL == null ? null : this.temperatures.get(forecastURL);
+  }
+
+  /** Finds the forecast URL of the cached cell a point lies in, or null if there is none. */
+  private String findCell(String latitude, String longitude) {
+    try {
+      return this.cells.find(Double.parseDouble(latitude), Double.parseDouble(longitude));
+    } catch (NumberFormatException e) {
+      // Left to the points endpoint to reject
+      return null;
+    }
+  }
+
+  /** Asks the points endpoint for the forecast URL of a point, and caches it. */
+  private CompletableFuture<String> requestForecastURL(String point) {
+    return this.sendAsync(this.baseUri.resolve("points/" + point))
+        .thenApply(
+            weatherResponse -> {
+              String forecastURL = parse(WEATHER_ADAPTER, weatherResponse).properties.forecast;
+              if (forecastURL == null) {
+                throw new NullPointerException("No forecast for " + point);
+              }
+              this.forecastURLs.put(point, forecastURL);
+              return forecastURL;
+            });
+  }
+
+  /**
+   * Asks for the forecast at a URL for its current temperature, and caches it, along with its cell
+   * if the forecast gives the cell's outline.
+   */
+  private CompletableFuture<Integer> requestTemperature(String forecastURL) {
+    URI forecastURI;
+    try {
+      forecastURI = new URI(forecastURL);
+    } catch (URISyntaxException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return this.sendAsync(forecastURI)
+        .thenApply(
+            forecastResponse -> {
+              Forecast forecast = parse(FORECAST_ADAPTER, forecastResponse);
+              Integer temperature = forecast.properties.periods.get(0).temperature;
+              if (temperature == null) {
+                throw new NullPointerException("No temperature in " + forecastURL);
+              }
+              this.temperatures.put(forecastURL, temperature);
+              if (forecast.geometry != null
+                  && forecast.geometry.coordinates != null
+                  && !forecast.geometry.coordinates.isEmpty()) {
+                double[] centroid = ForecastCells.centroid(forecast.geometry.coordinates.get(0));
+                if (centroid != null) {
+                  this.cells.put(centroid[0], centroid[1], forecastURL);
+                }
+              }
+              return temperature;
+            });
+  }
+
+  /**
+   * Names the error response for a failed lookup, as handle() would report it.
+   *
+   * @param failure what the lookup's future failed with
+   * @return descriptive error type
+   */
+  static String failureType(Throwable failure) {
+    if (failure instanceof CompletionException && failure.getCause() != null) {
+      failure = failure.getCause();
+    }
+    return failure instanceof NullPointerException ? "error_bad_json" : "error_datasource";
+  }
 
-    HttpRequest forecastRequest = HttpRequest.newBuilder().uri(new URI(forecastURL)).GET().build();
+  /**
+   * Sends a GET request through the shared client without waiting for its response. The request
+   * timeout of an HttpRequest only bounds the wait for the response headers, so the whole response,
+   * body included, must also arrive within it; an exchange still going by then is cancelled and
+   * fails with an HttpTimeoutException.
+   */
+  private CompletableFuture<HttpResponse<String>> sendAsync(URI uri) {
+    HttpRequest request =
+        HttpRequest.newBuilder().uri(uri).timeout(this.requestTimeout).GET().build();
+    CompletableFuture<HttpResponse<String>> exchange =
+        this.client.sendAsync(request, BodyHandlers.ofString());
+    return exchange
+        .copy()
+        .orTimeout(this.requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .handle(
+            (response, failure) -> {
+              if (failure instanceof TimeoutException) {
+                exchange.cancel(true);
+                throw new CompletionException(
+                    new HttpTimeoutException("Response from " + uri + " not received in time"));
+              } else if (failure != null) {
+                throw failure instanceof CompletionException completion
+                    ? completion
+                    : new CompletionException(failure);
+              }
+              return response;
+            });
+  }
 
-    HttpResponse<String> forecastResponse =
-        HttpClient.newBuilder().build().send(forecastRequest, BodyHandlers.ofString());
+  /** Reads a response body within a future, failing the future if it is not valid JSON. */
+  private static <T> T parse(JsonAdapter<T> adapter, HttpResponse<String> response) {
+    try {
+      return adapter.fromJson(response.body());
+    } catch (IOException e) {
+      throw new CompletionException(e);
+    }
+  }
 
-    Moshi moshi_two = new Moshi.Builder().build();
-    Integer currentTemperature =
-        moshi_two
-            .adapter(Forecast.class)
-            .fromJson(forecastResponse.body())
-            .properties
-            .periods
-            .get(0)
-            .temperature;
-    return currentTemperature;
+  /**
+   * Waits for a lookup, rethrowing what it failed with so that it fails as a blocking lookup would.
+   * A lookup sends at most LOOKUP_REQUESTS requests one after another, each of which sendAsync
+   * fails once it runs past the request timeout, and the wait gives up after that long in any case.
+   */
+  private <V> V await(CompletableFuture<V> lookup)
+      throws IOException, InterruptedException, URISyntaxException {
+    try {
+      return lookup.get(
+          this.requestTimeout.multipliedBy(LOOKUP_REQUESTS).toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new HttpTimeoutException("Weather lookup not answered in time");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      } else if (cause instanceof URISyntaxException syntax) {
+        throw syntax;
+      } else if (cause instanceof RuntimeException runtime) {
+        throw runtime;
+      } else if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new IOException("Weather lookup failed", cause);
+    }
   }
 
   /**
@@ -121,19 +493,21 @@ public class WeatherHandler implements Route {
    * a String stored denoting the successful result and the temperature along with the lat/lon The
    * map is serialized and returned in JSON string format.
    *
+   * @param temperature current temperature
+   * @param lat latitude passed in the request
+   * @param lon longitude passed in the request
    * @return serialized JSON string of Map
    */
-  public Object weatherSuccessResponse(Integer temperature) {
+  public Object weatherSuccessResponse(Integer temperature, String lat, String lon) {
     // Creates map with failure response
     Map<String, Object> responses = new HashMap<>();
     responses.put("result", "success");
-    responses.put("lat", this.lat);
-    responses.put("lon", this.lon);
+    responses.put("lat", lat);
+    responses.put("lon", lon);
     responses.put("temperature", temperature);
 
     // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
   }
 
   /**
@@ -141,17 +515,24 @@ public class WeatherHandler implements Route {
    * error response must be returned.
    *
    * @param responseType- Descriptive error message based on issue with file/filepath
+   * @param lat latitude passed in the request, or null
+   * @param lon longitude passed in the request, or null
    * @return serialized JSON string of Map
    */
-  public Object weatherFailureResponse(String responseType) {
+  public Object weatherFailureResponse(String responseType, String lat, String lon) {
     // Creates map with failure response
     Map<String, Object> responses = new HashMap<>();
     responses.put("result", responseType);
-    responses.put("lat", this.lat);
-    responses.put("lon", this.lon);
+    responses.put("lat", lat);
+    responses.put("lon", lon);
 
     // Serializes responses into JSON format
-    Moshi moshi = new Moshi.Builder().build();
-    return moshi.adapter(Map.class).toJson(responses);
+    return JsonResponses.MAP_ADAPTER.toJson(responses);
+  }
+
+  /** Holds the client of handlers created without one, which is built when first used. */
+  private static final class SharedClient {
+    private static final HttpClient CLIENT =
+        newClient(DEFAULT_CONNECT_TIMEOUT, DEFAULT_CLIENT_THREADS);
   }
 }
@@ -1,11 +1,15 @@
 package edu.brown.cs.student.stars;
 
-import edu.brown.cs.student.csv.CreatorFromRow;
+import edu.brown.cs.student.csv.CSVRow;
+import edu.brown.cs.student.csv.CreatorFromFields;
 import edu.brown.cs.student.csv.FactoryFailureException;
 import java.util.List;
 
-/** Factory to create Star objects from a List of Strings. */
-public class StarFactory implements CreatorFromRow<Star> {
+/**
+ * Factory to create Star objects from a List of Strings, or directly from a CSVRow so that the id
+ * and coordinates are parsed without allocating a String for each field.
+ */
+public class StarFactory implements CreatorFromFields<Star> {
 
   @Override
   public Star create(List<String> row) throws FactoryFailureException {
@@ -23,4 +27,21 @@ public class StarFactory implements CreatorFromRow<Star> {
       throw new FactoryFailureException(row);
     }
   }
+
+  @Override
+  public Star create(CSVRow row) throws FactoryFailureException {
+    if (row.size() != 5) {
+      throw new FactoryFailureException(row.toList());
+    }
+    try {
+      long id = row.getLong(0);
+      String name = row.get(1);
+      double x = row.getDouble(2);
+      double y = row.getDouble(3);
+      double z = row.getDouble(4);
+      return new Star(id, name, x, y, z);
+    } catch (NumberFormatException e) {
+      throw new FactoryFailureException(row.toList());
+    }
+  }
 }
@@ -2,4 +2,5 @@ package edu.brown.cs.student.weather;
 
 public class Forecast {
   public ForecastProperties properties;
+  public ForecastGeometry geometry;
 }
@@ -0,0 +1,8 @@
+package edu.brown.cs.student.weather;
+
+import java.util.List;
+
+public class ForecastGeometry {
+  // GeoJSON polygon rings of [longitude, latitude] positions, the first being the outline
+  public List<List<List<Double>>> coordinates;
+}
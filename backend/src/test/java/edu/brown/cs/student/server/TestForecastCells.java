@@ -0,0 +1,102 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Tests the ForecastCells class, checking which cached cell a point is taken to lie in */
+public class TestForecastCells {
+  /** Tests that a point is matched to the nearest cell within the radius, and only that */
+  @Test
+  public void testFind() {
+    ForecastCells cells = new ForecastCells(1.0, Duration.ofHours(1), 10);
+    assertNull(cells.find(41.824, -71.4128));
+
+    cells.put(41.824, -71.4128, "https://api.weather.gov/gridpoints/BOX/64,64/forecast");
+    cells.put(41.846, -71.4128, "https://api.weather.gov/gridpoints/BOX/64,65/forecast");
+    assertEquals(2, cells.size());
+
+    // 0.005 degrees of latitude is about 560m
+    assertEquals(
+        "https://api.weather.gov/gridpoints/BOX/64,64/forecast", cells.find(41.829, -71.4128));
+    assertEquals(
+        "https://api.weather.gov/gridpoints/BOX/64,65/forecast", cells.find(41.841, -71.4128));
+    // Halfway between the two, about 1.2km from each
+    assertNull(cells.find(41.835, -71.4128));
+    // 0.01 degrees of longitude is only about 830m this far north
+    assertEquals(
+        "https://api.weather.gov/gridpoints/BOX/64,64/forecast", cells.find(41.824, -71.4028));
+    assertNull(cells.find(33.4942, -111.926));
+
+    // Putting a cell again moves it rather than adding another
+    cells.put(41.9, -71.4128, "https://api.weather.gov/gridpoints/BOX/64,64/forecast");
+    assertEquals(2, cells.size());
+    assertNull(cells.find(41.829, -71.4128));
+  }
+
+  /** Tests that expired cells are not matched, and that the cache stays bounded */
+  @Test
+  public void testExpiryAndBound() {
+    AtomicLong now = new AtomicLong();
+    ForecastCells cells = new ForecastCells(1.0, Duration.ofHours(1), 2, now::get);
+    cells.put(41.824, -71.4128, "a");
+    now.addAndGet(Duration.ofMinutes(30).toNanos());
+    cells.put(33.4942, -111.926, "b");
+
+    now.addAndGet(Duration.ofMinutes(30).toNanos());
+    assertNull(cells.find(41.824, -71.4128));
+    assertEquals("b", cells.find(33.4942, -111.926));
+
+    // The expired cell makes room for a new one before any fresh one is dropped
+    cells.put(40.7128, -74.006, "c");
+    assertEquals(2, cells.size());
+    assertEquals("b", cells.find(33.4942, -111.926));
+    assertEquals("c", cells.find(40.7128, -74.006));
+
+    // Past the bound, the oldest cell is dropped
+    cells.put(47.6062, -122.3321, "d");
+    assertEquals(2, cells.size());
+    assertNull(cells.find(33.4942, -111.926));
+  }
+
+  /** Tests that putting a cell again at the same centroid keeps it for another time to live */
+  @Test
+  public void testRefresh() {
+    AtomicLong now = new AtomicLong();
+    ForecastCells cells = new ForecastCells(1.0, Duration.ofHours(1), 2, now::get);
+    cells.put(41.824, -71.4128, "a");
+    cells.put(33.4942, -111.926, "b");
+    now.addAndGet(Duration.ofMinutes(45).toNanos());
+    cells.put(41.824, -71.4128, "a");
+
+    now.addAndGet(Duration.ofMinutes(30).toNanos());
+    assertEquals("a", cells.find(41.824, -71.4128));
+    assertNull(cells.find(33.4942, -111.926));
+    assertEquals(2, cells.size());
+
+    // A refreshed cell counts as the most recently put, so the other is dropped past the bound
+    cells.put(40.7128, -74.006, "c");
+    assertEquals("a", cells.find(41.824, -71.4128));
+    assertEquals("c", cells.find(40.7128, -74.006));
+    assertEquals(2, cells.size());
+  }
+
+  /** Tests that the centroid of an outline counts its closing position once */
+  @Test
+  public void testCentroid() {
+    List<List<Double>> ring =
+        List.of(
+            List.of(-71.43, 41.81),
+            List.of(-71.39, 41.81),
+            List.of(-71.39, 41.83),
+            List.of(-71.43, 41.83),
+            List.of(-71.43, 41.81));
+    assertArrayEquals(new double[] {41.82, -71.41}, ForecastCells.centroid(ring), 1e-9);
+    assertNull(ForecastCells.centroid(List.of()));
+  }
+}
@@ -1,16 +1,23 @@
 package edu.brown.cs.student.server;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.csv.CSVData;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import okio.Buffer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -173,4 +180,321 @@ public class TestGetHandler {
 
     clientConnection.disconnect();
   }
+
+  /**
+   * Test case in which an earlier CSV is requested by name after another has been loaded
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetNamedDataset() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/one-star.csv").getTable());
+    this.data.publish(this.data.getRegistry().load("data/stars/four-stars.csv").getTable());
+
+    HttpURLConnection clientConnection = tryRequest("getcsv?dataset=data/stars/one-star.csv");
+    assertEquals(200, clientConnection.getResponseCode());
+
+    Moshi moshi = new Moshi.Builder().build();
+    Map<String, Object> responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    assertEquals("success", responses.get("result"));
+    assertEquals(
+        this.data.getRegistry().get("data/stars/one-star.csv").getRows().toString(),
+        responses.get("data").toString());
+    clientConnection.disconnect();
+
+    // A dataset that was never loaded
+    clientConnection = tryRequest("getcsv?dataset=data/stars/two-stars.csv");
+    responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    assertEquals(Map.of("result", "error_bad_request"), responses);
+    clientConnection.disconnect();
+  }
+
+  /** Requests a URL and reads the JSON response into a map */
+  private static Map<String, Object> getResponse(String apiCall) throws IOException {
+    HttpURLConnection clientConnection = tryRequest(apiCall);
+    assertEquals(200, clientConnection.getResponseCode());
+    Moshi moshi = new Moshi.Builder().build();
+    Map<String, Object> responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    clientConnection.disconnect();
+    return responses;
+  }
+
+  /**
+   * Test case in which a CSV is read a page at a time by following cursors
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetPages() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    List<List<String>> rows = this.data.getData();
+
+    Map<String, Object> responses = getResponse("getcsv?limit=4&columns=ProperName,0");
+    assertEquals("success", responses.get("result"));
+    assertEquals(List.of("ProperName", "StarID"), responses.get("header"));
+    assertEquals(10.0, responses.get("total_rows"));
+    assertEquals(0.0, responses.get("offset"));
+
+    // Follows the cursors to the end of the table
+    List<Object> pages = new ArrayList<>((List<?>) responses.get("data"));
+    while (responses.containsKey("next_cursor")) {
+      responses = getResponse("getcsv?cursor=" + responses.get("next_cursor"));
+      pages.addAll((List<?>) responses.get("data"));
+    }
+    assertEquals(2, ((List<?>) responses.get("data")).size());
+    assertEquals(10, pages.size());
+    for (int i = 0; i < rows.size(); i++) {
+      assertEquals(List.of(rows.get(i).get(1), rows.get(i).get(0)), pages.get(i));
+    }
+
+    // An offset past the end gives an empty page
+    responses = getResponse("getcsv?offset=20");
+    assertEquals(List.of(), responses.get("data"));
+    assertFalse(responses.containsKey("next_cursor"));
+  }
+
+  /**
+   * Test case in which a cursor is used after a new version of the CSV is loaded
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetStaleCursor() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    String cursor = (String) getResponse("getcsv?limit=5").get("next_cursor");
+    assertEquals("success", getResponse("getcsv?cursor=" + cursor).get("result"));
+
+    this.data.publish(this.data.getRegistry().load("data/stars/four-stars.csv").getTable());
+    assertEquals(Map.of("result", "error_stale_cursor"), getResponse("getcsv?cursor=" + cursor));
+  }
+
+  /**
+   * Test case in which the paging parameters are malformed
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetBadPage() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    for (String apiCall :
+        new String[] {
+          "getcsv?limit=-1",
+          "getcsv?offset=two",
+          "getcsv?columns=Mass",
+          "getcsv?columns=5",
+          "getcsv?cursor=not-a-cursor",
+          "getcsv?filter=StarID%3E",
+          "getcsv?filter=Mass%3E1"
+        }) {
+      assertEquals(Map.of("result", "error_bad_request"), getResponse(apiCall), apiCall);
+    }
+  }
+
+  /**
+   * Test case in which a cursor is forged with columns the CSV does not have
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetForgedCursor() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    String cursor = (String) getResponse("getcsv?limit=5").get("next_cursor");
+    long version = PageCursor.decode(cursor).getVersion();
+    for (int[] columns : new int[][] {{99}, {0, -1}, {5}}) {
+      String forged = new PageCursor(null, version, 5, 5, columns).encode();
+      assertEquals(
+          Map.of("result", "error_bad_request"),
+          getResponse("getcsv?cursor=" + forged),
+          Arrays.toString(columns));
+    }
+    String negative = new PageCursor(null, version, -5, 5, new int[] {0}).encode();
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("getcsv?cursor=" + negative));
+    String valid = new PageCursor(null, version, 5, 5, new int[] {4}).encode();
+    assertEquals("success", getResponse("getcsv?cursor=" + valid).get("result"));
+  }
+
+  /**
+   * Test case in which a filter selects the rows of each page, across cursors
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetFiltered() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+
+    // StarID > 3 AND ProperName != "" OR X = 0
+    String filter = "StarID+%3E+3+AND+ProperName+!%3D+%22%22+OR+X+%3D+0";
+    Map<String, Object> responses = getResponse("getcsv?columns=StarID&limit=3&filter=" + filter);
+    assertEquals("success", responses.get("result"));
+    assertEquals("[[0], [3759], [70667]]", responses.get("data").toString());
+    assertEquals(6.0, responses.get("total_rows"));
+
+    responses = getResponse("getcsv?cursor=" + responses.get("next_cursor"));
+    assertEquals("[[71454], [71457], [87666]]", responses.get("data").toString());
+    assertEquals(3.0, responses.get("offset"));
+    assertFalse(responses.containsKey("next_cursor"));
+
+    responses = getResponse("getcsv?filter=ProperName%5E%3DRigel");
+    assertEquals(
+        "[[71454, Rigel Kentaurus B, -0.50359, -0.42128, -1.1767], "
+            + "[71457, Rigel Kentaurus A, -0.50362, -0.42139, -1.17665]]",
+        responses.get("data").toString());
+  }
+
+  /**
+   * Test case in which the response is streamed, which must give the same JSON as without streaming
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetStreamed() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+
+    assertEquals(getResponse("getcsv"), getResponse("getcsv?stream=true"));
+    assertEquals(
+        getResponse("getcsv?limit=3&columns=X,Y"),
+        getResponse("getcsv?limit=3&columns=X,Y&stream=true"));
+  }
+
+  /**
+   * Test case in which a large table is streamed in chunks rather than sent with a known length
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetStreamedChunked() throws IOException {
+    List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      rows.add(List.of(Integer.toString(i), "star " + i, "1.5", "2.5", "3.5"));
+    }
+    this.data.setData(rows);
+    this.data.setIsLoaded(true);
+
+    HttpURLConnection clientConnection = tryRequest("getcsv?stream=true");
+    assertEquals(200, clientConnection.getResponseCode());
+    assertEquals("chunked", clientConnection.getHeaderField("Transfer-Encoding"));
+
+    Moshi moshi = new Moshi.Builder().build();
+    Map<String, Object> responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    assertEquals("success", responses.get("result"));
+    assertEquals(rows, responses.get("data"));
+    clientConnection.disconnect();
+  }
+
+  /**
+   * Test case in which the same request is repeated around a new CSV being loaded, so that a cached
+   * response must not outlive its version of the data
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetAfterReload() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    Map<String, Object> first = getResponse("getcsv?limit=2");
+    assertEquals(first, getResponse("getcsv?limit=2"));
+    assertEquals(first, getResponse("getcsv?limit=2&stream=true"));
+
+    this.data.publish(this.data.getRegistry().load("data/stars/one-star.csv").getTable());
+    Map<String, Object> second = getResponse("getcsv?limit=2");
+    assertEquals(1.0, second.get("total_rows"));
+    assertEquals(this.data.getData(), second.get("data"));
+  }
+
+  /** Starts a connection to an API endpoint with a request header set */
+  private static HttpURLConnection tryRequest(String apiCall, String header, String value)
+      throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/" + apiCall);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    clientConnection.setRequestProperty(header, value);
+    clientConnection.connect();
+    return clientConnection;
+  }
+
+  /**
+   * Test case in which the client already holds the current version of the CSV
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetNotModified() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    HttpURLConnection clientConnection = tryRequest("getcsv");
+    String etag = clientConnection.getHeaderField("ETag");
+    String lastModified = clientConnection.getHeaderField("Last-Modified");
+    clientConnection.disconnect();
+
+    clientConnection = tryRequest("getcsv", "If-None-Match", etag);
+    assertEquals(304, clientConnection.getResponseCode());
+    clientConnection.disconnect();
+    // A date in the same second as the version could belong to one it replaced, so only a later
+    // date shows that the client is up to date
+    clientConnection = tryRequest("getcsv", "If-Modified-Since", lastModified);
+    assertEquals(200, clientConnection.getResponseCode());
+    clientConnection.disconnect();
+    String later =
+        DateTimeFormatter.RFC_1123_DATE_TIME.format(
+            ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME).plusSeconds(1));
+    clientConnection = tryRequest("getcsv", "If-Modified-Since", later);
+    assertEquals(304, clientConnection.getResponseCode());
+    clientConnection.disconnect();
+
+    // A different request, or a new version of the data, has a different tag
+    clientConnection = tryRequest("getcsv?limit=1", "If-None-Match", etag);
+    assertEquals(200, clientConnection.getResponseCode());
+    clientConnection.disconnect();
+    this.data.publish(this.data.getRegistry().load("data/stars/four-stars.csv").getTable());
+    clientConnection = tryRequest("getcsv", "If-None-Match", etag);
+    assertEquals(200, clientConnection.getResponseCode());
+    assertFalse(etag.equals(clientConnection.getHeaderField("ETag")));
+    clientConnection.disconnect();
+  }
+
+  /**
+   * Test case in which the client accepts compressed responses
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testGetCompressed() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    Map<String, Object> expected = getResponse("getcsv");
+    Moshi moshi = new Moshi.Builder().build();
+
+    for (String apiCall : new String[] {"getcsv", "getcsv", "getcsv?stream=true&limit=20"}) {
+      HttpURLConnection clientConnection = tryRequest(apiCall, "Accept-Encoding", "gzip");
+      assertEquals(200, clientConnection.getResponseCode());
+      assertEquals("gzip", clientConnection.getHeaderField("Content-Encoding"));
+      Map<String, Object> responses =
+          moshi
+              .adapter(Map.class)
+              .fromJson(
+                  new Buffer().readFrom(new GZIPInputStream(clientConnection.getInputStream())));
+      assertEquals(expected.get("data"), responses.get("data"), apiCall);
+      clientConnection.disconnect();
+    }
+
+    HttpURLConnection clientConnection =
+        tryRequest("getcsv", "Accept-Encoding", "gzip;q=0, deflate");
+    assertEquals("deflate", clientConnection.getHeaderField("Content-Encoding"));
+    Map<String, Object> responses =
+        moshi
+            .adapter(Map.class)
+            .fromJson(
+                new Buffer().readFrom(new InflaterInputStream(clientConnection.getInputStream())));
+    assertEquals(expected, responses);
+    clientConnection.disconnect();
+
+    // A coding refused by name is not picked for the wildcard
+    for (String[] negotiated :
+        new String[][] {{"gzip;q=0, *", "deflate"}, {"*, gzip;q=0, deflate;q=0", null}}) {
+      clientConnection = tryRequest("getcsv", "Accept-Encoding", negotiated[0]);
+      assertEquals(200, clientConnection.getResponseCode());
+      assertEquals(negotiated[1], clientConnection.getHeaderField("Content-Encoding"));
+      clientConnection.disconnect();
+    }
+  }
 }
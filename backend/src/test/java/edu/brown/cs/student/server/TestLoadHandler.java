@@ -1,15 +1,23 @@
 package edu.brown.cs.student.server;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.csv.CSVData;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import okio.Buffer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -32,6 +40,9 @@ public class TestLoadHandler {
    */
   CSVData data = new CSVData();
 
+  /** Background loads, shared by the load and status endpoints */
+  LoadJobs jobs = new LoadJobs(data);
+
   /**
    * Before each test is run, fields in instance of CSVData are initialized, endpoint is set, and
    * new instance of LoadHandler class is created with instance of CSVData passed in as argument
@@ -44,7 +55,8 @@ public class TestLoadHandler {
     data.setIsLoaded(false);
 
     // Restarts the entire Spark server for every test
-    Spark.get("loadcsv", new LoadHandler(data));
+    Spark.get("loadcsv", new LoadHandler(data, jobs));
+    Spark.get("loadstatus", new LoadStatusHandler(jobs));
     Spark.init();
     Spark.awaitInitialization(); // don't continue until the server is listening
   }
@@ -54,6 +66,8 @@ public class TestLoadHandler {
   public void teardown() {
     // Gracefully stop Spark listening on both endpoints
     Spark.unmap("/loadcsv");
+    Spark.unmap("/loadstatus");
+    jobs.shutdown();
     Spark.stop();
     Spark.awaitStop();
   }
@@ -152,6 +166,35 @@ public class TestLoadHandler {
     clientConnection.disconnect();
   }
 
+  /**
+   * Test case in which a filepath starts in the /data folder but leads out of it, which must not
+   * load the file or write a snapshot next to it
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testLoadOutsideDataFolder() throws IOException {
+    Path folder = Files.createTempDirectory("outside");
+    Path file = folder.resolve("stars.csv");
+    Files.writeString(file, "StarID,ProperName,X,Y,Z\n0,Sol,0,0,0\n");
+    try {
+      String filepath = "data/" + Path.of("data").toRealPath().relativize(file.toRealPath());
+      assertTrue(filepath.startsWith("data/../"));
+      Map<String, Object> responses =
+          getResponse("loadcsv?filepath=" + filepath + "&snapshot=true&watch=true");
+      assertEquals(Map.of("result", "error_datasource", "filepath", filepath), responses);
+      responses = getResponse("loadcsv?filepath=" + filepath + "&async=true");
+      assertEquals("error_datasource", responses.get("result"));
+      assertNull(this.data.getSnapshot(filepath));
+      try (Stream<Path> files = Files.list(folder)) {
+        assertEquals(List.of(file), files.collect(Collectors.toList()));
+      }
+    } finally {
+      Files.delete(file);
+      Files.delete(folder);
+    }
+  }
+
   /**
    * Tests case in which user passed in filepath to valid file
    *
@@ -189,4 +232,98 @@ public class TestLoadHandler {
 
     clientConnection.disconnect();
   }
+
+  /** Requests a URL and reads the JSON response into a map */
+  private static Map<String, Object> getResponse(String apiCall) throws IOException {
+    HttpURLConnection clientConnection = tryRequest(apiCall);
+    assertEquals(200, clientConnection.getResponseCode());
+    Moshi moshi = new Moshi.Builder().build();
+    Map<String, Object> responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    clientConnection.disconnect();
+    return responses;
+  }
+
+  /** Polls the status of a job until it finishes */
+  private static Map<String, Object> awaitJob(Object job) throws IOException, InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      Map<String, Object> responses = getResponse("loadstatus?job=" + job);
+      Object status = responses.get("status");
+      if (!"queued".equals(status) && !"running".equals(status)) {
+        return responses;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Job " + job + " did not finish");
+  }
+
+  /**
+   * Test case in which a file is loaded in the background and its progress is followed
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLoadAsync() throws Exception {
+    Map<String, Object> responses =
+        getResponse("loadcsv?filepath=data/stars/ten-star.csv&async=true");
+    assertEquals("success", responses.get("result"));
+    assertEquals("data/stars/ten-star.csv", responses.get("filepath"));
+    Object job = responses.get("job");
+
+    responses = awaitJob(job);
+    assertEquals("success", responses.get("status"));
+    double size = Files.size(Path.of("data/stars/ten-star.csv"));
+    assertEquals(size, responses.get("bytes_read"));
+    assertEquals(size, responses.get("total_bytes"));
+    assertEquals(10.0, responses.get("rows_parsed"));
+    assertTrue(responses.containsKey("elapsed_ms"));
+    assertFalse(responses.containsKey("eta_ms"));
+    assertEquals(10, this.data.getTable().getRowCount());
+
+    // A missing file fails in the response, since it cannot be resolved inside the data folder
+    responses = getResponse("loadcsv?filepath=data/stars/random.csv&async=true");
+    assertEquals(
+        Map.of("result", "error_datasource", "filepath", "data/stars/random.csv"), responses);
+    assertEquals(10, this.data.getTable().getRowCount());
+
+    // The file is only watched once it has loaded, which the job reports
+    responses = getResponse("loadcsv?filepath=data/stars/ten-star.csv&async=true&watch=true");
+    assertFalse(responses.containsKey("watching"));
+    responses = awaitJob(responses.get("job"));
+    assertEquals("success", responses.get("status"));
+    assertEquals(true, responses.get("watching"));
+
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("loadstatus?job=none"));
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("loadstatus"));
+  }
+
+  /**
+   * Test case in which a background load is cancelled, leaving the previous dataset in place
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLoadCancelled() throws Exception {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+
+    // A file large enough that it cannot be parsed before it is cancelled
+    StringBuilder csv = new StringBuilder("StarID,ProperName,X,Y,Z\n");
+    for (int i = 0; i < 300000; i++) {
+      csv.append(i).append(",star ").append(i).append(",1.5,2.5,3.5\n");
+    }
+    Path file = Files.createTempFile(Path.of("data/stars"), "large", ".csv");
+    Files.writeString(file, csv.toString());
+    try {
+      String filepath = "data/stars/" + file.getFileName();
+      LoadJobs.LoadJob job = this.jobs.submit(filepath);
+      Map<String, Object> responses = getResponse("loadstatus?cancel=true&job=" + job.getId());
+      assertEquals("success", responses.get("result"));
+
+      assertEquals("cancelled", awaitJob(job.getId()).get("status"));
+      assertEquals(10, this.data.getTable().getRowCount());
+      assertNull(this.data.getSnapshot(filepath));
+    } finally {
+      Files.delete(file);
+    }
+  }
 }
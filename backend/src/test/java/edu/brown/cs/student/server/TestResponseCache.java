@@ -0,0 +1,75 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the ResponseCache class, checking that bodies are reused for a version of a dataset and
+ * dropped once a newer version is seen
+ */
+public class TestResponseCache {
+
+  /** Tests that a body is serialized once and then reused */
+  @Test
+  public void testHit() {
+    ResponseCache cache = new ResponseCache();
+    AtomicInteger serialized = new AtomicInteger();
+    byte[] first =
+        cache.get(
+            null,
+            1,
+            "getcsv",
+            () -> {
+              serialized.incrementAndGet();
+              return "{}".getBytes(StandardCharsets.UTF_8);
+            });
+    byte[] second = cache.get(null, 1, "getcsv", () -> new byte[0]);
+
+    assertSame(first, second);
+    assertEquals(1, serialized.get());
+    assertArrayEquals(first, cache.getIfPresent(null, 1, "getcsv"));
+    assertNull(cache.getIfPresent(null, 1, "stats"));
+    assertNull(cache.getIfPresent("data/stars/ten-star.csv", 1, "getcsv"));
+  }
+
+  /** Tests that a newer version of a dataset drops the bodies of the older one */
+  @Test
+  public void testNewVersion() {
+    ResponseCache cache = new ResponseCache();
+    cache.get(null, 1, "getcsv", () -> new byte[10]);
+    cache.get(null, 1, "stats", () -> new byte[10]);
+    cache.get("data/stars/ten-star.csv", 1, "stats", () -> new byte[10]);
+    assertEquals(3, cache.size());
+
+    assertNull(cache.getIfPresent(null, 2, "getcsv"));
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getCachedBytes());
+
+    // A body built from the older version is not cached once the newer one has been seen
+    cache.get(null, 1, "getcsv", () -> new byte[10]);
+    assertNull(cache.getIfPresent(null, 1, "getcsv"));
+    assertEquals(1, cache.size());
+  }
+
+  /** Tests that large bodies are not kept and that the budget is met */
+  @Test
+  public void testBudget() {
+    ResponseCache cache = new ResponseCache(100);
+    cache.get(null, 1, "too large", () -> new byte[26]);
+    assertEquals(0, cache.size());
+
+    for (int i = 0; i < 10; i++) {
+      cache.get(null, 1, "page " + i, () -> new byte[25]);
+    }
+    assertEquals(4, cache.size());
+    assertEquals(100, cache.getCachedBytes());
+    assertNull(cache.getIfPresent(null, 1, "page 0"));
+    assertEquals(25, cache.getIfPresent(null, 1, "page 9").length);
+  }
+}
@@ -0,0 +1,131 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.squareup.moshi.Moshi;
+import edu.brown.cs.student.csv.CSVData;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class TestSearchHandler {
+
+  /** Set spark port to 0 before test suite is run */
+  @BeforeAll
+  public static void setup_before_everything() {
+    Spark.port(0);
+    Logger.getLogger("").setLevel(Level.WARNING); // empty name = root logger
+  }
+
+  /** Shared state for all tests, which is cleared out before every test runs. */
+  CSVData data = new CSVData();
+
+  /** Before each test is run, the state is cleared and the server is started */
+  @BeforeEach
+  public void setup() {
+    data.setData(null);
+    data.setIsLoaded(false);
+
+    Spark.get("searchcsv", new SearchHandler(data));
+    Spark.init();
+    Spark.awaitInitialization(); // don't continue until the server is listening
+  }
+
+  /** After each test is run, the endpoint is removed and server is stopped. */
+  @AfterEach
+  public void teardown() {
+    Spark.unmap("/searchcsv");
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  /** Requests a URL and reads the JSON response into a map */
+  private static Map<String, Object> getResponse(String apiCall) throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/" + apiCall);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    clientConnection.connect();
+    assertEquals(200, clientConnection.getResponseCode());
+    Moshi moshi = new Moshi.Builder().build();
+    Map<String, Object> responses =
+        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    clientConnection.disconnect();
+    return responses;
+  }
+
+  /**
+   * Test case in which rows are found by an equal value and by ranges
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testSearch() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+
+    Map<String, Object> responses = getResponse("searchcsv?column=ProperName&value=Sol");
+    assertEquals("success", responses.get("result"));
+    assertEquals("[[0, Sol, 0, 0, 0]]", responses.get("data").toString());
+    assertEquals(List.of("StarID", "ProperName", "X", "Y", "Z"), responses.get("header"));
+
+    // Columns may be named by index, and empty values are matched like any other
+    responses = getResponse("searchcsv?column=1&value=");
+    assertEquals(4.0, responses.get("matches"));
+
+    // Numbers compare by value, in file order
+    responses = getResponse("searchcsv?column=X&min=-0.5036&max=-0.01");
+    assertEquals(
+        "[[70667, Proxima Centauri, -0.47175, -0.36132, -1.15037], "
+            + "[71454, Rigel Kentaurus B, -0.50359, -0.42128, -1.1767], "
+            + "[87666, Barnard's Star, -0.01729, -1.81533, 0.14824]]",
+        responses.get("data").toString());
+    responses = getResponse("searchcsv?column=StarID&min=70000");
+    assertEquals(5.0, responses.get("matches"));
+
+    responses = getResponse("searchcsv?column=ProperName&value=Vega");
+    assertEquals("[]", responses.get("data").toString());
+  }
+
+  /**
+   * Test case in which searches are missing a CSV, a column or a condition
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testSearchBadRequest() throws IOException {
+    assertEquals(
+        Map.of("result", "error_bad_request"), getResponse("searchcsv?column=0&value=Sol"));
+
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("searchcsv?value=Sol"));
+    assertEquals(
+        Map.of("result", "error_bad_request"), getResponse("searchcsv?column=Mass&value=1"));
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("searchcsv?column=5&min=1"));
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("searchcsv?column=X"));
+    assertEquals(
+        Map.of("result", "error_bad_request"), getResponse("searchcsv?column=X&value=0&min=1"));
+    assertEquals(Map.of("result", "error_bad_request"), getResponse("searchcsv?column=X&min=a"));
+  }
+
+  /**
+   * Test case in which a search after another load uses the new table
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testSearchAfterReload() throws IOException {
+    this.data.publish(this.data.getRegistry().load("data/stars/ten-star.csv").getTable());
+    assertEquals(1.0, getResponse("searchcsv?column=StarID&value=3759").get("matches"));
+
+    this.data.publish(this.data.getRegistry().load("data/stars/four-stars.csv").getTable());
+    assertEquals(0.0, getResponse("searchcsv?column=StarID&value=3759").get("matches"));
+  }
+}
@@ -0,0 +1,89 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** Tests the SingleFlight class, checking that concurrent calls for a key run only once */
+public class TestSingleFlight {
+  /** Tests that a call for a key already running shares its result, and that others do not */
+  @Test
+  public void testCoalesce() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CompletableFuture<Integer> upstream = new CompletableFuture<>();
+    CompletableFuture<Integer> first =
+        flight.run(
+            "41.824,-71.4128",
+            () -> {
+              calls.incrementAndGet();
+              return upstream;
+            });
+
+    // Callers for the same key are handed the running call without starting theirs
+    CompletableFuture<Integer> second =
+        flight.run(
+            "41.824,-71.4128", () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+    assertSame(first, second);
+    assertFalse(second.isDone());
+    assertEquals(1, flight.size());
+
+    // A caller for another key starts its own call
+    assertEquals(
+        2,
+        flight
+            .run(
+                "33.4942,-111.926",
+                () -> CompletableFuture.completedFuture(calls.incrementAndGet()))
+            .get());
+
+    upstream.complete(57);
+    assertEquals(57, second.get());
+    assertEquals(2, calls.get());
+    assertEquals(0, flight.size());
+
+    // Nothing is kept once the call has finished
+    CompletableFuture<Integer> later =
+        flight.run(
+            "41.824,-71.4128", () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+    assertNotSame(first, later);
+    assertEquals(3, later.get());
+  }
+
+  /** Tests that a failed call fails every caller that shared it with its cause */
+  @Test
+  public void testSharedFailure() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    CompletableFuture<Integer> upstream = new CompletableFuture<>();
+    CompletableFuture<Integer> first =
+        flight.run("key", () -> upstream.thenApply(value -> value + 1));
+    CompletableFuture<Integer> second = flight.run("key", () -> upstream);
+
+    upstream.completeExceptionally(new IOException("Upstream failed"));
+    ExecutionException e = assertThrows(ExecutionException.class, second::get);
+    assertTrue(e.getCause() instanceof IOException);
+    assertSame(first, second);
+    assertEquals(0, flight.size());
+
+    // A call that throws rather than returning a future also fails its callers
+    CompletableFuture<Integer> thrown =
+        flight.run(
+            "key",
+            () -> {
+              throw new CompletionException(new IOException("Could not start"));
+            });
+    e = assertThrows(ExecutionException.class, thrown::get);
+    assertTrue(e.getCause() instanceof IOException);
+    assertEquals(0, flight.size());
+  }
+}
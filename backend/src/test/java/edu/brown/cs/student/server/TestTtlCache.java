@@ -0,0 +1,59 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Tests the TtlCache class, checking that entries expire and that the cache stays bounded */
+public class TestTtlCache {
+  /** Tests that an entry is kept until its time to live has passed, and put again afresh */
+  @Test
+  public void testExpiry() {
+    AtomicLong now = new AtomicLong();
+    TtlCache<String, Integer> cache = new TtlCache<>(Duration.ofSeconds(10), 10, now::get);
+    cache.put("a", 1);
+
+    now.addAndGet(Duration.ofSeconds(9).toNanos());
+    assertEquals(1, cache.get("a"));
+    now.addAndGet(Duration.ofSeconds(1).toNanos());
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+
+    cache.put("a", 2);
+    now.addAndGet(Duration.ofSeconds(9).toNanos());
+    assertEquals(2, cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  /** Tests that a full cache drops expired entries, then the least recently used ones */
+  @Test
+  public void testBounded() {
+    AtomicLong now = new AtomicLong();
+    TtlCache<String, Integer> cache = new TtlCache<>(Duration.ofSeconds(10), 3, now::get);
+    cache.put("a", 1);
+    now.addAndGet(Duration.ofSeconds(5).toNanos());
+    cache.put("b", 2);
+    cache.put("c", 3);
+
+    // "a" is used most recently, so "b" is dropped to make room
+    assertEquals(1, cache.get("a"));
+    cache.put("d", 4);
+    assertEquals(3, cache.size());
+    assertNull(cache.get("b"));
+    assertEquals(3, cache.get("c"));
+
+    // Once "a" has expired, it is dropped ahead of any live entry
+    now.addAndGet(Duration.ofSeconds(5).toNanos());
+    cache.put("e", 5);
+    assertEquals(3, cache.size());
+    assertEquals(3, cache.get("c"));
+    assertEquals(4, cache.get("d"));
+    assertEquals(5, cache.get("e"));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
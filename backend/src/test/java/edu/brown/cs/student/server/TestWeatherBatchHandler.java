@@ -0,0 +1,157 @@
+package edu.brown.cs.student.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.squareup.moshi.Moshi;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+/** Tests the WeatherBatchHandler class against a stub of the NWS API */
+public class TestWeatherBatchHandler {
+  private final List<String> paths = new CopyOnWriteArrayList<>();
+  private HttpServer stub;
+
+  /** Set spark port to 0 before test suite is run */
+  @BeforeAll
+  public static void setup_before_everything() {
+    Spark.port(0);
+    Logger.getLogger("").setLevel(Level.WARNING);
+  }
+
+  /** Starts the stub, and the batch endpoint looking up temperatures from it */
+  @BeforeEach
+  public void setup() throws IOException {
+    this.stub = TestWeatherUnits.startStub(ConcurrentHashMap.newKeySet(), this.paths);
+    URI base = URI.create("http://localhost:" + this.stub.getAddress().getPort() + "/api");
+    WeatherHandler weather =
+        new WeatherHandler(
+            WeatherHandler.newClient(Duration.ofSeconds(1), 2), base, Duration.ofSeconds(5));
+    Spark.get("weather/batch", new WeatherBatchHandler(weather, 2));
+    Spark.init();
+    Spark.awaitInitialization();
+  }
+
+  @AfterEach
+  public void teardown() {
+    Spark.unmap("/weather/batch");
+    Spark.stop();
+    Spark.awaitStop();
+    this.stub.stop(0);
+  }
+
+  /** Sends a request to the batch endpoint and reads its response */
+  private static Map<String, Object> batch(String query) throws IOException {
+    return batch("batch", query);
+  }
+
+  /** Sends a request to a batch endpoint under "weather/" and reads its response */
+  private static Map<String, Object> batch(String endpoint, String query) throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/weather/" + endpoint + query);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    clientConnection.connect();
+    assertEquals(200, clientConnection.getResponseCode());
+    Map<String, Object> responses =
+        new Moshi.Builder()
+            .build()
+            .adapter(Map.class)
+            .fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    clientConnection.disconnect();
+    return responses;
+  }
+
+  /**
+   * Tests that a batch answers every point in order, looks up points that truncate alike once, and
+   * fails only the points it cannot read
+   */
+  @Test
+  public void testBatch() throws IOException {
+    Map<String, Object> responses =
+        batch("?points=41.8240,-71.4128;41.82401,-71.41281;abc,1;33.4942,-111.926");
+    assertEquals("success", responses.get("result"));
+    assertEquals(
+        List.of(
+            Map.of("result", "success", "lat", "41.8240", "lon", "-71.4128", "temperature", 57.0),
+            Map.of("result", "success", "lat", "41.82401", "lon", "-71.41281", "temperature", 57.0),
+            Map.of("result", "error_bad_request", "lat", "abc", "lon", "1"),
+            Map.of("result", "success", "lat", "33.4942", "lon", "-111.926", "temperature", 57.0)),
+        responses.get("results"));
+
+    // Two distinct points, which share one forecast
+    assertEquals(2, this.paths.stream().filter(path -> path.startsWith("/api/points/")).count());
+    assertEquals(1, this.paths.stream().filter(path -> path.equals("/api/forecast")).count());
+  }
+
+  /**
+   * Tests that a batch against a stub that answers too slowly fails its pending points once its
+   * deadline passes, or at once if no place to wait is free, while still answering cached points
+   */
+  @Test
+  public void testDeadlineAndWaitingCap() throws IOException {
+    String port = String.valueOf(this.stub.getAddress().getPort());
+    TtlCache<String, String> forecastURLs = new TtlCache<>(Duration.ofHours(1), 10);
+    TtlCache<String, Integer> temperatures = new TtlCache<>(Duration.ofHours(1), 10);
+    forecastURLs.put("41.824,-71.4128", "http://localhost:" + port + "/api/forecast");
+    temperatures.put("http://localhost:" + port + "/api/forecast", 57);
+    WeatherHandler weather =
+        new WeatherHandler(
+            WeatherHandler.newClient(Duration.ofSeconds(1), 2),
+            URI.create("http://localhost:" + port + "/slow/"),
+            Duration.ofSeconds(5),
+            forecastURLs,
+            temperatures);
+    Spark.get("weather/slowbatch", new WeatherBatchHandler(weather, 2, Duration.ofMillis(300)));
+    List<Object> expected =
+        List.of(
+            Map.of("result", "success", "lat", "41.824", "lon", "-71.4128", "temperature", 57.0),
+            Map.of("result", "error_datasource", "lat", "33.4942", "lon", "-111.926"),
+            Map.of("result", "error_datasource", "lat", "40.7128", "lon", "-74.006"),
+            Map.of("result", "error_datasource", "lat", "47.6062", "lon", "-122.3321"));
+    String query = "?points=41.824,-71.4128;33.4942,-111.926;40.7128,-74.006;47.6062,-122.3321";
+    try {
+      long start = System.nanoTime();
+      assertEquals(expected, batch("slowbatch", query).get("results"));
+      // The stub takes 2s for each point, and only two are looked up at once
+      assertTrue(System.nanoTime() - start < Duration.ofMillis(1500).toNanos());
+
+      // With every place to wait taken, the batch answers only its cached point, without waiting
+      int taken = 0;
+      while (weather.startWaiting()) {
+        taken++;
+      }
+      try {
+        start = System.nanoTime();
+        assertEquals(expected, batch("slowbatch", query).get("results"));
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(250).toNanos());
+      } finally {
+        for (int i = 0; i < taken; i++) {
+          weather.stopWaiting();
+        }
+      }
+    } finally {
+      Spark.unmap("/weather/slowbatch");
+    }
+  }
+
+  /** Tests that a batch without points fails as a whole */
+  @Test
+  public void testNoPoints() throws IOException {
+    assertEquals(Map.of("result", "error_bad_request"), batch(""));
+  }
+}
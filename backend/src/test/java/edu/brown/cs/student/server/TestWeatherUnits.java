@@ -1,12 +1,31 @@
 package edu.brown.cs.student.server;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.squareup.moshi.Moshi;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import okio.Buffer;
@@ -42,26 +61,304 @@ public class TestWeatherUnits {
     Spark.init();
     Spark.awaitInitialization();
 
-    String lat = "41.8240";
-    String lon = "-71.4128";
-    String website =
-        "http://localhost:" + Spark.port() + "/" + "weather?lat=" + lat + "&lon=" + lon;
+    try {
+      String lat = "41.8240";
+      String lon = "-71.4128";
+      String website =
+          "http://localhost:" + Spark.port() + "/" + "weather?lat=" + lat + "&lon=" + lon;
 
-    URL requestURL = new URL(website);
-    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
-    clientConnection.connect();
-    assertEquals(200, clientConnection.getResponseCode());
+      URL requestURL = new URL(website);
+      HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+      clientConnection.connect();
+      assertEquals(200, clientConnection.getResponseCode());
 
-    Moshi moshi = new Moshi.Builder().build();
-    Map<String, Object> responses =
-        moshi.adapter(Map.class).fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
-    Double temperature = (Double) responses.get("temperature");
+      Moshi moshi = new Moshi.Builder().build();
+      Map<String, Object> responses =
+          moshi
+              .adapter(Map.class)
+              .fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+      Double temperature = (Double) responses.get("temperature");
 
-    assertTrue(temperature > -150 && temperature < 150);
+      assertTrue(temperature > -150 && temperature < 150);
 
-    clientConnection.disconnect();
-    Spark.unmap("/weather");
-    Spark.stop();
-    Spark.awaitStop();
+      clientConnection.disconnect();
+    } finally {
+      // Stops the server even if the lookup failed, so later tests can start their own
+      Spark.unmap("/weather");
+      Spark.stop();
+      Spark.awaitStop();
+    }
+  }
+
+  // Forecast of a grid cell centred on (41.824, -71.4128), about 2.2km across
+  private static final String FORECAST =
+      "{\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[-71.4258,41.814],"
+          + "[-71.3998,41.814],[-71.3998,41.834],[-71.4258,41.834],[-71.4258,41.814]]]},"
+          + "\"properties\":{\"periods\":[{\"temperature\":57}]}}";
+
+  /** Answers a request to a stub server with a JSON body */
+  private static void respond(HttpExchange exchange, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /** Starts a stub of the NWS API that reports a temperature of 57 for any point */
+  private static HttpServer startStub(Set<Integer> clientPorts) throws IOException {
+    return startStub(clientPorts, new CopyOnWriteArrayList<>());
+  }
+
+  /**
+   * Starts a stub of the NWS API that reports a temperature of 57 for any point, recording the path
+   * of every request it answers
+   */
+  static HttpServer startStub(Set<Integer> clientPorts, List<String> paths) throws IOException {
+    HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    String base = "http://localhost:" + stub.getAddress().getPort();
+    stub.createContext(
+        "/api/points/",
+        exchange -> {
+          paths.add(exchange.getRequestURI().getPath());
+          clientPorts.add(exchange.getRemoteAddress().getPort());
+          respond(exchange, "{\"properties\":{\"forecast\":\"" + base + "/api/forecast\"}}");
+        });
+    stub.createContext(
+        "/api/forecast",
+        exchange -> {
+          paths.add(exchange.getRequestURI().getPath());
+          clientPorts.add(exchange.getRemoteAddress().getPort());
+          respond(exchange, FORECAST);
+        });
+    stub.createContext(
+        "/slow/points/",
+        exchange -> {
+          try {
+            Thread.sleep(2000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          respond(exchange, "{}");
+        });
+    stub.createContext(
+        "/trickle/points/",
+        exchange -> {
+          // Sends the headers at once, then a byte of the body every 100 milliseconds
+          byte[] body =
+              ("{\"properties\":{\"forecast\":\"" + base + "/api/forecast\"}}")
+                  .getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            for (byte b : body) {
+              out.write(b);
+              out.flush();
+              Thread.sleep(100);
+            }
+          } catch (InterruptedException | IOException e) {
+            // The client gave up on the response
+          }
+        });
+    stub.start();
+    return stub;
+  }
+
+  /** Tests that lookups against a stub of the NWS API reuse a single connection */
+  @Test
+  public void testSharedClient() throws Exception {
+    Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    HttpServer stub = startStub(clientPorts);
+    try {
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/api");
+      WeatherHandler handler = new WeatherHandler(client, base, Duration.ofSeconds(5));
+
+      assertEquals(57, handler.getTemperature("41.824", "-71.4128"));
+      assertEquals(57, handler.getTemperature("33.4942", "-111.926"));
+      // Four requests, kept alive on one connection
+      assertEquals(1, clientPorts.size());
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /** Tests that a lookup the stub does not answer in time fails rather than hanging */
+  @Test
+  public void testRequestTimeout() throws Exception {
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet());
+    try {
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/slow/");
+      WeatherHandler handler = new WeatherHandler(client, base, Duration.ofMillis(200));
+      assertThrows(HttpTimeoutException.class, () -> handler.getTemperature("41.824", "-71.4128"));
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /** Tests that a response whose body trickles in after its headers fails within the timeout */
+  @Test
+  public void testTrickledBody() throws Exception {
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet());
+    try {
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/trickle/");
+      WeatherHandler handler = new WeatherHandler(client, base, Duration.ofMillis(300));
+      long start = System.nanoTime();
+      assertThrows(HttpTimeoutException.class, () -> handler.getTemperature("41.824", "-71.4128"));
+      // The body would take several seconds to arrive in full
+      assertTrue(System.nanoTime() - start < 2_000_000_000L);
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /**
+   * Tests that an asynchronous lookup returns before the stub answers, and fails once it times out
+   */
+  @Test
+  public void testAsyncLookup() throws Exception {
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet());
+    try {
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI slow = URI.create("http://localhost:" + stub.getAddress().getPort() + "/slow/");
+      CompletableFuture<Integer> pending =
+          new WeatherHandler(client, slow, Duration.ofMillis(500))
+              .getTemperatureAsync("41.824", "-71.4128");
+      assertFalse(pending.isDone());
+      ExecutionException e = assertThrows(ExecutionException.class, pending::get);
+      assertTrue(e.getCause() instanceof HttpTimeoutException);
+
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/api");
+      WeatherHandler handler = new WeatherHandler(client, base, Duration.ofSeconds(5));
+      assertEquals(57, handler.getTemperatureAsync("41.824", "-71.4128").get());
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /** Tests that points and forecasts are only requested again once their cached answers expire */
+  @Test
+  public void testCachedLookups() throws Exception {
+    List<String> paths = new CopyOnWriteArrayList<>();
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet(), paths);
+    try {
+      AtomicLong now = new AtomicLong();
+      TtlCache<String, String> forecastURLs = new TtlCache<>(Duration.ofHours(24), 10, now::get);
+      TtlCache<String, Integer> temperatures = new TtlCache<>(Duration.ofMinutes(5), 10, now::get);
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/api");
+      WeatherHandler handler =
+          new WeatherHandler(client, base, Duration.ofSeconds(5), forecastURLs, temperatures);
+
+      // The first lookup asks for the point and then its forecast
+      assertEquals(57, handler.getTemperature("41.824", "-71.4128"));
+      assertEquals(List.of("/api/points/41.824,-71.4128", "/api/forecast"), paths);
+
+      // A repeated lookup is answered from the caches
+      paths.clear();
+      assertEquals(57, handler.getTemperature("41.824", "-71.4128"));
+      assertEquals(List.of(), paths);
+
+      // A new point sharing the forecast only asks for the point
+      assertEquals(57, handler.getTemperature("33.4942", "-111.926"));
+      assertEquals(List.of("/api/points/33.4942,-111.926"), paths);
+
+      // Once the forecast has expired, only the forecast is asked for again
+      paths.clear();
+      now.addAndGet(Duration.ofMinutes(5).toNanos());
+      assertEquals(57, handler.getTemperature("41.824", "-71.4128"));
+      assertEquals(List.of("/api/forecast"), paths);
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /** Tests that a point near a cell whose forecast was fetched is answered without asking for it */
+  @Test
+  public void testNearbyCell() throws Exception {
+    List<String> paths = new CopyOnWriteArrayList<>();
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet(), paths);
+    try {
+      HttpClient client = WeatherHandler.newClient(Duration.ofSeconds(1), 1);
+      URI base = URI.create("http://localhost:" + stub.getAddress().getPort() + "/api");
+      WeatherHandler handler = new WeatherHandler(client, base, Duration.ofSeconds(5));
+      assertEquals(57, handler.getTemperature("41.824", "-71.4128"));
+      assertEquals(2, paths.size());
+
+      // About 400m from the centroid of the cell, so nothing is asked for
+      paths.clear();
+      assertEquals(57, handler.getTemperature("41.8275", "-71.415"));
+      assertEquals(List.of(), paths);
+
+      // About 3km away, which may lie in another cell
+      assertEquals(57, handler.getTemperature("41.851", "-71.4128"));
+      assertEquals(List.of("/api/points/41.851,-71.4128"), paths);
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  /** Tests that a cached point is answered while every place for a waiting lookup is taken */
+  @Test
+  public void testCachedWhileBusy() throws Exception {
+    HttpServer stub = startStub(ConcurrentHashMap.newKeySet());
+    Spark.port(0);
+    Logger.getLogger("").setLevel(Level.WARNING);
+    try {
+      // The stub answers nothing under /slow/ in time, so only the cached point can be answered
+      String port = String.valueOf(stub.getAddress().getPort());
+      TtlCache<String, String> forecastURLs = new TtlCache<>(Duration.ofHours(1), 10);
+      TtlCache<String, Integer> temperatures = new TtlCache<>(Duration.ofHours(1), 10);
+      forecastURLs.put("41.824,-71.4128", "http://localhost:" + port + "/api/forecast");
+      temperatures.put("http://localhost:" + port + "/api/forecast", 57);
+      WeatherHandler handler =
+          new WeatherHandler(
+              WeatherHandler.newClient(Duration.ofSeconds(1), 1),
+              URI.create("http://localhost:" + port + "/slow/"),
+              Duration.ofSeconds(5),
+              forecastURLs,
+              temperatures);
+      int taken = 0;
+      while (handler.startWaiting()) {
+        taken++;
+      }
+      assertEquals(WeatherHandler.MAX_WAITING_LOOKUPS, taken);
+
+      Spark.get("weather", handler);
+      Spark.init();
+      Spark.awaitInitialization();
+      Moshi moshi = new Moshi.Builder().build();
+      for (String[] expected :
+          new String[][] {
+            {"41.824", "-71.4128", "success"}, {"33.4942", "-111.926", "error_datasource"}
+          }) {
+        URL requestURL =
+            new URL(
+                "http://localhost:"
+                    + Spark.port()
+                    + "/weather?lat="
+                    + expected[0]
+                    + "&lon="
+                    + expected[1]);
+        HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+        Map<String, Object> responses =
+            moshi
+                .adapter(Map.class)
+                .fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+        assertEquals(expected[2], responses.get("result"));
+        clientConnection.disconnect();
+      }
+      for (int i = 0; i < taken; i++) {
+        handler.stopWaiting();
+      }
+    } finally {
+      Spark.unmap("/weather");
+      Spark.stop();
+      Spark.awaitStop();
+      stub.stop(0);
+    }
   }
 }
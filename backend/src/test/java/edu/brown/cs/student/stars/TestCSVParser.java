@@ -1,12 +1,15 @@
 package edu.brown.cs.student.stars;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import edu.brown.cs.student.csv.CSVParser;
 import edu.brown.cs.student.csv.FactoryFailureException;
 import edu.brown.cs.student.csv.IntegerFactory;
 import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.UncheckedFactoryFailureException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -14,6 +17,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
@@ -283,4 +287,41 @@ public class TestCSVParser {
     assertEquals(1, parser.getRowCount()); // Row Count
     assertEquals(5, parser.getColumnCount()); // Column Count
   }
+
+  // ** Tests that iterator() only converts rows as they are consumed */
+  @Test
+  public void testIteratorIsLazy() {
+    String data =
+        "StarID,ProperName,X,Y,Z\n" + "0,Sol,0,0,0\n" + "1,Andreas,282.43485,0.00449,5.36884";
+    StringReader sr = new StringReader(data);
+
+    List<List<String>> seen = new ArrayList<>();
+    CSVParser<Star> parser =
+        new CSVParser<>(
+            sr,
+            row -> {
+              seen.add(row);
+              return new StarFactory().create(row);
+            });
+    Iterator<Star> stars = parser.iterator();
+
+    assertEquals(0, seen.size());
+    assertEquals(new Star(0, "Sol", 0, 0, 0), stars.next());
+    assertEquals(1, seen.size());
+    assertTrue(stars.hasNext());
+    assertEquals(new Star(1, "Andreas", 282.43485, 0.00449, 5.36884), stars.next());
+    assertFalse(stars.hasNext());
+  }
+
+  // ** Tests streaming objects from a CSV, including a factory failure mid-stream */
+  @Test
+  public void testStream() throws FileNotFoundException {
+    CSVParser<Star> parser =
+        new CSVParser<>(new FileReader("data/stars/four-stars.csv"), new StarFactory());
+    assertEquals(4, parser.stream().count());
+
+    CSVParser<Star> improper =
+        new CSVParser<>(new FileReader("data/stars/improper.csv"), new StarFactory());
+    assertThrows(UncheckedFactoryFailureException.class, () -> improper.stream().count());
+  }
 }
@@ -0,0 +1,164 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.CSVRow;
+import edu.brown.cs.student.csv.CSVTokenizer;
+import edu.brown.cs.student.csv.FactoryFailureException;
+import edu.brown.cs.student.csv.ListStringFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+/** Tests the CSVTokenizer class, focusing on RFC 4180 quoting and buffer management */
+public class TestCSVTokenizer {
+
+  /** Tokenizes every record of the given text into lists of Strings */
+  private static List<List<String>> tokenize(String text, int bufferSize) throws IOException {
+    CSVTokenizer tokenizer = new CSVTokenizer(new StringReader(text), bufferSize);
+    List<List<String>> records = new ArrayList<>();
+    CSVRow row;
+    while ((row = tokenizer.next()) != null) {
+      records.add(row.toList());
+    }
+    return records;
+  }
+
+  /** Tests plain records, empty fields, and each kind of line ending */
+  @Test
+  public void testUnquoted() throws IOException {
+    assertEquals(List.of(), tokenize("", 16));
+    assertEquals(List.of(List.of("a", "b")), tokenize("a,b", 16));
+    assertEquals(
+        List.of(List.of("a", "b"), List.of("c", ""), List.of(""), List.of("", "", "d")),
+        tokenize("a,b\r\nc,\r\n\n,,d\r", 16));
+  }
+
+  /** Tests quoted fields containing commas, escaped quotes and line breaks */
+  @Test
+  public void testQuoted() throws IOException {
+    assertEquals(
+        List.of(List.of("Sol, the sun", "say \"hi\"", "line\nbreak", ""), List.of("x")),
+        tokenize("\"Sol, the sun\",\"say \"\"hi\"\"\",\"line\nbreak\",\"\"\nx", 16));
+  }
+
+  /** Tests that malformed quoting is read leniently rather than rejected */
+  @Test
+  public void testMalformedQuotes() throws IOException {
+    assertEquals(List.of(List.of("ab\"c", "d")), tokenize("\"ab\"c,d", 16));
+    assertEquals(List.of(List.of("a,b\n")), tokenize("\"a,b\n", 16));
+    assertEquals(List.of(List.of("a\"b")), tokenize("a\"b", 16));
+  }
+
+  /** Tests records that are longer than the initial buffer */
+  @Test
+  public void testLongRecords() throws IOException {
+    String longField = "x".repeat(1000);
+    String text = "1," + longField + "\n\"" + longField + "\"\"\"," + longField + "\n";
+    assertEquals(
+        List.of(List.of("1", longField), List.of(longField + "\"", longField)), tokenize(text, 16));
+  }
+
+  /** Tests that the row view is reused and fields are read individually */
+  @Test
+  public void testRowView() throws IOException {
+    CSVTokenizer tokenizer = new CSVTokenizer(new StringReader("a,\"b\"\nc"));
+    CSVRow first = tokenizer.next();
+    assertEquals(2, first.size());
+    assertEquals("b", first.get(1));
+    assertEquals(first, tokenizer.next());
+    assertEquals("c", first.get(0));
+    assertNull(tokenizer.next());
+  }
+
+  /** Tests that the parser keeps quoted commas inside one field */
+  @Test
+  public void testParserQuotedComma() throws IOException, FactoryFailureException {
+    String data = "StarID,ProperName,X,Y,Z\n" + "0,\"Sol, the sun\",0,0,0";
+    CSVParser<List<String>> parser =
+        new CSVParser<>(new StringReader(data), new ListStringFactory());
+    assertEquals(List.of(List.of("0", "Sol, the sun", "0", "0", "0")), parser.create());
+  }
+
+  /** Tests that numeric fields parse exactly as Long.parseLong and Double.parseDouble do */
+  @Test
+  public void testNumericFields() throws IOException {
+    String[] values = {
+      "0",
+      "-0",
+      "+7",
+      "42",
+      "-123456789012345678",
+      "9223372036854775807",
+      "-9223372036854775808",
+      "1.5",
+      "282.43485",
+      "-15.24144",
+      "0.00449",
+      ".5",
+      "5.",
+      "1e3",
+      "2.5E-7",
+      "1e400",
+      "4.9e-324",
+      "123456789012345678901234567890",
+      "0.1234567890123456789",
+      "NaN",
+      "-Infinity",
+      "1.5d",
+      "0x1p3",
+      "",
+      "-",
+      ".",
+      "1e",
+      "abc",
+      "1,5",
+      " 2 "
+    };
+    Random random = new Random(0);
+    List<String> fields = new ArrayList<>(List.of(values));
+    for (int i = 0; i < 1000; i++) {
+      fields.add(Long.toString(random.nextLong() >> random.nextInt(64)));
+      fields.add(Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20))));
+      fields.add(Double.toString(Math.round(random.nextDouble() * 1e8) / 1e5));
+    }
+
+    for (String field : fields) {
+      CSVRow row = new CSVTokenizer(new StringReader("\"" + field + "\"")).next();
+      assertEquals(parseOrNull(() -> Long.parseLong(field)), parseOrNull(() -> row.getLong(0)));
+      assertEquals(
+          parseOrNull(() -> Double.parseDouble(field)), parseOrNull(() -> row.getDouble(0)), field);
+    }
+  }
+
+  /** Returns the parsed value, or null if the value is not a number */
+  private static Object parseOrNull(Supplier<Object> parse) {
+    try {
+      return parse.get();
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** Tests that StarFactory builds the same stars from a CSVRow as from a List of Strings */
+  @Test
+  public void testStarFactoryFields() throws IOException, FactoryFailureException {
+    String data = "0,Sol,0,0,0\n" + "1,\"Andreas\",282.43485,0.00449,-5.36884\n";
+    CSVTokenizer tokenizer = new CSVTokenizer(new StringReader(data));
+    StarFactory sf = new StarFactory();
+    CSVRow row;
+    while ((row = tokenizer.next()) != null) {
+      assertEquals(sf.create(row.toList()), sf.create(row));
+    }
+
+    CSVRow improper = new CSVTokenizer(new StringReader("0,Sol,0,zero,0")).next();
+    assertThrows(FactoryFailureException.class, () -> sf.create(improper));
+  }
+}
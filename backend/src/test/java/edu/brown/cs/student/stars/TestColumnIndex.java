@@ -0,0 +1,116 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.ColumnIndex;
+import edu.brown.cs.student.csv.ColumnarTable;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the ColumnIndex class, checking equality and range lookups against rows worked out by hand
+ */
+public class TestColumnIndex {
+  private static final List<List<String>> ROWS =
+      List.of(
+          List.of("0", "Sol", "10"),
+          List.of("1", "", "-2.5"),
+          List.of("2", "Rory", ""),
+          List.of("3", "Sol"),
+          List.of("4", "Andy", "10"),
+          List.of("5"));
+
+  /** Tests equality lookups, which match values exactly as written */
+  @Test
+  public void testEqualTo() {
+    ColumnarTable table = ColumnarTable.fromRows(ROWS);
+    assertArrayEquals(new int[] {0, 3}, table.getIndex(1).equalTo("Sol"));
+    assertArrayEquals(new int[] {1}, table.getIndex(1).equalTo(""));
+    assertArrayEquals(new int[] {}, table.getIndex(1).equalTo("sol"));
+    // Short rows have no value to match, not even an empty one
+    assertArrayEquals(new int[] {2}, table.getIndex(2).equalTo(""));
+    assertArrayEquals(new int[] {0, 4}, table.getIndex(2).equalTo("10"));
+    assertArrayEquals(new int[] {}, table.getIndex(2).equalTo("10.0"));
+  }
+
+  /** Tests range lookups over numbers, which compare by value even in a column with empty values */
+  @Test
+  public void testBetweenNumbers() {
+    ColumnarTable table = ColumnarTable.fromRows(ROWS);
+    ColumnIndex index = table.getIndex(2);
+    assertArrayEquals(new int[] {0, 1, 4}, index.between(null, null));
+    assertArrayEquals(new int[] {1}, index.between("-3", "9.5"));
+    assertArrayEquals(new int[] {0, 4}, index.between("10", "10"));
+    assertArrayEquals(new int[] {0, 4}, index.between("2", null));
+    assertArrayEquals(new int[] {}, index.between("11", "2"));
+    assertArrayEquals(new int[] {1, 2, 3, 4, 5}, table.getIndex(0).between("1", "5.0"));
+    assertThrows(IllegalArgumentException.class, () -> index.between("ten", null));
+  }
+
+  /** Tests range lookups over text, which compare lexicographically */
+  @Test
+  public void testBetweenText() {
+    ColumnIndex index = ColumnarTable.fromRows(ROWS).getIndex(1);
+    assertArrayEquals(new int[] {0, 2, 3, 4}, index.between(null, null));
+    assertArrayEquals(new int[] {2, 4}, index.between("A", "S"));
+    assertArrayEquals(new int[] {0, 3}, index.between("Sol", null));
+  }
+
+  /** Tests lookups over columns long enough to be sorted in several runs */
+  @Test
+  public void testManyRows() {
+    List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      int value = (i * 7919) % 1000;
+      rows.add(List.of(Integer.toString(value), "star " + value, value + ".5"));
+    }
+    ColumnarTable table = ColumnarTable.fromRows(rows);
+    int[] expected = {320, 641, 999};
+    assertArrayEquals(expected, table.getIndex(0).between("79", "81.5"));
+    assertArrayEquals(new int[] {320, 641}, table.getIndex(0).between("79", "80"));
+    assertArrayEquals(expected, table.getIndex(2).between("78.6", "81.5"));
+    // Text compares character by character, so star 8 comes after star 799
+    assertArrayEquals(new int[] {320, 432, 521}, table.getIndex(1).between("star 799", "star 80"));
+    assertArrayEquals(new int[] {1}, table.getIndex(2).equalTo("919.5"));
+    assertArrayEquals(new int[] {}, table.getIndex(2).equalTo("919.50"));
+  }
+
+  /** Tests that the indexes built for a column are counted in the size of its table */
+  @Test
+  public void testEstimateBytes() {
+    ColumnarTable table = ColumnarTable.fromRows(ROWS);
+    long bytes = table.estimateBytes();
+    ColumnIndex index = table.getIndex(1);
+    assertEquals(0, index.estimateBytes());
+
+    index.equalTo("Sol");
+    long hashed = index.estimateBytes();
+    assertTrue(hashed > 0);
+    index.between(null, null);
+    assertTrue(index.estimateBytes() > hashed);
+    // Lookups after the first of each kind build nothing more
+    index.equalTo("Rory");
+    index.between("A", null);
+    assertEquals(bytes + index.estimateBytes(), table.estimateBytes());
+  }
+
+  /** Tests that an index is kept with its table and dropped when another table is published */
+  @Test
+  public void testDroppedOnLoad() {
+    CSVData data = new CSVData();
+    data.setData(ROWS);
+    ColumnIndex index = data.getTable().getIndex(1);
+    assertSame(index, data.getTable().getIndex(1));
+
+    data.setData(ROWS.subList(0, 2));
+    assertNotSame(index, data.getTable().getIndex(1));
+    assertArrayEquals(new int[] {0}, data.getTable().getIndex(1).equalTo("Sol"));
+  }
+}
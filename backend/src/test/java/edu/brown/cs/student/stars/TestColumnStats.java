@@ -0,0 +1,102 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.ColumnStats;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.ListStringFactory;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the ColumnStats class, checking the statistics of star data against values worked out by
+ * hand
+ */
+public class TestColumnStats {
+
+  /** Loads a file from the stars folder into a table */
+  private static ColumnarTable load(String filepath) throws IOException {
+    return new CSVParser<>(new FileReader(filepath), new ListStringFactory()).createTable();
+  }
+
+  /** Tests the statistics of integer, text and decimal columns */
+  @Test
+  public void testTenStars() throws IOException {
+    List<ColumnStats> stats = load("data/stars/ten-star.csv").getColumnStats();
+    assertEquals(5, stats.size());
+
+    ColumnStats id = stats.get(0);
+    assertEquals("StarID", id.getName());
+    assertEquals("long", id.getType());
+    assertEquals(10, id.getCount());
+    assertEquals(10, id.getDistinct());
+    assertEquals(0, id.getMin());
+    assertEquals(118721, id.getMax());
+
+    ColumnStats name = stats.get(1);
+    assertEquals("string", name.getType());
+    assertFalse(name.isNumeric());
+    assertNull(name.getMean());
+    assertEquals(name.getCount() + name.getEmpty(), 10);
+    assertEquals(0, name.getMissing());
+
+    ColumnStats x = stats.get(2);
+    assertEquals("double", x.getType());
+    assertTrue(x.getMin() <= x.getMean() && x.getMean() <= x.getMax());
+    assertTrue(x.getStddev() > 0);
+  }
+
+  /** Tests the mean and standard deviation of a column of numbers with an empty field */
+  @Test
+  public void testEmptyValues() {
+    ColumnarTable table =
+        ColumnarTable.fromRows(
+            List.of(
+                List.of("2", "a"),
+                List.of("4", "b"),
+                List.of("", "a"),
+                List.of("4"),
+                List.of("5", ""),
+                List.of("5", "c"),
+                List.of("7", "b"),
+                List.of("9", "a")));
+    ColumnStats numbers = table.getColumnStats().get(0);
+    assertEquals("long", numbers.getType());
+    assertEquals(7, numbers.getCount());
+    assertEquals(1, numbers.getEmpty());
+    assertEquals(5, numbers.getDistinct());
+    assertEquals(2, numbers.getMin());
+    assertEquals(9, numbers.getMax());
+    assertEquals(36.0 / 7, numbers.getMean(), 1e-12);
+    double squares = 0;
+    for (double value : new double[] {2, 4, 4, 5, 5, 7, 9}) {
+      squares += (value - 36.0 / 7) * (value - 36.0 / 7);
+    }
+    assertEquals(Math.sqrt(squares / 7), numbers.getStddev(), 1e-12);
+
+    ColumnStats letters = table.getColumnStats().get(1);
+    assertEquals("string", letters.getType());
+    assertEquals(6, letters.getCount());
+    assertEquals(1, letters.getEmpty());
+    assertEquals(1, letters.getMissing());
+    assertEquals(3, letters.getDistinct());
+    // Distinct values are counted by the sketch made while loading, not by another scan
+    assertEquals(table.getDistinctSketch(1).estimate(), letters.getDistinct());
+  }
+
+  /** Tests that the statistics are computed once per table */
+  @Test
+  public void testMemoized() throws IOException {
+    ColumnarTable table = load("data/stars/empty-values.csv");
+    assertSame(table.getColumnStats(), table.getColumnStats());
+    assertEquals(1, table.getColumnStats().get(0).getCount());
+    assertEquals(1, table.getColumnStats().get(3).getEmpty());
+  }
+}
@@ -0,0 +1,223 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.ColumnType;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.ColumnarTableBuilder;
+import edu.brown.cs.student.csv.DictionaryColumn;
+import edu.brown.cs.student.csv.DoubleColumn;
+import edu.brown.cs.student.csv.FactoryFailureException;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.LongColumn;
+import edu.brown.cs.student.csv.MappedCSVLoader;
+import edu.brown.cs.student.csv.StringColumn;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the ColumnarTable class, checking that the types of columns are inferred correctly and that
+ * every value is read back exactly as it was written
+ */
+public class TestColumnarTable {
+
+  /** Tests that star data is split into typed columns */
+  @Test
+  public void testColumnTypes() throws IOException {
+    ColumnarTable table =
+        new CSVParser<>(new FileReader("data/stars/ten-star.csv"), new ListStringFactory())
+            .createTable();
+
+    assertEquals(List.of("StarID", "ProperName", "X", "Y", "Z"), table.getHeader());
+    assertEquals(10, table.getRowCount());
+    assertEquals(5, table.getColumnCount());
+    assertTrue(table.getColumn(0) instanceof LongColumn);
+    assertEquals(ColumnType.STRING, table.getColumn(1).getType());
+    assertTrue(table.getColumn(2) instanceof DoubleColumn);
+    assertEquals(282.43485, ((DoubleColumn) table.getColumn(2)).getDouble(1));
+    assertEquals(List.of("1", "", "282.43485", "0.00449", "5.36884"), table.getRow(1));
+  }
+
+  /** Tests values that look numeric but could not be written back the same way as numbers */
+  @Test
+  public void testRoundTrip() {
+    List<List<String>> rows = new ArrayList<>();
+    for (String value :
+        new String[] {"0", "-1", "0.50", "-0.001", "10.0", "+1", "007", "-0", "1.", ".5", "1e3"}) {
+      rows.add(List.of(value, value.replace("e", ".")));
+    }
+    ColumnarTable table = ColumnarTable.fromRows(rows);
+
+    assertEquals(rows, table.rows());
+    assertEquals(ColumnType.STRING, table.getColumn(0).getType());
+    assertEquals(rows.subList(0, 5), ColumnarTable.fromRows(rows.subList(0, 5)).rows());
+    assertEquals(
+        ColumnType.DOUBLE, ColumnarTable.fromRows(rows.subList(0, 5)).getColumn(0).getType());
+  }
+
+  /** Tests that repeated text is dictionary encoded and unique text is not */
+  @Test
+  public void testDictionaryEncoding() {
+    List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(List.of(i % 2 == 0 ? "red" : "blue", "star " + i));
+    }
+    ColumnarTable table = ColumnarTable.fromRows(rows);
+
+    assertTrue(table.getColumn(0) instanceof DictionaryColumn);
+    assertEquals(2, ((DictionaryColumn) table.getColumn(0)).getDictionarySize());
+    assertTrue(table.getColumn(1) instanceof StringColumn);
+    assertEquals(rows, table.rows());
+  }
+
+  /** Tests rows of different widths */
+  @Test
+  public void testRaggedRows() {
+    List<List<String>> rows = List.of(List.of("1"), List.of("2", "x", "3"), List.of());
+    ColumnarTable table = ColumnarTable.fromRows(rows);
+
+    assertEquals(3, table.getColumnCount());
+    assertEquals(rows, table.rows());
+    assertFalse(table.hasValue(0, 1));
+    assertTrue(table.getColumn(2) instanceof LongColumn);
+  }
+
+  /** Tests joining builders whose columns were inferred as different types */
+  @Test
+  public void testAddAll() {
+    ColumnarTableBuilder first = new ColumnarTableBuilder();
+    first.addRow(List.of("1", "2", "3"));
+    ColumnarTableBuilder second = new ColumnarTableBuilder();
+    second.addRow(List.of("4", "five", "6.5", "7"));
+    ColumnarTableBuilder third = new ColumnarTableBuilder();
+    third.addRow(List.of("8"));
+    first.addAll(second);
+    first.addAll(third);
+    ColumnarTable table = first.build();
+
+    assertEquals(
+        List.of(List.of("1", "2", "3"), List.of("4", "five", "6.5", "7"), List.of("8")),
+        table.rows());
+    assertEquals(ColumnType.LONG, table.getColumn(0).getType());
+    assertEquals(ColumnType.STRING, table.getColumn(1).getType());
+    assertEquals(ColumnType.DOUBLE, table.getColumn(2).getType());
+  }
+
+  /** Tests that loading a table in parallel chunks matches parsing it sequentially */
+  @Test
+  public void testMappedLoadTable() throws IOException, FactoryFailureException {
+    for (String filepath :
+        new String[] {
+          "data/stars/ten-star.csv", "data/stars/improper.csv", "data/stars/empty.csv"
+        }) {
+      MappedCSVLoader<List<String>> loader =
+          new MappedCSVLoader<>(
+              Path.of(filepath), new ListStringFactory(), ForkJoinPool.commonPool(), 16);
+      List<List<String>> rows =
+          new CSVParser<>(new FileReader(filepath), new ListStringFactory()).create();
+      assertEquals(rows, loader.loadTable().rows(), filepath);
+    }
+  }
+
+  /** Tests that columns take less memory than a List of Strings per row */
+  @Test
+  public void testEstimateBytes() {
+    List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(List.of(Integer.toString(i), i % 3 == 0 ? "Sol" : "Rory", "1.25", "-0.5", "300"));
+    }
+    // Each row as a List of Strings takes at least one String per value
+    long rowBytes = 0;
+    for (List<String> row : rows) {
+      rowBytes += 40 + 8L * row.size();
+      for (String value : row) {
+        rowBytes += 56 + 2L * value.length();
+      }
+    }
+    assertTrue(ColumnarTable.fromRows(rows).estimateBytes() * 5 < rowBytes);
+  }
+
+  /** Tests that CSVData shares its published table with readers instead of copying it */
+  @Test
+  public void testSharedSnapshot() {
+    CSVData data = new CSVData();
+    long version = data.getVersion();
+    data.setData(List.of(List.of("1", "Sol"), List.of("2", "Rory")));
+    assertEquals(version + 1, data.getVersion());
+
+    ColumnarTable table = data.getTable();
+    List<List<String>> rows = data.getData();
+    assertEquals(List.of(List.of("1", "Sol"), List.of("2", "Rory")), rows);
+    assertThrows(UnsupportedOperationException.class, () -> rows.set(0, List.of()));
+    assertThrows(UnsupportedOperationException.class, () -> rows.get(0).set(0, "3"));
+
+    // Readers of the old table are unaffected by a new one being published
+    data.setData(List.of(List.of("3", "Andreas")));
+    assertEquals(version + 2, data.getVersion());
+    assertEquals(2, rows.size());
+    assertEquals(2, table.getRowCount());
+    assertEquals(List.of(List.of("3", "Andreas")), data.getData());
+  }
+
+  /** Tests that readers on other threads always see a table together with its own version */
+  @Test
+  public void testConcurrentPublish() throws Exception {
+    CSVData data = new CSVData();
+    int loads = 2000;
+    List<ColumnarTable> tables = new ArrayList<>();
+    for (int i = 1; i <= loads; i++) {
+      List<List<String>> rows = new ArrayList<>();
+      for (int j = 0; j < i % 50 + 1; j++) {
+        rows.add(List.of(Integer.toString(i), "Sol"));
+      }
+      tables.add(ColumnarTable.fromRows(rows));
+    }
+
+    ExecutorService readers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int r = 0; r < 4; r++) {
+        results.add(
+            readers.submit(
+                () -> {
+                  int checked = 0;
+                  long last = 0;
+                  while (last < loads) {
+                    CSVSnapshot snapshot = data.getSnapshot();
+                    assertTrue(snapshot.getVersion() >= last);
+                    last = snapshot.getVersion();
+                    if (snapshot.isLoaded()) {
+                      // The table was published with the version that numbers its rows
+                      assertEquals(Long.toString(last), snapshot.getRows().get(0).get(0));
+                      assertEquals(last % 50 + 1, snapshot.getTable().getRowCount());
+                      checked++;
+                    }
+                  }
+                  return checked;
+                }));
+      }
+      for (ColumnarTable table : tables) {
+        data.publish(table);
+      }
+      for (Future<Integer> result : results) {
+        assertTrue(result.get() > 0);
+      }
+    } finally {
+      readers.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVSnapshot;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.DatasetRegistry;
+import edu.brown.cs.student.csv.LoadProgress;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the DatasetRegistry class, checking that unchanged files are served from memory, that only
+ * the rows appended to a file are parsed again, and that the least recently used datasets are
+ * evicted to stay within the memory budget
+ */
+public class TestDatasetRegistry {
+
+  /** Writes a CSV with the given number of rows to a temporary file */
+  private static Path writeCSV(int rows) throws IOException {
+    StringBuilder csv = new StringBuilder("StarID,ProperName,X,Y,Z\n");
+    for (int i = 0; i < rows; i++) {
+      csv.append(i).append(",star ").append(i).append(",1.5,2.5,3.5\n");
+    }
+    Path file = Files.createTempFile("stars", ".csv");
+    file.toFile().deleteOnExit();
+    Files.writeString(file, csv.toString());
+    return file;
+  }
+
+  /** Tests that loading an unchanged file again returns the resident table */
+  @Test
+  public void testCacheHit() throws IOException {
+    DatasetRegistry registry = new DatasetRegistry();
+    CSVSnapshot first = registry.load("data/stars/ten-star.csv");
+    CSVSnapshot second = registry.load("data/stars/../stars/ten-star.csv");
+
+    assertSame(first, second);
+    assertSame(first, registry.get("data/stars/ten-star.csv"));
+    assertTrue(first.isLoaded());
+    assertEquals(10, first.getTable().getRowCount());
+    assertEquals(1, registry.size());
+  }
+
+  /** Tests that a file is parsed again once it has changed */
+  @Test
+  public void testChangedFile() throws IOException {
+    Path file = writeCSV(3);
+    DatasetRegistry registry = new DatasetRegistry();
+    CSVSnapshot first = registry.load(file.toString());
+
+    Files.writeString(file, "StarID,ProperName,X,Y,Z\n0,Sol,0,0,0\n");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+    CSVSnapshot second = registry.load(file.toString());
+
+    assertNotSame(first, second);
+    assertTrue(second.getVersion() > first.getVersion());
+    assertEquals(List.of("0", "Sol", "0", "0", "0"), second.getRows().get(0));
+    assertEquals(1, registry.size());
+    assertEquals(second.getTable().estimateBytes(), registry.getResidentBytes());
+  }
+
+  /** Tests that the least recently used datasets are evicted once over budget */
+  @Test
+  public void testEviction() throws IOException {
+    Path a = writeCSV(1000);
+    Path b = writeCSV(1000);
+    Path c = writeCSV(1000);
+    long tableBytes = new DatasetRegistry().load(a.toString()).getTable().estimateBytes();
+
+    // Room for two of the three tables
+    DatasetRegistry registry = new DatasetRegistry(tableBytes * 2 + tableBytes / 2);
+    registry.load(a.toString());
+    registry.load(b.toString());
+    registry.get(a.toString());
+    registry.load(c.toString());
+
+    assertEquals(2, registry.size());
+    assertNull(registry.get(b.toString()));
+    assertTrue(registry.get(a.toString()) != null && registry.get(c.toString()) != null);
+    assertTrue(registry.getResidentBytes() <= registry.getMemoryBudget());
+  }
+
+  /** Tests that building an index counts towards the budget and can evict other datasets */
+  @Test
+  public void testIndexEviction() throws IOException {
+    Path a = writeCSV(1000);
+    Path b = writeCSV(1000);
+    long tableBytes = new DatasetRegistry().load(a.toString()).getTable().estimateBytes();
+
+    // Room for both tables, but not for them and an index of every column of one
+    DatasetRegistry registry = new DatasetRegistry(tableBytes * 2 + tableBytes / 10);
+    registry.load(a.toString());
+    ColumnarTable table = registry.load(b.toString()).getTable();
+    assertEquals(2, registry.size());
+
+    for (int column = 0; column < 5; column++) {
+      table.getIndex(column).equalTo("1");
+      table.getIndex(column).between(null, null);
+    }
+    assertEquals(table.estimateBytes(), registry.getResidentBytes());
+    assertTrue(table.estimateBytes() > tableBytes);
+    assertEquals(1, registry.size());
+    assertNull(registry.get(a.toString()));
+  }
+
+  /** Tests that a dataset larger than the whole budget is still kept */
+  @Test
+  public void testOverBudget() throws IOException {
+    DatasetRegistry registry = new DatasetRegistry(0);
+    registry.load("data/stars/four-stars.csv");
+    CSVSnapshot snapshot = registry.load("data/stars/ten-star.csv");
+
+    assertEquals(1, registry.size());
+    assertSame(snapshot, registry.get("data/stars/ten-star.csv"));
+    assertNull(registry.get("data/stars/four-stars.csv"));
+  }
+
+  /** Tests that a missing file is reported and not registered */
+  @Test
+  public void testMissingFile() {
+    DatasetRegistry registry = new DatasetRegistry();
+    assertThrows(NoSuchFileException.class, () -> registry.load("data/stars/missing.csv"));
+    assertEquals(0, registry.size());
+  }
+
+  /** Appends text to a file, moving its modification time forward so the change is seen */
+  private static void append(Path file, String text) throws IOException {
+    FileTime modified = Files.getLastModifiedTime(file);
+    Files.writeString(file, text, StandardOpenOption.APPEND);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 60_000));
+  }
+
+  /** Checks that a table matches one loaded from scratch, column types included */
+  private static void assertSameAsFullLoad(Path file, ColumnarTable table) throws IOException {
+    ColumnarTable full = new DatasetRegistry().load(file.toString()).getTable();
+    assertEquals(full.getHeader(), table.getHeader());
+    assertEquals(full.rows(), table.rows());
+    assertEquals(full.getColumnCount(), table.getColumnCount());
+    for (int i = 0; i < full.getColumnCount(); i++) {
+      assertEquals(full.getColumn(i).getType(), table.getColumn(i).getType());
+      assertEquals(
+          full.getDistinctSketch(i).estimate(), table.getDistinctSketch(i).estimate(), 0.5);
+    }
+  }
+
+  /** Tests that only the rows appended to a file are parsed when it is loaded again */
+  @Test
+  public void testAppendedFile() throws IOException {
+    Path file = writeCSV(3);
+    DatasetRegistry registry = new DatasetRegistry();
+    CSVSnapshot first = registry.load(file.toString());
+
+    // New rows that turn an integer column into decimals and add a column
+    append(file, "3,star 3,1.5,2.5,3.5\n4,Sol,0.25,0,0\n5.5,\"Alpha, Centauri\",1,2,3,extra\n");
+    LoadProgress progress = new LoadProgress();
+    CSVSnapshot second = registry.load(file.toString(), progress);
+
+    assertNotSame(first, second);
+    assertTrue(second.getVersion() > first.getVersion());
+    assertEquals(3, first.getTable().getRowCount());
+    assertEquals(6, second.getTable().getRowCount());
+    assertEquals(3, progress.getRowsParsed());
+    assertEquals(progress.getTotalBytes(), progress.getBytesRead());
+    assertEquals(
+        List.of("5.5", "Alpha, Centauri", "1", "2", "3", "extra"), second.getRows().get(5));
+    assertSameAsFullLoad(file, second.getTable());
+    assertEquals(second.getTable().estimateBytes(), registry.getResidentBytes());
+
+    // Appending again builds on the appended table
+    append(file, "6,star 6,1.5,2.5,3.5\n");
+    progress = new LoadProgress();
+    CSVSnapshot third = registry.load(file.toString(), progress);
+    assertEquals(1, progress.getRowsParsed());
+    assertSameAsFullLoad(file, third.getTable());
+  }
+
+  /** Tests that a file changed other than by appending to it is parsed again in full */
+  @Test
+  public void testRewrittenFile() throws IOException {
+    Path file = writeCSV(3);
+    DatasetRegistry registry = new DatasetRegistry();
+    registry.load(file.toString());
+
+    // Same length as the row it replaces, followed by a new row
+    String rewritten = Files.readString(file).replace("1,star 1", "1,star X");
+    Files.writeString(file, rewritten + "3,star 3,1.5,2.5,3.5\n");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+    LoadProgress progress = new LoadProgress();
+    CSVSnapshot snapshot = registry.load(file.toString(), progress);
+
+    assertEquals(4, progress.getRowsParsed());
+    assertEquals("star X", snapshot.getTable().get(1, 1));
+    assertSameAsFullLoad(file, snapshot.getTable());
+  }
+
+  /** Tests that a file whose last line was incomplete is parsed again in full */
+  @Test
+  public void testIncompleteLastLine() throws IOException {
+    Path file = writeCSV(3);
+    append(file, "3,star");
+    DatasetRegistry registry = new DatasetRegistry();
+    assertEquals(List.of("3", "star"), registry.load(file.toString()).getRows().get(3));
+
+    append(file, " 3,1.5,2.5,3.5\n");
+    LoadProgress progress = new LoadProgress();
+    CSVSnapshot snapshot = registry.load(file.toString(), progress);
+
+    assertEquals(4, progress.getRowsParsed());
+    assertEquals(List.of("3", "star 3", "1.5", "2.5", "3.5"), snapshot.getRows().get(3));
+    assertSameAsFullLoad(file, snapshot.getTable());
+  }
+}
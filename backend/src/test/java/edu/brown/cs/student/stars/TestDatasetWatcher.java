@@ -0,0 +1,62 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVData;
+import edu.brown.cs.student.csv.DatasetWatcher;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the DatasetWatcher class, checking that watched files are reloaded when they change and
+ * that the dataset being served is replaced only if it came from the changed file
+ */
+public class TestDatasetWatcher {
+
+  /** Waits up to ten seconds for a condition to hold */
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 1000 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  /** Tests that appending to the file being served publishes its new rows */
+  @Test
+  public void testReloadsAppendedFile() throws IOException, InterruptedException {
+    Path folder = Files.createTempDirectory("stars");
+    Path file = folder.resolve("stars.csv");
+    Path other = folder.resolve("other.csv");
+    Files.writeString(file, "StarID,ProperName\n0,Sol\n");
+    Files.writeString(other, "StarID,ProperName\n1,Rigel\n");
+
+    CSVData data = new CSVData();
+    try (DatasetWatcher watcher = new DatasetWatcher(data, 50)) {
+      data.publish(data.getRegistry().load(file.toString()).getTable());
+      watcher.watch(file.toString());
+      assertTrue(watcher.isWatching(file.toString()));
+      assertFalse(watcher.isWatching(other.toString()));
+
+      Files.writeString(file, "2,Proxima\n", StandardOpenOption.APPEND);
+      await(() -> data.getTable().getRowCount() == 2);
+      assertEquals(List.of("2", "Proxima"), data.getData().get(1));
+
+      // Once another dataset is served, changes to the watched file are only kept resident
+      data.publish(data.getRegistry().load(other.toString()).getTable());
+      Files.writeString(file, "3,Barnard\n", StandardOpenOption.APPEND);
+      await(() -> data.getSnapshot(file.toString()).getTable().getRowCount() == 3);
+      assertEquals(List.of(List.of("1", "Rigel")), data.getData());
+    } finally {
+      Files.delete(file);
+      Files.delete(other);
+      Files.delete(folder);
+    }
+  }
+}
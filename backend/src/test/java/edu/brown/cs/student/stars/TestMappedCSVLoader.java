@@ -0,0 +1,137 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.FactoryFailureException;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.LoadProgress;
+import edu.brown.cs.student.csv.MappedCSVLoader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the MappedCSVLoader class, checking that parsing a file in parallel chunks gives the same
+ * result as the sequential CSVParser
+ */
+public class TestMappedCSVLoader {
+
+  /** Parses a file sequentially with CSVParser, for comparison */
+  private static List<List<String>> parseSequentially(String filepath)
+      throws IOException, FactoryFailureException {
+    return new CSVParser<>(new FileReader(filepath), new ListStringFactory()).create();
+  }
+
+  /** Tests that every file in the stars folder loads the same as with CSVParser */
+  @Test
+  public void testMatchesCSVParser() throws IOException, FactoryFailureException {
+    String[] files = {
+      "data/stars/empty.csv",
+      "data/stars/one-char.csv",
+      "data/stars/one-column.csv",
+      "data/stars/one-star.csv",
+      "data/stars/ten-star.csv",
+      "data/stars/four-stars.csv",
+      "data/stars/improper.csv"
+    };
+    for (String filepath : files) {
+      // A tiny chunk size forces many chunks, even for these small files
+      MappedCSVLoader<List<String>> loader =
+          new MappedCSVLoader<>(
+              Path.of(filepath), new ListStringFactory(), ForkJoinPool.commonPool(), 8);
+      assertEquals(parseSequentially(filepath), loader.load(), filepath);
+    }
+  }
+
+  /** Tests a file with mixed line endings and many more rows than chunks */
+  @Test
+  public void testLineEndings() throws IOException, FactoryFailureException {
+    StringBuilder csv = new StringBuilder("StarID,ProperName,X,Y,Z\r\n");
+    for (int i = 0; i < 1000; i++) {
+      csv.append(i).append(",star ").append(i).append(",1.5,2.5,3.5");
+      csv.append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+    }
+    Path file = Files.createTempFile("stars", ".csv");
+    Files.writeString(file, csv.toString());
+
+    MappedCSVLoader<Star> loader =
+        new MappedCSVLoader<>(file, new StarFactory(), ForkJoinPool.commonPool(), 100);
+    List<Star> stars = loader.load();
+    Files.delete(file);
+
+    assertEquals(1000, stars.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(new Star(i, "star " + i, 1.5, 2.5, 3.5), stars.get(i));
+    }
+  }
+
+  /** Tests that a factory failure inside a chunk is rethrown as a FactoryFailureException */
+  @Test
+  public void testFactoryFailure() {
+    MappedCSVLoader<Star> loader =
+        new MappedCSVLoader<>(Path.of("data/stars/improper.csv"), new StarFactory());
+    assertThrows(FactoryFailureException.class, loader::load);
+  }
+
+  /** Tests that a missing file is reported as an IOException */
+  @Test
+  public void testMissingFile() {
+    MappedCSVLoader<Star> loader =
+        new MappedCSVLoader<>(Path.of("data/stars/random.csv"), new StarFactory());
+    assertThrows(IOException.class, loader::load);
+  }
+
+  /** Tests quoted fields with line breaks that straddle the chunk boundaries */
+  @Test
+  public void testQuotedLineBreaks() throws IOException, FactoryFailureException {
+    StringBuilder csv = new StringBuilder("StarID,\"Proper\nName\",X,Y,Z\n");
+    for (int i = 0; i < 200; i++) {
+      csv.append(i).append(",\"star\n\"\"").append(i).append("\"\",\r\nsky\",1,2,3\n");
+    }
+    Path file = Files.createTempFile("stars", ".csv");
+    Files.writeString(file, csv.toString());
+
+    MappedCSVLoader<List<String>> loader =
+        new MappedCSVLoader<>(file, new ListStringFactory(), ForkJoinPool.commonPool(), 7);
+    List<List<String>> rows = loader.load();
+    assertEquals(parseSequentially(file.toString()), rows);
+    Files.delete(file);
+
+    assertEquals(200, rows.size());
+    assertEquals(List.of("7", "star\n\"7\",\r\nsky", "1", "2", "3"), rows.get(7));
+  }
+
+  /** Tests that the progress of a load ends with the whole file read and every row parsed */
+  @Test
+  public void testProgress() throws IOException {
+    Path file = Path.of("data/stars/ten-star.csv");
+    MappedCSVLoader<List<String>> loader =
+        new MappedCSVLoader<>(file, new ListStringFactory(), ForkJoinPool.commonPool(), 16);
+    LoadProgress progress = new LoadProgress();
+    assertEquals(10, loader.loadTable(progress).getRowCount());
+    assertEquals(Files.size(file), progress.getTotalBytes());
+    assertEquals(Files.size(file), progress.getBytesRead());
+    assertEquals(10, progress.getRowsParsed());
+  }
+
+  /** Tests that a cancelled load gives up instead of returning a table */
+  @Test
+  public void testCancelled() {
+    MappedCSVLoader<List<String>> loader =
+        new MappedCSVLoader<>(
+            Path.of("data/stars/ten-star.csv"),
+            new ListStringFactory(),
+            ForkJoinPool.commonPool(),
+            16);
+    LoadProgress progress = new LoadProgress();
+    progress.cancel();
+    assertThrows(CancellationException.class, () -> loader.loadTable(progress));
+  }
+}
@@ -0,0 +1,164 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.RowFilter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the RowFilter class, checking the rows selected from star data against rows worked out by
+ * hand, and a parallel scan of a large table against a row-at-a-time one
+ */
+public class TestRowFilter {
+
+  /** Loads ten-star.csv, whose names are stored as a dictionary and coordinates as decimals */
+  private static ColumnarTable tenStars() throws IOException {
+    return new CSVParser<>(new FileReader("data/stars/ten-star.csv"), new ListStringFactory())
+        .createTable();
+  }
+
+  private static int[] select(String filter, ColumnarTable table) {
+    return RowFilter.parse(filter, table).select(table);
+  }
+
+  /** Tests each comparison operator on numbers and text */
+  @Test
+  public void testComparisons() throws IOException {
+    ColumnarTable table = tenStars();
+    assertArrayEquals(new int[] {0}, select("ProperName = Sol", table));
+    assertArrayEquals(new int[] {1, 2, 3, 9}, select("ProperName = \"\"", table));
+    assertArrayEquals(new int[] {6, 7}, select("ProperName ^= \"Rigel Kentaurus\"", table));
+    assertArrayEquals(new int[] {4, 5, 6, 7, 8, 9}, select("StarID > 3", table));
+    assertArrayEquals(new int[] {0, 1, 2, 3}, select("StarID<=3", table));
+    assertArrayEquals(new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9}, select("0 != 0", table));
+    assertArrayEquals(new int[] {5, 6, 7, 8, 9}, select("X < -0.0", table));
+    assertArrayEquals(new int[] {0}, select("X = -0", table));
+    assertArrayEquals(new int[] {3}, select("Z >= 200.5", table));
+    // Numbers may be matched by prefix, as written in the file
+    assertArrayEquals(new int[] {5, 6, 7}, select("StarID ^= 7", table));
+  }
+
+  /** Tests AND, OR and parentheses, where AND binds more tightly */
+  @Test
+  public void testCombinations() throws IOException {
+    ColumnarTable table = tenStars();
+    assertArrayEquals(
+        new int[] {0, 6, 7}, select("ProperName = Sol OR X < -0.5 AND Y < -0.4", table));
+    assertArrayEquals(
+        new int[] {6, 7}, select("(ProperName = Sol OR X < -0.5) and Y < -0.4", table));
+    assertArrayEquals(new int[] {}, select("StarID > 100000 AND ProperName != \"\"", table));
+  }
+
+  /** Tests that rows too short to have a value never match a comparison of it */
+  @Test
+  public void testMissingValues() {
+    ColumnarTable table =
+        ColumnarTable.fromRows(List.of(List.of("1", "a"), List.of("2"), List.of("3", "")));
+    assertArrayEquals(new int[] {2}, select("1 = \"\"", table));
+    assertArrayEquals(new int[] {0, 2}, select("1 != b", table));
+    assertArrayEquals(new int[] {0, 1, 2}, select("0 >= 1 OR 1 = a", table));
+  }
+
+  /**
+   * Tests that a column of numbers with empty cells, which is stored as text, still compares by
+   * value, and that its empty cells match no comparison of order
+   */
+  @Test
+  public void testNumbersWithEmptyValues() throws IOException {
+    ColumnarTable table =
+        ColumnarTable.fromRows(
+            List.of(List.of("10"), List.of("9"), List.of(""), List.of("100"), List.of("-2.5")));
+    assertArrayEquals(new int[] {0, 3}, select("0 > 9", table));
+    assertArrayEquals(new int[] {0, 1, 3}, select("0 >= 9", table));
+    assertArrayEquals(new int[] {1, 4}, select("0 < 10", table));
+    assertArrayEquals(new int[] {4}, select("0 <= -2.5", table));
+    assertArrayEquals(new int[] {2}, select("0 = \"\"", table));
+    assertThrows(IllegalArgumentException.class, () -> select("0 > abc", table));
+
+    // The StarID of Sol is empty in empty-values.csv
+    ColumnarTable stars =
+        new CSVParser<>(new FileReader("data/stars/empty-values.csv"), new ListStringFactory())
+            .createTable();
+    assertArrayEquals(new int[] {1}, select("StarID > 9", stars));
+    assertArrayEquals(new int[] {}, select("StarID < 9", stars));
+  }
+
+  /**
+   * Tests that = and != compare numbers by value whether or not an empty cell keeps the column from
+   * being stored as numbers
+   */
+  @Test
+  public void testEqualityWithEmptyValues() {
+    ColumnarTable full =
+        ColumnarTable.fromRows(List.of(List.of("1"), List.of("2"), List.of("1.0"), List.of("3")));
+    ColumnarTable withEmpty =
+        ColumnarTable.fromRows(List.of(List.of("1"), List.of("2"), List.of("1.0"), List.of("")));
+    assertArrayEquals(new int[] {0, 2}, select("0 = 1.0", full));
+    assertArrayEquals(new int[] {0, 2}, select("0 = 1.0", withEmpty));
+    assertArrayEquals(new int[] {0, 2}, select("0 = 1", withEmpty));
+    assertArrayEquals(new int[] {1, 3}, select("0 != 1", full));
+    // An empty cell is not a number, so it is only found by comparing with empty text
+    assertArrayEquals(new int[] {1}, select("0 != 1", withEmpty));
+    assertArrayEquals(new int[] {3}, select("0 = \"\"", withEmpty));
+    assertArrayEquals(new int[] {0, 1, 2}, select("0 != \"\"", withEmpty));
+    assertThrows(IllegalArgumentException.class, () -> select("0 = one", withEmpty));
+  }
+
+  /** Tests that malformed filters are rejected */
+  @Test
+  public void testMalformed() throws IOException {
+    ColumnarTable table = tenStars();
+    String[] filters = {
+      "",
+      "StarID",
+      "StarID >",
+      "StarID > 1 AND",
+      "(StarID > 1",
+      "StarID > 1)",
+      "Mass > 1",
+      "StarID > one",
+      "ProperName = \"Sol",
+      "StarID = = 1",
+      "7 > 1"
+    };
+    for (String filter : filters) {
+      assertThrows(IllegalArgumentException.class, () -> RowFilter.parse(filter, table), filter);
+    }
+  }
+
+  /** Tests a table large enough to be split across many tasks against a row-at-a-time scan */
+  @Test
+  public void testParallelScan() {
+    List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < 200003; i++) {
+      rows.add(List.of(Integer.toString(i), "star " + (i % 97), Double.toString(i % 1000 / 8.0)));
+    }
+    ColumnarTable table = ColumnarTable.fromRows(rows);
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    int[] expected =
+        IntStream.range(0, rows.size())
+            .filter(i -> (i % 1000 / 8.0 >= 100 && i < 150000) || i % 97 == 5)
+            .toArray();
+    assertArrayEquals(
+        expected,
+        RowFilter.parse("2 >= 100 AND 0 < 150000 OR 1 = \"star 5\"", table).select(table, pool));
+
+    expected =
+        IntStream.range(0, rows.size())
+            .filter(i -> (i % 97 == 1 || (i % 97 >= 10 && i % 97 < 20)) && i % 1000 / 8.0 < 10)
+            .toArray();
+    assertArrayEquals(
+        expected, RowFilter.parse("1 ^= \"star 1\" AND 2 < 10", table).select(table, pool));
+  }
+}
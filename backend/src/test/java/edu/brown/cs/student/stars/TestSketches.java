@@ -0,0 +1,111 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.CSVParser;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.HyperLogLog;
+import edu.brown.cs.student.csv.KllSketch;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.MappedCSVLoader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the HyperLogLog and KllSketch classes through the sketches made while loading a table,
+ * checking that estimates stay within three times their documented error
+ */
+public class TestSketches {
+  private static final int ROWS = 100000;
+
+  /** Writes a file of star IDs in random order, with 1000 distinct names and a text column */
+  private static Path writeStars() throws IOException {
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < ROWS; i++) {
+      ids.add(i);
+    }
+    Collections.shuffle(ids, new Random(42));
+    StringBuilder csv = new StringBuilder("StarID,ProperName,Note\n");
+    for (int id : ids) {
+      csv.append(id).append(",star ").append(id % 1000).append(",");
+      csv.append(id % 7 == 0 ? "" : id % 2 == 0 ? "bright" : "dim").append("\n");
+    }
+    Path file = Files.createTempFile("stars", ".csv");
+    Files.writeString(file, csv.toString());
+    return file;
+  }
+
+  /** Tests the estimates of a table loaded sequentially */
+  @Test
+  public void testEstimates() throws IOException {
+    Path file = writeStars();
+    ColumnarTable table =
+        new CSVParser<>(new FileReader(file.toFile()), new ListStringFactory()).createTable();
+    Files.delete(file);
+
+    double distinctError = 3 * HyperLogLog.RELATIVE_ERROR;
+    assertEquals(ROWS, table.getDistinctSketch(0).estimate(), ROWS * distinctError);
+    assertEquals(1000, table.getDistinctSketch(1).estimate(), 1000 * distinctError);
+    // Small counts are exact in practice, and empty values are not counted
+    assertEquals(2, table.getDistinctSketch(2).estimate());
+
+    KllSketch ids = table.getQuantileSketch(0);
+    assertEquals(ROWS, ids.getCount());
+    assertEquals(0, ids.getMin());
+    assertEquals(ROWS - 1, ids.getMax());
+    double rankError = 3 * KllSketch.RANK_ERROR * ROWS;
+    assertEquals(ROWS * 0.25, ids.quantile(0.25), rankError);
+    assertEquals(ROWS * 0.5, ids.quantile(0.5), rankError);
+    assertEquals(ROWS * 0.99, ids.quantile(0.99), rankError);
+    assertTrue(ids.estimateBytes() < 16 * 1024);
+
+    assertNull(table.getQuantileSketch(1));
+    assertNull(table.getQuantileSketch(2));
+  }
+
+  /** Tests that sketches of a file loaded in many chunks merge into estimates of the whole file */
+  @Test
+  public void testMergedChunks() throws IOException {
+    Path file = writeStars();
+    ColumnarTable sequential =
+        new CSVParser<>(new FileReader(file.toFile()), new ListStringFactory()).createTable();
+    ColumnarTable chunked =
+        new MappedCSVLoader<>(file, new ListStringFactory(), ForkJoinPool.commonPool(), 4096)
+            .loadTable();
+    Files.delete(file);
+
+    // Merged distinct counts are exactly those of one pass over the file
+    for (int i = 0; i < 3; i++) {
+      assertEquals(
+          sequential.getDistinctSketch(i).estimate(), chunked.getDistinctSketch(i).estimate());
+    }
+
+    KllSketch ids = chunked.getQuantileSketch(0);
+    assertEquals(ROWS, ids.getCount());
+    assertEquals(0, ids.getMin());
+    assertEquals(ROWS - 1, ids.getMax());
+    double rankError = 3 * KllSketch.RANK_ERROR * ROWS;
+    for (double rank : new double[] {0.1, 0.25, 0.5, 0.75, 0.9}) {
+      assertEquals(ROWS * rank, ids.quantile(rank), rankError);
+    }
+  }
+
+  /** Tests the sketches of a table with no rows */
+  @Test
+  public void testEmpty() {
+    ColumnarTable table = ColumnarTable.fromRows(List.of(List.of("")));
+    assertEquals(0, table.getDistinctSketch(0).estimate());
+    assertEquals(0, table.getQuantileSketch(0).getCount());
+    assertTrue(Double.isNaN(table.getQuantileSketch(0).quantile(0.5)));
+  }
+}
@@ -0,0 +1,132 @@
+package edu.brown.cs.student.stars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.csv.ColumnType;
+import edu.brown.cs.student.csv.ColumnarTable;
+import edu.brown.cs.student.csv.DatasetRegistry;
+import edu.brown.cs.student.csv.ListStringFactory;
+import edu.brown.cs.student.csv.LoadProgress;
+import edu.brown.cs.student.csv.MappedCSVLoader;
+import edu.brown.cs.student.csv.TableSnapshotFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the TableSnapshotFile class, checking that a snapshot reads back the table it was written
+ * from, and that it is ignored once its source has changed or it has been damaged
+ */
+public class TestTableSnapshotFile {
+  private Path folder;
+  private Path source;
+
+  /** Writes a CSV with a column of each type, and a row shorter than the others */
+  @BeforeEach
+  public void setup() throws IOException {
+    this.folder = Files.createTempDirectory("stars");
+    this.source = this.folder.resolve("stars.csv");
+    StringBuilder csv = new StringBuilder("StarID,ProperName,Catalog,X\n");
+    for (int i = 0; i < 500; i++) {
+      csv.append(i).append(",star ").append(i).append(',').append(i % 2 == 0 ? "HD" : "HIP");
+      csv.append(',').append(i / 4.0).append('\n');
+    }
+    csv.append("500,\"Alpha, Centauri\"\n");
+    Files.writeString(this.source, csv.toString());
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    try (var files = Files.list(this.folder)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(this.folder);
+  }
+
+  private ColumnarTable parse() throws IOException {
+    return new MappedCSVLoader<>(this.source, new ListStringFactory()).loadTable();
+  }
+
+  /** Tests that every column, row width and sketch reads back as it was written */
+  @Test
+  public void testRoundTrip() throws IOException {
+    ColumnarTable table = this.parse();
+    Path written = TableSnapshotFile.write(table, this.source, Files.size(this.source));
+    assertEquals(TableSnapshotFile.pathOf(this.source), written);
+
+    TableSnapshotFile snapshot = TableSnapshotFile.read(this.source, Files.size(this.source));
+    assertNotNull(snapshot);
+    assertEquals(Files.size(this.source), snapshot.getSourceSize());
+    ColumnarTable read = snapshot.getTable();
+    assertEquals(table.getHeader(), read.getHeader());
+    assertEquals(table.rows(), read.rows());
+    assertEquals(2, read.getRowWidth(500));
+    assertEquals(
+        List.of(ColumnType.LONG, ColumnType.STRING, ColumnType.STRING, ColumnType.DOUBLE),
+        List.of(
+            read.getColumn(0).getType(),
+            read.getColumn(1).getType(),
+            read.getColumn(2).getType(),
+            read.getColumn(3).getType()));
+    for (int i = 0; i < table.getColumnCount(); i++) {
+      assertEquals(table.getDistinctSketch(i).estimate(), read.getDistinctSketch(i).estimate());
+    }
+    assertEquals(table.getQuantileSketch(3).quantile(0.5), read.getQuantileSketch(3).quantile(0.5));
+    assertNull(read.getQuantileSketch(1));
+  }
+
+  /** Tests that a snapshot is ignored once its source has been rewritten or it has been damaged */
+  @Test
+  public void testStaleAndDamaged() throws IOException {
+    TableSnapshotFile.write(this.parse(), this.source, Files.size(this.source));
+    Path snapshot = TableSnapshotFile.pathOf(this.source);
+
+    // A single byte flipped in the snapshot
+    byte[] bytes = Files.readAllBytes(snapshot);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(snapshot, bytes);
+    assertNull(TableSnapshotFile.read(this.source, Files.size(this.source)));
+
+    // A source rewritten to the same size
+    TableSnapshotFile.write(this.parse(), this.source, Files.size(this.source));
+    Files.writeString(this.source, Files.readString(this.source).replace("star 7,", "star X,"));
+    assertNull(TableSnapshotFile.read(this.source, Files.size(this.source)));
+
+    assertNull(TableSnapshotFile.read(this.folder.resolve("missing.csv"), 0));
+  }
+
+  /** Tests that a registry writes snapshots, and that a new one reads them back */
+  @Test
+  public void testRegistry() throws IOException {
+    String filepath = this.source.toString();
+    ColumnarTable parsed = new DatasetRegistry(Long.MAX_VALUE, true).load(filepath).getTable();
+    assertTrue(Files.exists(TableSnapshotFile.pathOf(this.source)));
+
+    // After a restart, only the rows appended since the snapshot are parsed
+    Files.writeString(this.source, "501,Sol,HD,0.5\n", StandardOpenOption.APPEND);
+    LoadProgress progress = new LoadProgress();
+    ColumnarTable loaded = new DatasetRegistry().load(filepath, progress).getTable();
+    assertEquals(1, progress.getRowsParsed());
+    assertEquals(parsed.getRowCount() + 1, loaded.getRowCount());
+    assertEquals(this.parse().rows(), loaded.rows());
+
+    // A registry that does not write snapshots still writes one on request
+    DatasetRegistry registry = new DatasetRegistry();
+    registry.load(filepath);
+    assertEquals(TableSnapshotFile.pathOf(this.source), registry.writeSnapshot(filepath));
+    assertEquals(
+        Files.size(this.source),
+        TableSnapshotFile.read(this.source, Files.size(this.source)).getSourceSize());
+    assertNull(registry.writeSnapshot(this.folder.resolve("other.csv").toString()));
+  }
+}